@@ -4,9 +4,24 @@ CMD="java -jar target/openpilot-logfile-replay-1.0-SNAPSHOT-jar-with-dependencie
 
 usage()
 {
-    echo "usage: <command> options:<l,u>"
+    echo "usage: <command> options:<l,b,o,u,m,t,H,c,a,i,x,s,e,p,r,k,v>"
     echo "l = full path to flight log"
+    echo "b = directory or quoted glob of flight logs to decode as a batch"
+    echo "o = output directory of a batch, data by default"
     echo "u = uavo jar"
+    echo "m = memory map the log file"
+    echo "t = number of threads to decode the log file with, or logs decoded at once in a batch"
+    echo "H = headless, decode without the live telemetry stack"
+    echo "c = write a csv file per object type"
+    echo "a = write a binary columnar archive"
+    echo "i = comma separated objects to decode, all by default"
+    echo "x = comma separated objects not to decode"
+    echo "s = decode from this many seconds into the log"
+    echo "e = decode up to this many seconds into the log"
+    echo "p = serve the log to TCP clients on this port instead of decoding it"
+    echo "r = replay speed when serving, 1 = as recorded, 0 = as fast as possible"
+    echo "k = what to do with a client that falls behind: drop, disconnect or block"
+    echo "v = run the telemetry and client threads on virtual threads (Java 21)"
     echo "h = this help screen" 
     echo ""
     echo "list of uavos:"
@@ -14,16 +29,54 @@ usage()
    
 }
 
-while getopts ":l:u:" opt; do
+while getopts ":l:b:o:u:mt:Hcai:x:s:e:p:r:k:v" opt; do
   case $opt in
     l) LOG_FILE_PATH="$OPTARG"
     ;;
+    b) LOG_FILE_PATH="$OPTARG"
+       BATCH=1
+    ;;
+    o) OPTIONS="$OPTIONS --out=$OPTARG"
+    ;;
     u) arg_1="$OPTARG"
     ;;
+    m) OPTIONS="$OPTIONS --mmap"
+    ;;
+    t) OPTIONS="$OPTIONS --threads=$OPTARG"
+    ;;
+    H) OPTIONS="$OPTIONS --headless"
+    ;;
+    c) OPTIONS="$OPTIONS --columns"
+    ;;
+    a) OPTIONS="$OPTIONS --archive"
+    ;;
+    i) OPTIONS="$OPTIONS --include=$OPTARG"
+    ;;
+    x) OPTIONS="$OPTIONS --exclude=$OPTARG"
+    ;;
+    s) OPTIONS="$OPTIONS --from=$OPTARG"
+    ;;
+    e) OPTIONS="$OPTIONS --to=$OPTARG"
+    ;;
+    p) OPTIONS="$OPTIONS --serve=$OPTARG"
+    ;;
+    r) OPTIONS="$OPTIONS --speed=$OPTARG"
+    ;;
+    k) OPTIONS="$OPTIONS --slow-client=$OPTARG"
+    ;;
+    v) OPTIONS="$OPTIONS --virtual-threads"
+    ;;
    *)
       usage
       exit;;
   esac
 done
 
-$CMD $LOG_FILE_PATH $arg_1
+if [ -n "$BATCH" ]; then
+    if [ -n "$arg_1" ]; then
+        OPTIONS="$OPTIONS --uavo=$arg_1"
+    fi
+    $CMD --batch $OPTIONS "$LOG_FILE_PATH"
+else
+    $CMD $OPTIONS $LOG_FILE_PATH $arg_1
+fi
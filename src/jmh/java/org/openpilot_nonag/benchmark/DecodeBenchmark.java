@@ -0,0 +1,84 @@
+package org.openpilot_nonag.benchmark;
+
+import org.openpilot_nonag.uavtalk.UAVObjectManager;
+import org.openpilot_nonag.uavtalk.UAVTalk;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packet throughput of UAVTalk, one operation is a full pass over the log
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({ LogFixture.SAMPLE, LogFixture.SYNTHETIC, LogFixture.GENERATED })
+    public String fixture;
+
+    private LogFixture log;
+    private UAVObjectManager objManager;
+    private ByteBuffer[] packets;
+
+    @Setup
+    public void setup() throws IOException {
+        log = LogFixture.load(fixture);
+        objManager = LogFixture.createObjectManager();
+        packets = new ByteBuffer[log.packets.length];
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = ByteBuffer.wrap(log.packets[i]);
+        }
+    }
+
+    private UAVTalk createUAVTalk(byte[] stream, Blackhole blackhole) {
+        UAVTalk uavTalk = new UAVTalk(stream == null ? null : new ByteArrayInputStream(stream), null, objManager);
+        uavTalk.setPassive(true);
+        uavTalk.setRecordSink(new NullRecordSink(blackhole));
+        return uavTalk;
+    }
+
+    /**
+     * Framing and checksum only, as done for every byte of a live link
+     */
+    @Benchmark
+    public void processInputByte(Blackhole blackhole) throws IOException {
+        UAVTalk uavTalk = createUAVTalk(null, blackhole);
+        byte[] stream = log.stream;
+        for (int i = 0; i < stream.length; i++) {
+            blackhole.consume(uavTalk.processInputByte(stream[i] & 0xff));
+        }
+    }
+
+    /**
+     * Framing, checksum and unpacking of a telemetry stream
+     */
+    @Benchmark
+    public UAVTalk.ComStats processInputStream(Blackhole blackhole) throws IOException {
+        UAVTalk uavTalk = createUAVTalk(log.stream, blackhole);
+        while (uavTalk.processInputStream()) {
+        }
+        return uavTalk.getStats();
+    }
+
+    /**
+     * Decoding packets already framed by the log records
+     */
+    @Benchmark
+    public UAVTalk.ComStats processPacket(Blackhole blackhole) throws IOException {
+        UAVTalk uavTalk = createUAVTalk(null, blackhole);
+        long[] timestamps = log.timestamps;
+        for (int i = 0; i < packets.length; i++) {
+            packets[i].clear();
+            uavTalk.processPacket(packets[i], timestamps[i]);
+        }
+        return uavTalk.getStats();
+    }
+}
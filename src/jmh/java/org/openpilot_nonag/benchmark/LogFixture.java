@@ -0,0 +1,102 @@
+package org.openpilot_nonag.benchmark;
+
+import org.openpilot_nonag.telemetry.OPTelemetryService;
+import org.openpilot_nonag.tools.OPLogGenerator;
+import org.openpilot_nonag.uavtalk.OPLogReader;
+import org.openpilot_nonag.uavtalk.UAVObjectManager;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The packets of a log held in memory so the benchmarks measure decoding
+ * rather than the disk.  "sample" is the bundled flight log, "synthetic"
+ * is the sample played back SYNTHETIC_COPIES times one after the other and
+ * "generated" is GENERATED_DURATION_MS of every object at its telemetry
+ * rate, written by OPLogGenerator.
+ */
+final class LogFixture {
+
+    static final String SAMPLE_LOG = "sample-file/OP-2014-07-17_17-52-20-good.opl";
+    static final String UAVO_JAR = "bed2641e417be160.jar";
+
+    static final String SAMPLE = "sample";
+    static final String SYNTHETIC = "synthetic";
+    static final int SYNTHETIC_COPIES = 20;
+    static final String GENERATED = "generated";
+    static final long GENERATED_DURATION_MS = 30 * 60 * 1000;
+
+    //! One UAVTalk packet per log record
+    final byte[][] packets;
+    //! Record timestamps in ms
+    final long[] timestamps;
+    //! The packets back to back, as they would arrive on a telemetry link
+    final byte[] stream;
+
+    private LogFixture(byte[][] packets, long[] timestamps, byte[] stream) {
+        this.packets = packets;
+        this.timestamps = timestamps;
+        this.stream = stream;
+    }
+
+    static LogFixture load(String name) throws IOException {
+        int copies = 1;
+        OPLogReader reader;
+        if (SAMPLE.equals(name)) {
+            reader = OPLogReader.map(new File(SAMPLE_LOG));
+        } else if (SYNTHETIC.equals(name)) {
+            reader = OPLogReader.map(new File(SAMPLE_LOG));
+            copies = SYNTHETIC_COPIES;
+        } else if (GENERATED.equals(name)) {
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            new OPLogGenerator(createObjectManager(), 0).generate(log, GENERATED_DURATION_MS, Long.MAX_VALUE);
+            reader = OPLogReader.open(new ByteArrayInputStream(log.toByteArray()));
+        } else {
+            throw new IllegalArgumentException("Unknown fixture " + name);
+        }
+
+        List<byte[]> samplePackets = new ArrayList<byte[]>();
+        List<Long> sampleTimestamps = new ArrayList<Long>();
+        try {
+            while (reader.next()) {
+                ByteBuffer packet = reader.getPacket();
+                byte[] bytes = new byte[packet.remaining()];
+                packet.get(bytes);
+                samplePackets.add(bytes);
+                sampleTimestamps.add(reader.getTimestamp());
+            }
+        } finally {
+            reader.close();
+        }
+
+        int count = samplePackets.size();
+        long duration = sampleTimestamps.get(count - 1) + 1;
+        byte[][] packets = new byte[count * copies][];
+        long[] timestamps = new long[count * copies];
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int copy = 0; copy < copies; copy++) {
+            for (int i = 0; i < count; i++) {
+                packets[copy * count + i] = samplePackets.get(i);
+                timestamps[copy * count + i] = copy * duration + sampleTimestamps.get(i);
+                stream.write(samplePackets.get(i), 0, samplePackets.get(i).length);
+            }
+        }
+        return new LogFixture(packets, timestamps, stream.toByteArray());
+    }
+
+    /**
+     * An object manager with the UAVO set of the sample log registered
+     */
+    static UAVObjectManager createObjectManager() {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        new OPTelemetryService().loadUavobjects(UAVO_JAR, objManager);
+        return objManager;
+    }
+}
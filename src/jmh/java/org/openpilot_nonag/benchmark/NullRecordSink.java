@@ -0,0 +1,31 @@
+package org.openpilot_nonag.benchmark;
+
+import org.openpilot_nonag.uavtalk.ObjectUpdateEvent;
+import org.openpilot_nonag.uavtalk.RecordSink;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Hands the decoded objects to a Blackhole so decoding is measured without
+ * the cost of writing the output
+ */
+class NullRecordSink implements RecordSink {
+
+    private final Blackhole blackhole;
+
+    NullRecordSink(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void write(ObjectUpdateEvent event) {
+        blackhole.consume(event);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,95 @@
+package org.openpilot_nonag.benchmark;
+
+import org.openpilot_nonag.uavtalk.UAVObject;
+import org.openpilot_nonag.uavtalk.UAVObjectField;
+import org.openpilot_nonag.uavtalk.UAVObjectManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unpacking and reading back one object type, using the first packet of
+ * that type in the sample log
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectBenchmark {
+
+    //! sync(1), type(1), size(2), objId(4), instId(2)
+    static final int PACKET_HEADER_LENGTH = 10;
+
+    /**
+     * Floats only, a large mixed object, enum arrays and a byte array
+     */
+    @Param({ "AttitudeState", "GPSSatellites", "StabilizationBank", "SystemAlarms", "FirmwareIAPObj" })
+    public String objName;
+
+    private UAVObject obj;
+    private UAVObjectField[] fields;
+    private ByteBuffer data;
+    private final StringBuilder text = new StringBuilder();
+
+    @Setup
+    public void setup() throws IOException {
+        UAVObjectManager objManager = LogFixture.createObjectManager();
+        obj = objManager.getObject(objName);
+        List<UAVObjectField> fieldList = obj.getFields();
+        fields = fieldList.toArray(new UAVObjectField[fieldList.size()]);
+
+        LogFixture log = LogFixture.load(LogFixture.SAMPLE);
+        for (byte[] packet : log.packets) {
+            ByteBuffer buf = ByteBuffer.wrap(packet).order(ByteOrder.LITTLE_ENDIAN);
+            if ((buf.getInt(4) & 0xffffffffL) == obj.getObjID()
+                    && packet.length - PACKET_HEADER_LENGTH - 1 == obj.getNumBytes()) {
+                buf.position(PACKET_HEADER_LENGTH);
+                buf.limit(packet.length - 1);
+                data = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+                break;
+            }
+        }
+        if (data == null)
+            throw new IllegalStateException("No " + objName + " packet in " + LogFixture.SAMPLE_LOG);
+        obj.unpack(data);
+    }
+
+    @Benchmark
+    public int unpack() {
+        data.position(0);
+        return obj.unpack(data);
+    }
+
+    @Benchmark
+    public void getValue(Blackhole blackhole) {
+        for (UAVObjectField field : fields) {
+            int n = field.getNumElements();
+            for (int i = 0; i < n; i++) {
+                blackhole.consume(field.getValue(i));
+            }
+        }
+    }
+
+    @Benchmark
+    public void fieldToString(Blackhole blackhole) {
+        for (UAVObjectField field : fields) {
+            blackhole.consume(field.toString());
+        }
+    }
+
+    @Benchmark
+    public int fieldAppendTo() {
+        text.setLength(0);
+        for (UAVObjectField field : fields) {
+            field.appendTo(text);
+        }
+        return text.length();
+    }
+}
@@ -0,0 +1,75 @@
+package org.openpilot_nonag.benchmark;
+
+import org.openpilot_nonag.uavtalk.UAVObject;
+import org.openpilot_nonag.uavtalk.UAVObjectManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Object lookups in the order the sample log asks for them, one operation
+ * is one lookup per log record
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectManagerBenchmark {
+
+    private UAVObjectManager objManager;
+    private long[] objIds;
+    private long[] instIds;
+    private String[] names;
+
+    @Setup
+    public void setup() throws IOException {
+        objManager = LogFixture.createObjectManager();
+        LogFixture log = LogFixture.load(LogFixture.SAMPLE);
+        objIds = new long[log.packets.length];
+        instIds = new long[log.packets.length];
+        names = new String[log.packets.length];
+        for (int i = 0; i < objIds.length; i++) {
+            ByteBuffer buf = ByteBuffer.wrap(log.packets[i]).order(ByteOrder.LITTLE_ENDIAN);
+            objIds[i] = buf.getInt(4) & 0xffffffffL;
+            instIds[i] = buf.getShort(8) & 0xffff;
+            UAVObject obj = objManager.getObject(objIds[i]);
+            names[i] = obj == null ? "Unknown" : obj.getName();
+        }
+    }
+
+    @Benchmark
+    public void getObjectById(Blackhole blackhole) {
+        for (int i = 0; i < objIds.length; i++) {
+            blackhole.consume(objManager.getObject(objIds[i]));
+        }
+    }
+
+    @Benchmark
+    public void getObjectByIdAndInstance(Blackhole blackhole) {
+        for (int i = 0; i < objIds.length; i++) {
+            blackhole.consume(objManager.getObject(objIds[i], instIds[i]));
+        }
+    }
+
+    @Benchmark
+    public void getObjectByName(Blackhole blackhole) {
+        for (int i = 0; i < names.length; i++) {
+            blackhole.consume(objManager.getObject(names[i]));
+        }
+    }
+
+    /**
+     * Several decoder threads sharing one manager
+     */
+    @Benchmark
+    @Threads(4)
+    public void getObjectByIdShared(Blackhole blackhole) {
+        getObjectById(blackhole);
+    }
+}
@@ -0,0 +1,146 @@
+package org.openpilot_nonag.benchmark;
+
+import org.openpilot_nonag.uavtalk.ArchiveRecordSink;
+import org.openpilot_nonag.uavtalk.ColumnarCsvRecordSink;
+import org.openpilot_nonag.uavtalk.CsvRecordSink;
+import org.openpilot_nonag.uavtalk.ObjectUpdateEvent;
+import org.openpilot_nonag.uavtalk.ObjectUpdateListener;
+import org.openpilot_nonag.uavtalk.RecordSink;
+import org.openpilot_nonag.uavtalk.UAVDataObject;
+import org.openpilot_nonag.uavtalk.UAVObject;
+import org.openpilot_nonag.uavtalk.UAVObjectManager;
+import org.openpilot_nonag.uavtalk.UAVTalk;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing the decoded objects of the sample log, the part of
+ * UAVTalk.processDataObject() after the object has been unpacked.  One
+ * operation writes every record of the log into a fresh output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SinkBenchmark {
+
+    @Param({ "csv", "columns", "archive" })
+    public String format;
+
+    private ObjectUpdateEvent[] events;
+    private File dir;
+    private int run;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = File.createTempFile("opuavo-bench-", "");
+        dir.delete();
+        dir.mkdirs();
+
+        // Each event gets its own copy of the object as it was decoded, the
+        // live object only holds its latest update
+        final List<ObjectUpdateEvent> decoded = new ArrayList<ObjectUpdateEvent>();
+        UAVObjectManager objManager = LogFixture.createObjectManager();
+        UAVTalk uavTalk = new UAVTalk(null, null, objManager);
+        uavTalk.setPassive(true);
+        RecordSink decodeSink = new CsvRecordSink(new File(dir, "decode.txt"));
+        uavTalk.setRecordSink(decodeSink);
+        uavTalk.addObjectUpdateListener(new ObjectUpdateListener() {
+            @Override
+            public void objectUpdated(ObjectUpdateEvent event) {
+                decoded.add(new ObjectUpdateEvent(snapshot(event.getObject()), event.getTimestamp(),
+                        event.getSequence()));
+            }
+        });
+
+        LogFixture log = LogFixture.load(LogFixture.SAMPLE);
+        for (int i = 0; i < log.packets.length; i++) {
+            uavTalk.processPacket(ByteBuffer.wrap(log.packets[i]), log.timestamps[i]);
+        }
+        decodeSink.close();
+
+        // Leave out the objects processDataObject() would fail to write, such
+        // as those holding an out of range enum value
+        List<ObjectUpdateEvent> writable = new ArrayList<ObjectUpdateEvent>();
+        RecordSink probe = new CsvRecordSink(new File(dir, "probe.txt"));
+        for (ObjectUpdateEvent event : decoded) {
+            try {
+                probe.write(event);
+                writable.add(event);
+            } catch (RuntimeException e) {
+            }
+        }
+        probe.close();
+        events = writable.toArray(new ObjectUpdateEvent[writable.size()]);
+    }
+
+    /**
+     * Copy the object's data into a new instance of the same object
+     */
+    private static UAVObject snapshot(UAVObject obj) {
+        UAVDataObject copy = ((UAVDataObject) obj).clone(obj.getInstID());
+        ByteBuffer data = ByteBuffer.allocate(obj.getNumBytes());
+        try {
+            obj.pack(data);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to pack " + obj, e);
+        }
+        data.flip();
+        copy.unpack(data);
+        return copy;
+    }
+
+    @TearDown
+    public void tearDown() {
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private RecordSink createSink() throws IOException {
+        File out = new File(dir, format + (run++));
+        if ("csv".equals(format))
+            return new CsvRecordSink(out, 0);
+        if ("columns".equals(format))
+            return new ColumnarCsvRecordSink(out);
+        return new ArchiveRecordSink(out);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        RecordSink sink = createSink();
+        try {
+            for (ObjectUpdateEvent event : events) {
+                sink.write(event);
+            }
+        } finally {
+            sink.close();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteOutput() {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+    }
+}
@@ -28,6 +28,9 @@ package org.openpilot_nonag.telemetry;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.openpilot_nonag.uavtalk.UAVDataObject;
+import org.openpilot_nonag.uavtalk.UAVObject;
+import org.openpilot_nonag.uavtalk.UAVObjectField;
 import org.openpilot_nonag.uavtalk.UAVObjectManager;
 import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
 
@@ -38,9 +41,11 @@ import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.Enumeration;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 //import org.openpilot_nonag.androidgcs.telemetry.tasks.LoggingTask;
 
@@ -48,6 +53,9 @@ import java.util.jar.JarFile;
 public class OPTelemetryService {
 
     static final Logger logger = LogManager.getLogger(OPTelemetryService.class.getName());
+
+    //! Directory the UAVO jars are loaded from
+    public static final String JAR_DIR = "jars";
   
 
     /************************************************************/
@@ -87,62 +95,107 @@ public class OPTelemetryService {
     }
 
     /**
-     * Load the UAVObjects from a JAR file.  This method must be called in the
-     * service context.
-     * @return True if success, False otherwise
+     * Get the name of the jar holding the UAVO set the firmware was built
+     * with.  The FirmwareIAPObj description carries the UAVO hash.
+     * @return The jar name or null if the description is not available
      */
-    public boolean loadUavobjects(String jar, UAVObjectManager objMngr) {
+    public static String getUavoJarName(UAVObject firmwareIapObj) {
+        UAVObjectField description = firmwareIapObj.getField("Description");
+        if (description == null || description.getNumElements() < 100)
+            return null;
+
+        final int HASH_SIZE_USED = 8;
+        StringBuilder jarName = new StringBuilder();
+        for (int i = 0; i < HASH_SIZE_USED; i++) {
+            jarName.append(String.format("%02x", (int) description.getDouble(i + 60)));
+        }
+        jarName.append(".jar");
+        return jarName.toString();
+    }
 
+    /**
+     * The UAVO set of one jar.  The classes are loaded once per process and
+     * a template of every object type is kept so further object managers
+     * are filled by cloning instead of loading and registering again.
+     */
+    static class UavoSet {
+        final String jar;
+        final URLClassLoader classLoader;
+        //! Instance 0 of every data object type, in registration order
+        final List<UAVDataObject> prototypes;
+
+        UavoSet(String jar, URLClassLoader classLoader, List<UAVDataObject> prototypes) {
+            this.jar = jar;
+            this.classLoader = classLoader;
+            this.prototypes = prototypes;
+        }
+    }
 
-        final String JAR_DIR = "jars";
+    //! Loaded UAVO sets by jar name, which is the UAVO hash
+    private static final ConcurrentMap<String, UavoSet> uavoSets = new ConcurrentHashMap<String, UavoSet>();
 
+    /**
+     * Get the UAVO set of a jar, loading it on first use
+     * @throws Exception if the jar can not be loaded
+     */
+    static UavoSet getUavoSet(String jar) throws Exception {
+        UavoSet set = uavoSets.get(jar);
+        if (set != null)
+            return set;
+
+        synchronized (uavoSets) {
+            set = uavoSets.get(jar);
+            if (set == null) {
+                set = loadUavoSet(jar);
+                uavoSets.put(jar, set);
+            }
+            return set;
+        }
+    }
 
-        File jarsDir = new File(JAR_DIR);
-        String classpath = new File(jarsDir, jar ).getAbsolutePath();
+    private static UavoSet loadUavoSet(String jar) throws Exception {
+        File file = new File(JAR_DIR, jar).getAbsoluteFile();
+        if (!file.isFile())
+            throw new IOException("No UAVO jar " + file);
         logger.info("loading uavo jarfile : " + jar);
 
+        ClassLoader currentThreadClassLoader = Thread.currentThread().getContextClassLoader();
+        URLClassLoader clsLoader = URLClassLoader.newInstance(new URL[]{file.toURI().toURL()}, currentThreadClassLoader);
 
-        try {
-
-            ClassLoader currentThreadClassLoader
-                   = Thread.currentThread().getContextClassLoader();
-
+        // Register the set once into a template manager to capture a
+        // prototype of every object type
+        UAVObjectManager template = new UAVObjectManager();
+        Class<?> initClass = clsLoader.loadClass("org.openpilot_nonag.uavtalk.uavobjects.UAVObjectsInitialize");
+        Method initMethod = initClass.getMethod("register", UAVObjectManager.class);
+        initMethod.invoke(null, template);
 
-            File file = new File(classpath);
-            URLClassLoader clsLoader = URLClassLoader.newInstance(new URL[]{file.toURI().toURL()},currentThreadClassLoader);
-
-
-            JarFile jarFile = new JarFile(file);
-            Enumeration<JarEntry> entries = jarFile.entries();
-
-            while (entries.hasMoreElements()) {
-                JarEntry element = entries.nextElement();
-                if (element.getName().endsWith(".class")) {
-                    try {
-                        Class c = clsLoader.loadClass(element.getName().replaceAll(".class", "").replaceAll("/", "."));
+        List<UAVDataObject> prototypes = new ArrayList<UAVDataObject>();
+        for (List<UAVDataObject> instances : template.getDataObjects()) {
+            prototypes.add(instances.get(0));
+        }
+        logger.debug("loaded " + prototypes.size() + " object types from " + jar);
+        return new UavoSet(jar, clsLoader, Collections.unmodifiableList(prototypes));
+    }
 
-                        logger.debug("adding " + element.getName());
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
+    /**
+     * Load the UAVObjects from a JAR file.  This method must be called in the
+     * service context.  The jar is only read the first time a set is loaded
+     * in this process, later calls register copies of the cached objects.
+     * @return True if success, False otherwise
+     */
+    public boolean loadUavobjects(String jar, UAVObjectManager objMngr) {
+        try {
+            UavoSet set = getUavoSet(jar);
+            for (UAVDataObject prototype : set.prototypes) {
+                objMngr.registerObject(prototype.clone(0));
             }
 
-            Class<?> initClass = clsLoader.loadClass("org.openpilot_nonag.uavtalk.uavobjects.UAVObjectsInitialize");
-            Method initMethod = initClass.getMethod("register", UAVObjectManager.class);
-            initMethod.invoke(null, objMngr);
-
-
-
-
             TelemObjectsInitialize.register(objMngr);
         } catch (Exception e){
-            logger.error(e);
+            logger.error("Failed to load uavo jarfile : " + jar, e);
+            return false;
         }
 
         return true;
     }
-
-
-
 }
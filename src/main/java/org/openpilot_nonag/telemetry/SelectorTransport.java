@@ -0,0 +1,411 @@
+/**
+ ******************************************************************************
+ * @file       SelectorTransport.java
+ * @brief      UAVTalk links multiplexed on one selector thread.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.telemetry;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.openpilot_nonag.uavtalk.CsvRecordSink;
+import org.openpilot_nonag.uavtalk.HashedTimerWheel;
+import org.openpilot_nonag.uavtalk.RecordSink;
+import org.openpilot_nonag.uavtalk.TelemetryExecutors;
+import org.openpilot_nonag.uavtalk.UAVObjectManager;
+import org.openpilot_nonag.uavtalk.UAVTalk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carries many UAVTalk links over non-blocking sockets served by a single
+ * selector thread, so the number of threads stays the same however many
+ * links are open.  Whatever a read returns is handed in one go to the
+ * UAVTalk of its link, whose state machine keeps any partial packet until
+ * the next read.  What UAVTalk sends is written straight to the socket when
+ * it can take it, the rest is queued and written by the selector thread.
+ *
+ * The objects of a link are updated on the selector thread, so listeners
+ * must not block.  Unless given a sink of their own, the links write their
+ * objects to one CsvRecordSink on the default data file that the transport
+ * shares, flushes every second and closes.
+ */
+public class SelectorTransport implements Closeable {
+
+    static final Logger logger = LogManager.getLogger(SelectorTransport.class.getName());
+
+    static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    //! The most a link may have queued for writing before it is closed
+    static final int MAX_PENDING_WRITE = 64 * 1024;
+
+    static final long SINK_FLUSH_MS = 1000;
+
+    /**
+     * A UAVTalk link over one socket
+     */
+    public class Link implements Closeable {
+        private final String name;
+        private final SocketChannel channel;
+        private final UAVTalk uavTalk;
+        private final ByteBuffer pendingWrite = ByteBuffer.allocate(MAX_PENDING_WRITE);
+        private SelectionKey key;
+        private volatile boolean started;
+        private volatile boolean closed;
+        private volatile long bytesReceived;
+
+        Link(String name, SocketChannel channel, UAVObjectManager objMngr) {
+            this.name = name;
+            this.channel = channel;
+            uavTalk = new UAVTalk(null, new LinkOutputStream(), objMngr);
+            uavTalk.setRecordSink(getSharedSink());
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the UAVTalk of the link, to be set up before start()
+         */
+        public UAVTalk getUavTalk() {
+            return uavTalk;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        /**
+         * Start reading from the link.  Nothing is read before this so the
+         * UAVTalk can be given its sink and listeners first.
+         */
+        public void start() {
+            if (started)
+                return;
+            started = true;
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    register();
+                }
+            });
+        }
+
+        private void register() {
+            if (closed)
+                return;
+            try {
+                key = channel.register(selector, channel.isConnectionPending() ? SelectionKey.OP_CONNECT : interestOps(), this);
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        private int interestOps() {
+            synchronized (pendingWrite) {
+                return pendingWrite.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            }
+        }
+
+        private void handle(SelectionKey key, ByteBuffer readBuffer) throws IOException {
+            if (key.isConnectable()) {
+                channel.finishConnect();
+                logger.info("Connected " + name);
+                key.interestOps(interestOps());
+            }
+            if (key.isValid() && key.isReadable()) {
+                int n = channel.read(readBuffer);
+                if (n < 0) {
+                    close();
+                    return;
+                }
+                bytesReceived += n;
+                readBuffer.flip();
+                uavTalk.processInputBuffer(readBuffer);
+                readBuffer.clear();
+            }
+            if (key.isValid() && key.isWritable()) {
+                synchronized (pendingWrite) {
+                    flushPending();
+                    if (pendingWrite.position() == 0)
+                        key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+        }
+
+        /**
+         * Write what is queued as far as the socket takes it, under the
+         * pendingWrite lock
+         */
+        private void flushPending() throws IOException {
+            pendingWrite.flip();
+            channel.write(pendingWrite);
+            pendingWrite.compact();
+        }
+
+        private void write(byte[] b, int off, int len) throws IOException {
+            if (closed)
+                throw new IOException(name + " is closed");
+            boolean wasEmpty;
+            synchronized (pendingWrite) {
+                wasEmpty = pendingWrite.position() == 0;
+                ByteBuffer data = ByteBuffer.wrap(b, off, len);
+                // Straight to the socket unless that would overtake queued bytes
+                if (wasEmpty && channel.isConnected())
+                    channel.write(data);
+                if (data.remaining() > pendingWrite.remaining()) {
+                    IOException e = new IOException(name + " fell " + MAX_PENDING_WRITE + " bytes behind");
+                    close(e);
+                    throw e;
+                }
+                pendingWrite.put(data);
+                if (!wasEmpty || pendingWrite.position() == 0)
+                    return;
+            }
+            // Only the selector thread changes what the key waits for
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (key != null && key.isValid() && (key.interestOps() & SelectionKey.OP_CONNECT) == 0)
+                        key.interestOps(interestOps());
+                }
+            });
+        }
+
+        private void close(IOException e) {
+            if (!closed)
+                logger.info("Closing " + name + " : " + e);
+            close();
+        }
+
+        /**
+         * Close the socket, dropping anything not yet written
+         */
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            links.remove(this);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.error("Failed to close " + name, e);
+            }
+            flushSharedSink();
+            logger.info("Closed " + name);
+        }
+
+        /**
+         * Hands what UAVTalk transmits to the link
+         */
+        private class LinkOutputStream extends OutputStream {
+            private final byte[] one = new byte[1];
+
+            @Override
+            public void write(int b) throws IOException {
+                synchronized (one) {
+                    one[0] = (byte) b;
+                    Link.this.write(one, 0, 1);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                Link.this.write(b, off, len);
+            }
+        }
+    }
+
+    private final Selector selector;
+    private final Thread selectorThread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final List<Link> links = new CopyOnWriteArrayList<Link>();
+    private volatile boolean closed;
+    private RecordSink sharedSink;
+    private HashedTimerWheel.Timeout sharedSinkFlush;
+
+    public SelectorTransport() throws IOException {
+        selector = Selector.open();
+        selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                select();
+            }
+        }, "Telemetry selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * Open a link to address.  The connection completes in the background,
+     * anything sent before then is queued.
+     * @param objMngr The objects the link updates, not shared with other links
+     */
+    public Link connect(SocketAddress address, UAVObjectManager objMngr) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return addLink(address.toString(), channel, objMngr);
+    }
+
+    /**
+     * Carry a link over a socket that is already connected, for instance one
+     * accepted from a vehicle
+     */
+    public Link register(SocketChannel channel, UAVObjectManager objMngr) throws IOException {
+        channel.configureBlocking(false);
+        return addLink(String.valueOf(channel.getRemoteAddress()), channel, objMngr);
+    }
+
+    private Link addLink(String name, SocketChannel channel, UAVObjectManager objMngr) throws IOException {
+        if (closed) {
+            channel.close();
+            throw new IOException("Transport is closed");
+        }
+        Link link = new Link(name, channel, objMngr);
+        links.add(link);
+        return link;
+    }
+
+    /**
+     * Get the sink the links write to unless given their own
+     */
+    public synchronized RecordSink getSharedSink() {
+        if (sharedSink == null) {
+            sharedSink = new CsvRecordSink(UAVTalk.getDefaultDataOutFile());
+            sharedSinkFlush = TelemetryExecutors.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    flushSharedSink();
+                }
+            }, SINK_FLUSH_MS, SINK_FLUSH_MS, TimeUnit.MILLISECONDS);
+        }
+        return sharedSink;
+    }
+
+    private synchronized void flushSharedSink() {
+        if (sharedSink == null)
+            return;
+        try {
+            sharedSink.flush();
+        } catch (IOException e) {
+            logger.error("Failed to flush the shared sink", e);
+        }
+    }
+
+    public List<Link> getLinks() {
+        return links;
+    }
+
+    public int getLinkCount() {
+        return links.size();
+    }
+
+    /**
+     * Run a task on the selector thread
+     */
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void select() {
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        try {
+            while (!closed) {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    Link link = (Link) key.attachment();
+                    try {
+                        link.handle(key, readBuffer);
+                    } catch (IOException e) {
+                        link.close(e);
+                    } catch (RuntimeException e) {
+                        logger.error("Failed to process " + link.getName(), e);
+                        link.close();
+                    }
+                    readBuffer.clear();
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Closed
+        } catch (IOException e) {
+            logger.error("Selector failed", e);
+        }
+    }
+
+    /**
+     * Close every link and stop the selector thread
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (Link link : links) {
+            link.close();
+        }
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        selector.close();
+        synchronized (this) {
+            if (sharedSink != null) {
+                sharedSinkFlush.cancel();
+                sharedSink.close();
+                sharedSink = null;
+            }
+        }
+    }
+}
@@ -28,6 +28,7 @@ package org.openpilot_nonag.telemetry;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.openpilot_nonag.uavtalk.Telemetry;
+import org.openpilot_nonag.uavtalk.TelemetryExecutors;
 import org.openpilot_nonag.uavtalk.TelemetryMonitor;
 import org.openpilot_nonag.uavtalk.UAVObjectManager;
 import org.openpilot_nonag.uavtalk.UAVTalk;
@@ -36,6 +37,7 @@ import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -95,6 +97,9 @@ public abstract class TelemetryTask implements Runnable {
 	//! Thread to process the input stream
 	Thread inputProcessThread;
 
+	//! The most bytes handed to UAVTalk per read of the input stream
+	static final int INPUT_BUFFER_SIZE = 4096;
+
 	//! Flag to indicate a shut down was requested.  Derived classes should take care to respect this.
 	boolean shutdown;
 
@@ -185,6 +190,15 @@ public abstract class TelemetryTask implements Runnable {
 			}
 		}
 
+		// Write out what was decoded last
+		if (uavTalk != null) {
+			try {
+				uavTalk.closeRecordSink();
+			} catch (IOException e) {
+				logger.error("Failed to close the record sink", e);
+			}
+		}
+
 		// TODO: Make sure the input and output stream is closed
 
 		// TODO: Make sure any threads for input and output are closed
@@ -196,7 +210,7 @@ public abstract class TelemetryTask implements Runnable {
 	 * to read from the input stream.
 	 */
 	private void startInputProcessing() {
-		inputProcessThread = new Thread(new processUavTalk(), "Process UAV talk");
+		inputProcessThread = TelemetryExecutors.newThread("Process UAV talk", new processUavTalk());
 		inputProcessThread.start();
 	}
 
@@ -205,12 +219,16 @@ public abstract class TelemetryTask implements Runnable {
 		@Override
 		public void run() {
 			logger.debug("Entering UAVTalk processing loop");
+			// Read whatever has arrived at once rather than a byte at a time
+			byte[] buffer = new byte[INPUT_BUFFER_SIZE];
 			while (!shutdown) {
 				try {
-					if( !uavTalk.processInputStream() ) {
+					int n = inStream.read(buffer);
+					if (n < 0) {
                         System.exit(0);
                         break;
                     }
+					uavTalk.processInputBuffer(ByteBuffer.wrap(buffer, 0, n));
 				} catch (IOException e) {
 					e.printStackTrace();
 					//telemService.toastMessage("Telemetry input stream interrupted");
@@ -2,9 +2,17 @@ package org.openpilot_nonag.tools;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.openpilot_nonag.uavtalk.RecordFilter;
+import org.openpilot_nonag.uavtalk.TelemetryExecutors;
+import org.openpilot_nonag.uavtalk.UAVTalk;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Hello world!
@@ -21,12 +29,128 @@ public class App
 
         String filepath = "";
         String uavo = LATEST_UAVO;
+        Logging.InputMode inputMode = Logging.InputMode.STREAM;
+        int threads = 0;
+        boolean headless = false;
+        boolean batch = false;
+        String outDir = "data";
+        Logging.OutputFormat outputFormat = Logging.OutputFormat.CSV;
+        List<String> include = Collections.emptyList();
+        List<String> exclude = Collections.emptyList();
+        long fromMs = 0;
+        long toMs = Long.MAX_VALUE;
+        int servePort = -1;
+        double speed = 1;
+        TelemetryFanOut.SlowConsumerPolicy slowClientPolicy = TelemetryFanOut.SlowConsumerPolicy.DROP_OLDEST;
 
-        if(args.length > 0){
-            filepath = args[0];
+        // Options start with "--", everything else is <log file> [<uavo jar>]
+        List<String> positional = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("--mmap")) {
+                inputMode = Logging.InputMode.MAPPED;
+            } else if (arg.equals("--headless")) {
+                headless = true;
+            } else if (arg.equals("--columns")) {
+                outputFormat = Logging.OutputFormat.COLUMNS;
+            } else if (arg.equals("--archive")) {
+                outputFormat = Logging.OutputFormat.ARCHIVE;
+            } else if (arg.equals("--batch")) {
+                batch = true;
+            } else if (arg.equals("--virtual-threads")) {
+                TelemetryExecutors.setMode(TelemetryExecutors.Mode.VIRTUAL);
+            } else if (arg.startsWith("--uavo=")) {
+                uavo = arg.substring("--uavo=".length());
+            } else if (arg.startsWith("--out=")) {
+                outDir = arg.substring("--out=".length());
+            } else if (arg.startsWith("--threads=")) {
+                try {
+                    threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } catch (NumberFormatException e) {
+                    logger.error("Invalid thread count : " + arg);
+                    System.exit(-100);
+                }
+            } else if (arg.startsWith("--serve=") || arg.startsWith("--speed=")) {
+                try {
+                    if (arg.startsWith("--serve=")) {
+                        servePort = Integer.parseInt(arg.substring("--serve=".length()));
+                    } else {
+                        speed = Double.parseDouble(arg.substring("--speed=".length()));
+                    }
+                } catch (NumberFormatException e) {
+                    logger.error("Invalid number : " + arg);
+                    System.exit(-100);
+                }
+            } else if (arg.startsWith("--slow-client=")) {
+                String policy = arg.substring("--slow-client=".length());
+                if (policy.equals("drop")) {
+                    slowClientPolicy = TelemetryFanOut.SlowConsumerPolicy.DROP_OLDEST;
+                } else if (policy.equals("disconnect")) {
+                    slowClientPolicy = TelemetryFanOut.SlowConsumerPolicy.DISCONNECT;
+                } else if (policy.equals("block")) {
+                    slowClientPolicy = TelemetryFanOut.SlowConsumerPolicy.BLOCK;
+                } else {
+                    logger.error("Unknown slow client policy : " + arg);
+                    System.exit(-100);
+                }
+            } else if (arg.startsWith("--include=")) {
+                include = Arrays.asList(arg.substring("--include=".length()).split(","));
+            } else if (arg.startsWith("--exclude=")) {
+                exclude = Arrays.asList(arg.substring("--exclude=".length()).split(","));
+            } else if (arg.startsWith("--from=") || arg.startsWith("--to=")) {
+                // Seconds of log time, fractions allowed
+                long ms = 0;
+                try {
+                    ms = Math.round(Double.parseDouble(arg.substring(arg.indexOf('=') + 1)) * 1000);
+                } catch (NumberFormatException e) {
+                    logger.error("Invalid time : " + arg);
+                    System.exit(-100);
+                }
+                if (arg.startsWith("--from=")) {
+                    fromMs = ms;
+                } else {
+                    toMs = ms;
+                }
+            } else if (arg.startsWith("--")) {
+                logger.error("Unknown option : " + arg);
+                System.exit(-100);
+            } else {
+                positional.add(arg);
+            }
+        }
+
+        RecordFilter filter = null;
+        if (!include.isEmpty() || !exclude.isEmpty() || fromMs > 0 || toMs != Long.MAX_VALUE) {
+            filter = new RecordFilter(include, exclude, fromMs, toMs);
+            logger.info("**** Filter : " + filter);
+        }
+
+        if (batch) {
+            // Every positional argument is a log, a directory or a glob
+            if (positional.isEmpty()) {
+                logger.error("You must pass in the logs, directories or globs to decode");
+                System.exit(-100);
+            }
+            int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+            BatchDecoder decoder = new BatchDecoder(uavo, workers, new File(outDir), outputFormat);
+            decoder.setInputMode(inputMode);
+            decoder.setFilter(filter);
+            int failed = 0;
+            try {
+                for (BatchDecoder.Result result : decoder.decode(BatchDecoder.findLogs(positional))) {
+                    if (result.failure != null) failed++;
+                }
+            } catch (IOException e) {
+                logger.error("Failed to decode batch", e);
+                System.exit(-100);
+            }
+            System.exit(failed == 0 ? 0 : 1);
+        }
+
+        if(positional.size() > 0){
+            filepath = positional.get(0);
 
-            if(args.length > 2) {
-                uavo = args[1];
+            if(positional.size() > 1) {
+                uavo = positional.get(1);
             }
         }
         else{
@@ -35,6 +159,24 @@ public class App
         }
 
 
+        if (servePort >= 0) {
+            // Replay the log to whoever connects, until killed
+            try {
+                ReplayServer server = new ReplayServer(new File(filepath), servePort);
+                server.setSpeed(speed);
+                server.setSlowConsumerPolicy(slowClientPolicy, TelemetryFanOut.DEFAULT_QUEUE_CAPACITY);
+                server.start();
+                while (true) {
+                    logger.info("Waiting for a client on port " + server.getPort());
+                    server.awaitClients(1, 0);
+                    server.replay();
+                }
+            } catch (Exception e) {
+                logger.error("Failed to serve " + filepath, e);
+                System.exit(-100);
+            }
+        }
+
         File f = new File("logs/app.log");
         String g = f.getAbsolutePath();
 
@@ -42,8 +184,29 @@ public class App
 
         logger.info("**** Processing file : " + filepath);
         logger.info("**** UAVO : " + uavo);
-        Logging l = new Logging();
-        l.openFile(filepath,uavo);
+        if (threads > 1 && outputFormat != Logging.OutputFormat.CSV) {
+            logger.error("--threads can only be used with the default output format");
+            System.exit(-100);
+        }
+
+        if (threads > 1) {
+            // Each thread decodes its own slice of the log, merged afterwards
+            try {
+                ParallelLogDecoder decoder = new ParallelLogDecoder(new File(filepath), uavo, threads);
+                decoder.setFilter(filter);
+                decoder.decode(UAVTalk.getDefaultDataOutFile());
+            } catch (IOException e) {
+                logger.error("Failed to decode " + filepath, e);
+                System.exit(-100);
+            }
+        } else {
+            Logging l = new Logging();
+            l.setInputMode(inputMode);
+            l.setHeadless(headless);
+            l.setOutputFormat(outputFormat);
+            l.setFilter(filter);
+            l.openFile(filepath, uavo);
+        }
 
         logger.info("Done processing file, see results in data folder!");
         System.exit(0);
@@ -0,0 +1,300 @@
+package org.openpilot_nonag.tools;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.openpilot_nonag.uavtalk.OPLogReader;
+import org.openpilot_nonag.uavtalk.RecordFilter;
+import org.openpilot_nonag.uavtalk.RecordSink;
+import org.openpilot_nonag.uavtalk.UAVTalk;
+import org.openpilot_nonag.uavtalk.UavoDetector;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes many logs in one JVM on a fixed pool of worker threads.  Every log
+ * is decoded by its own OfflineDecoder, so each has a private
+ * UAVObjectManager and UAVTalk and may use a different UAVO set, and is
+ * written to its own output in the output directory, replacing the output
+ * of an earlier run.  A failed log does not stop the batch, it is reported
+ * in the summary.
+ */
+public class BatchDecoder {
+
+    static final Logger logger = LogManager.getLogger(BatchDecoder.class.getName());
+
+    public static final String LOG_EXTENSION = ".opl";
+    public static final String SUMMARY_FILE = "summary.csv";
+
+    /**
+     * The outcome of decoding one log
+     */
+    public static class Result {
+        public final File logFile;
+        //! The file written, a directory of files for COLUMNS
+        public final File output;
+        public long records;
+        public long objects;
+        public long errors;
+        public long skippedBytes;
+        public long elapsedMs;
+        //! Null if the log was decoded
+        public String failure;
+
+        Result(File logFile, File output) {
+            this.logFile = logFile;
+            this.output = output;
+        }
+    }
+
+    private final String jarfile;
+    private final int threads;
+    private final File outDir;
+    private final Logging.OutputFormat outputFormat;
+    private Logging.InputMode inputMode = Logging.InputMode.MAPPED;
+    private RecordFilter filter;
+
+    /**
+     * @param jarfile The UAVO set to start each log with, switched per log to
+     *                the set named in its FirmwareIAPObj when available
+     * @param threads Number of logs decoded at the same time
+     * @param outDir  Where the outputs and the summary are written
+     */
+    public BatchDecoder(String jarfile, int threads, File outDir, Logging.OutputFormat outputFormat) {
+        this.jarfile = jarfile;
+        this.threads = Math.max(1, threads);
+        this.outDir = outDir;
+        this.outputFormat = outputFormat;
+    }
+
+    public void setInputMode(Logging.InputMode inputMode) {
+        this.inputMode = inputMode;
+    }
+
+    /**
+     * Only decode the records the filter accepts, null for all
+     */
+    public void setFilter(RecordFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Find the logs named by the arguments.  A directory stands for every
+     * .opl file below it, an argument holding any of *?[{ is a glob such as
+     * logs/OP-2014-07-*.opl and anything else is taken as a log file.
+     * @return The logs in path order without duplicates
+     */
+    public static List<File> findLogs(List<String> args) throws IOException {
+        SortedSet<File> logs = new TreeSet<File>();
+        for (String arg : args) {
+            File file = new File(arg);
+            if (isGlob(arg)) {
+                findGlob(arg, logs);
+            } else if (file.isDirectory()) {
+                findAll(file.toPath(), FileSystems.getDefault().getPathMatcher("glob:**" + LOG_EXTENSION), logs);
+            } else if (file.exists()) {
+                logs.add(file);
+            } else {
+                logger.warn("No such log " + arg);
+            }
+        }
+        return new ArrayList<File>(logs);
+    }
+
+    private static boolean isGlob(String arg) {
+        for (char c : "*?[{".toCharArray()) {
+            if (arg.indexOf(c) >= 0)
+                return true;
+        }
+        return false;
+    }
+
+    private static void findGlob(String glob, SortedSet<File> logs) throws IOException {
+        // Walk from the directory above the first wildcard
+        String separators = File.separatorChar == '/' ? "/" : "/" + File.separatorChar;
+        int wildcard = 0;
+        while (!isGlob(glob.substring(0, wildcard + 1)))
+            wildcard++;
+        int baseEnd = -1;
+        for (char c : separators.toCharArray()) {
+            baseEnd = Math.max(baseEnd, glob.lastIndexOf(c, wildcard));
+        }
+        Path base = Paths.get(baseEnd < 0 ? "" : glob.substring(0, baseEnd + 1));
+        findAll(base, FileSystems.getDefault().getPathMatcher("glob:" + glob), logs);
+    }
+
+    private static void findAll(Path base, final PathMatcher matcher, final SortedSet<File> logs) throws IOException {
+        if (!Files.isDirectory(base))
+            return;
+        Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && matcher.matches(path))
+                    logs.add(path.toFile());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Decode the logs and write the summary
+     * @return One result per log, in the order given
+     * @throws IOException
+     */
+    public List<Result> decode(List<File> logs) throws IOException {
+        outDir.mkdirs();
+        logger.info("Decoding " + logs.size() + " logs on " + threads + " threads into " + outDir);
+
+        List<Result> results = new ArrayList<Result>();
+        Set<String> names = new HashSet<String>();
+        for (File log : logs) {
+            results.add(new Result(log, Logging.outputFile(outputFormat, new File(outDir, outputName(log, names)))));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>();
+            for (final Result result : results) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        decodeLog(result);
+                        return result;
+                    }
+                }));
+            }
+            for (Future<Result> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to decode", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        writeSummary(results, new File(outDir, SUMMARY_FILE));
+        return results;
+    }
+
+    /**
+     * The log name without extension, made unique within the batch
+     */
+    private static String outputName(File log, Set<String> names) {
+        String name = log.getName();
+        if (name.endsWith(LOG_EXTENSION))
+            name = name.substring(0, name.length() - LOG_EXTENSION.length());
+        String unique = name;
+        for (int i = 1; !names.add(unique); i++) {
+            unique = name + "-" + i;
+        }
+        return unique;
+    }
+
+    /**
+     * Delete what an earlier run wrote for the log, a file or a COLUMNS
+     * directory
+     */
+    private static void deleteOutput(File output) throws IOException {
+        if (output.exists())
+            FileUtils.forceDelete(output);
+    }
+
+    /**
+     * The sink a log is decoded into, a Logging sink writing result.output
+     */
+    RecordSink createSink(Result result) throws IOException {
+        return Logging.createSink(outputFormat, result.output);
+    }
+
+    private void decodeLog(Result result) {
+        long start = System.currentTimeMillis();
+        OPLogReader reader = null;
+        RecordSink sink = null;
+        try {
+            if (inputMode == Logging.InputMode.MAPPED) {
+                reader = OPLogReader.map(result.logFile);
+            } else {
+                reader = OPLogReader.open(new BufferedInputStream(new FileInputStream(result.logFile)));
+            }
+            // The sinks append, start afresh when re-running into the same directory
+            deleteOutput(result.output);
+            sink = createSink(result);
+            OfflineDecoder decoder = new OfflineDecoder(UavoDetector.resolve(result.logFile, jarfile), sink, true);
+            decoder.setFilter(filter);
+            decoder.decode(reader);
+
+            UAVTalk.ComStats stats = decoder.getUAVTalk().getStats();
+            result.objects = stats.rxObjects;
+            result.errors = stats.rxErrors;
+        } catch (Exception e) {
+            logger.error("Failed to decode " + result.logFile, e);
+            result.failure = e.toString();
+        } finally {
+            if (reader != null) {
+                result.records = reader.getRecordCount();
+                result.skippedBytes = reader.getSkippedBytes();
+                closeQuietly(reader);
+            }
+            if (sink != null) {
+                closeQuietly(sink);
+            }
+            result.elapsedMs = System.currentTimeMillis() - start;
+        }
+        logger.info(result.logFile + " : " + (result.failure == null ? "" : "FAILED, ")
+                + result.records + " records, " + result.objects + " objects, "
+                + result.errors + " errors in " + result.elapsedMs + " ms");
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            logger.error("Failed to close", e);
+        }
+    }
+
+    /**
+     * Quote a field that holds a comma, quote or line break, doubling its
+     * quotes
+     */
+    static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+            return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    static void writeSummary(List<Result> results, File summaryFile) throws IOException {
+        long objects = 0;
+        int failed = 0;
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(summaryFile), "UTF-8"));
+        try {
+            out.write("log,output,records,objects,errors,skipped bytes,ms,failure\n");
+            for (Result result : results) {
+                // A log without records writes nothing, leave the output empty
+                String output = result.output.exists() ? result.output.getPath() : "";
+                out.write(csvField(result.logFile.getPath()) + "," + csvField(output) + ","
+                        + result.records + "," + result.objects + "," + result.errors + ","
+                        + result.skippedBytes + "," + result.elapsedMs + ","
+                        + (result.failure == null ? "" : csvField(result.failure)) + "\n");
+                objects += result.objects;
+                if (result.failure != null)
+                    failed++;
+            }
+        } finally {
+            out.close();
+        }
+        logger.info("Decoded " + (results.size() - failed) + " of " + results.size() + " logs, "
+                + objects + " objects, summary in " + summaryFile);
+    }
+}
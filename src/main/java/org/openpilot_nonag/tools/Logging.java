@@ -1,10 +1,17 @@
 package org.openpilot_nonag.tools;
 
 import org.openpilot_nonag.telemetry.OPTelemetryService;
+import org.openpilot_nonag.uavtalk.ArchiveRecordSink;
+import org.openpilot_nonag.uavtalk.ColumnarCsvRecordSink;
+import org.openpilot_nonag.uavtalk.CsvRecordSink;
+import org.openpilot_nonag.uavtalk.OPLogReader;
+import org.openpilot_nonag.uavtalk.RecordFilter;
+import org.openpilot_nonag.uavtalk.RecordSink;
 import org.openpilot_nonag.uavtalk.Telemetry;
 import org.openpilot_nonag.uavtalk.TelemetryMonitor;
 import org.openpilot_nonag.uavtalk.UAVObjectManager;
 import org.openpilot_nonag.uavtalk.UAVTalk;
+import org.openpilot_nonag.uavtalk.UavoDetector;
 import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
 
 import java.io.*;
@@ -14,6 +21,96 @@ import java.io.*;
  */
 public class Logging {
 
+    /**
+     * How the log file is read
+     */
+    public enum InputMode {
+        STREAM, /** Read through a buffered stream */
+        MAPPED  /** Memory map the file and decode the packets in place */
+    };
+
+    /**
+     * What the decoded objects are written as
+     */
+    public enum OutputFormat {
+        CSV,    /** One file with a line per update of any object */
+        COLUMNS, /** A directory with a file per object type, see ColumnarCsvRecordSink */
+        ARCHIVE  /** A binary columnar archive, see ArchiveRecordSink */
+    };
+
+    private InputMode inputMode = InputMode.STREAM;
+    private boolean headless = false;
+    private OutputFormat outputFormat = OutputFormat.CSV;
+    private RecordFilter filter;
+
+    public void setInputMode(InputMode inputMode) {
+        this.inputMode = inputMode;
+    }
+
+    /**
+     * Decode with an OfflineDecoder instead of the full Telemetry and
+     * TelemetryMonitor stack
+     */
+    public void setHeadless(boolean headless) {
+        this.headless = headless;
+    }
+
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * Only decode the records the filter accepts, null for all
+     */
+    public void setFilter(RecordFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * The sink for this run, in the data folder
+     */
+    RecordSink createSink() throws IOException {
+        String path = UAVTalk.getDefaultDataOutFile().getPath();
+        return createSink(outputFormat, outputFile(outputFormat, new File(path.substring(0, path.lastIndexOf('.')))));
+    }
+
+    /**
+     * The file a sink of the given format writes for baseName, baseName
+     * with the extension of the format, or a directory for COLUMNS
+     */
+    static File outputFile(OutputFormat format, File baseName) {
+        switch (format) {
+            case COLUMNS:
+                return baseName;
+            case ARCHIVE:
+                return new File(baseName.getPath() + ".opa");
+            default:
+                return new File(baseName.getPath() + ".txt");
+        }
+    }
+
+    /**
+     * A sink writing the given format to output, see outputFile()
+     */
+    static RecordSink createSink(OutputFormat format, File output) throws IOException {
+        switch (format) {
+            case COLUMNS:
+                return new ColumnarCsvRecordSink(output);
+            case ARCHIVE:
+                return new ArchiveRecordSink(output);
+            default:
+                return new CsvRecordSink(output);
+        }
+    }
+
+    public void openFile(String filePath, String jarfile, InputMode mode){
+        setInputMode(mode);
+        openFile(filePath, jarfile);
+    }
+
+    /**
+     * Decode a log file into the data folder
+     */
     public void openFile(String filePath, String jarfile){
 
         File logFile = null;
@@ -22,10 +119,30 @@ public class Logging {
         Telemetry tel = null;
         TelemetryMonitor telMon = null;
         OPTelemetryService telemService;
+        OPLogReader reader;
+        RecordSink sink = null;
 
         try {
             logFile = new File(filePath);
-            fileInputStream =  new BufferedInputStream(new FileInputStream(logFile));
+            // Start with the UAVO set the log names so no objects are dropped
+            // before its FirmwareIAPObj update
+            jarfile = UavoDetector.resolve(logFile, jarfile);
+            if (inputMode == InputMode.MAPPED) {
+                reader = OPLogReader.map(logFile);
+            } else {
+                fileInputStream = new BufferedInputStream(new FileInputStream(logFile));
+                reader = OPLogReader.open(fileInputStream);
+            }
+
+            sink = createSink();
+
+            if (headless) {
+                OfflineDecoder decoder = new OfflineDecoder(jarfile, sink, true);
+                decoder.setFilter(filter);
+                decoder.decode(reader);
+                reader.close();
+                return;
+            }
 
             UAVObjectManager objManager = new UAVObjectManager();
 
@@ -33,12 +150,19 @@ public class Logging {
 
             telemService = new OPTelemetryService();
             uavTalk = new UAVTalk(fileInputStream, null, objManager);
+            uavTalk.setRecordSink(sink);
             tel = new Telemetry(uavTalk, objManager);
             telMon = new TelemetryMonitor(objManager,tel, telemService, jarfile);
+            if (filter != null) {
+                reader.setFilter(filter.bind(objManager));
+            }
 
-            while(uavTalk.processInputStream()){
-                //System.out.println("run");
+            // The log is framed into records so hand whole packets to UAVTalk
+            // rather than feeding it one byte at a time
+            while(reader.next()){
+                uavTalk.processPacket(reader.getPacket(), reader.getTimestamp());
             }
+            reader.close();
 
 
 
@@ -46,6 +170,14 @@ public class Logging {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            if (sink != null) {
+                try {
+                    sink.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
         }
 
     }
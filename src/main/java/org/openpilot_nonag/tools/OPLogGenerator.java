@@ -0,0 +1,316 @@
+package org.openpilot_nonag.tools;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.openpilot_nonag.telemetry.OPTelemetryService;
+import org.openpilot_nonag.uavtalk.OPLogReader;
+import org.openpilot_nonag.uavtalk.UAVDataObject;
+import org.openpilot_nonag.uavtalk.UAVObject;
+import org.openpilot_nonag.uavtalk.UAVObjectField;
+import org.openpilot_nonag.uavtalk.UAVObjectManager;
+import org.openpilot_nonag.uavtalk.UAVTalk;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Writes synthetic OPL logs of any length from the UAVO definitions of an
+ * object manager.  Every data object is sent at the rate its metadata asks
+ * of the flight telemetry, settings and objects without a period are sent
+ * once at the start, and each periodic update changes one value so the log
+ * does not repeat itself.  Optionally some records are corrupted the ways
+ * real logs are: a bad checksum, a record cut short or garbage between
+ * records.  The output only depends on the seed and the values the objects
+ * start with.
+ */
+public class OPLogGenerator {
+
+    static final Logger logger = LogManager.getLogger(OPLogGenerator.class.getName());
+
+    //! How often objects updated on change are sent
+    public static final int ON_CHANGE_PERIOD_MS = 5000;
+
+    //! The largest run of garbage written between two records
+    static final int MAX_GARBAGE_LENGTH = 32;
+
+    public enum Corruption {
+        //! The packet checksum is wrong
+        BAD_CRC,
+        //! The record ends before the length in its header says
+        TRUNCATED,
+        //! Random bytes are written before the record
+        GARBAGE
+    }
+
+    /**
+     * An object instance and when it is sent next
+     */
+    private static class Source implements Comparable<Source> {
+        final UAVObject obj;
+        final int periodMs;
+        final int order;
+        long next;
+
+        Source(UAVObject obj, int periodMs, int order) {
+            this.obj = obj;
+            this.periodMs = periodMs;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Source o) {
+            if (next != o.next)
+                return next < o.next ? -1 : 1;
+            return order - o.order;
+        }
+    }
+
+    private final UAVObjectManager objManager;
+    private final Random random;
+    private final Map<String, Integer> periods = new HashMap<String, Integer>();
+    private final Map<String, Integer> instances = new HashMap<String, Integer>();
+    private final Map<Corruption, Double> corruption = new EnumMap<Corruption, Double>(Corruption.class);
+
+    private final ByteBuffer record = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] garbage = new byte[MAX_GARBAGE_LENGTH];
+
+    private long recordCount;
+    private long corruptCount;
+    private long byteCount;
+
+    /**
+     * @param objManager The UAVO set to write, its objects are used to pack
+     *                   the updates so their values change
+     * @param seed       Seed of the values, update jitter and corruption
+     */
+    public OPLogGenerator(UAVObjectManager objManager, long seed) {
+        this.objManager = objManager;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Send the named object every periodMs instead of at its metadata rate,
+     * 0 to send it only once at the start
+     */
+    public void setUpdatePeriod(String name, int periodMs) {
+        periods.put(name, periodMs);
+    }
+
+    /**
+     * Send count instances of the named object, only for objects that are
+     * not single instance
+     */
+    public void setInstances(String name, int count) {
+        instances.put(name, count);
+    }
+
+    /**
+     * Corrupt each record with the given probability
+     */
+    public void setCorruptionRate(Corruption kind, double probability) {
+        corruption.put(kind, probability);
+    }
+
+    /**
+     * Get the number of records written by the last generate()
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Get the number of records the last generate() corrupted
+     */
+    public long getCorruptCount() {
+        return corruptCount;
+    }
+
+    /**
+     * Write a log to the file, see generate(OutputStream, long, long)
+     * @return The number of bytes written
+     */
+    public long generate(File file, long durationMs, long maxBytes) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20);
+        try {
+            return generate(out, durationMs, maxBytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write a log covering durationMs, or until maxBytes have been written if
+     * that comes first.  The stream is not closed.
+     * @return The number of bytes written
+     */
+    public long generate(OutputStream out, long durationMs, long maxBytes) throws IOException {
+        recordCount = 0;
+        corruptCount = 0;
+        byteCount = 0;
+
+        PriorityQueue<Source> schedule = createSchedule();
+        while (!schedule.isEmpty() && byteCount < maxBytes) {
+            Source source = schedule.poll();
+            if (source.next > durationMs)
+                break;
+
+            if (source.periodMs > 0) {
+                changeValue(source.obj);
+            }
+            writeRecord(out, source.next, source.obj);
+
+            if (source.periodMs > 0) {
+                // Up to 10% jitter, as the flight side schedules loosely too
+                source.next += source.periodMs + random.nextInt(source.periodMs / 10 + 1);
+                schedule.add(source);
+            }
+        }
+        return byteCount;
+    }
+
+    private PriorityQueue<Source> createSchedule() {
+        PriorityQueue<Source> schedule = new PriorityQueue<Source>();
+        int order = 0;
+        for (List<UAVDataObject> list : objManager.getDataObjects()) {
+            UAVDataObject obj = list.get(0);
+            int period = getUpdatePeriod(obj);
+            int count = 1;
+            Integer configured = instances.get(obj.getName());
+            if (configured != null && !obj.isSingleInstance())
+                count = configured;
+
+            for (int instId = 0; instId < count; instId++) {
+                UAVObject inst = instId < list.size() ? list.get(instId) : obj.clone(instId);
+                Source source = new Source(inst, period, order++);
+                // Spread the first updates over one period
+                source.next = period > 0 ? random.nextInt(period) : 0;
+                schedule.add(source);
+            }
+        }
+        return schedule;
+    }
+
+    private int getUpdatePeriod(UAVDataObject obj) {
+        Integer configured = periods.get(obj.getName());
+        if (configured != null)
+            return configured;
+        if (obj.isSettings())
+            return 0;
+
+        UAVObject.Metadata mdata = obj.getMetadata();
+        switch (mdata.GetFlightTelemetryUpdateMode()) {
+            case UPDATEMODE_PERIODIC:
+            case UPDATEMODE_THROTTLED:
+                return mdata.flightTelemetryUpdatePeriod > 0 ? mdata.flightTelemetryUpdatePeriod : ON_CHANGE_PERIOD_MS;
+            case UPDATEMODE_ONCHANGE:
+                return ON_CHANGE_PERIOD_MS;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Move one element of the object a little, floats and integers by a
+     * random step and enums to a random option
+     */
+    private void changeValue(UAVObject obj) {
+        List<UAVObjectField> fields = obj.getFields();
+        if (fields.isEmpty())
+            return;
+        UAVObjectField field = fields.get(random.nextInt(fields.size()));
+        int index = random.nextInt(field.getNumElements());
+        switch (field.getType()) {
+            case FLOAT32:
+                field.setDouble(field.getDouble(index) + random.nextGaussian(), index);
+                break;
+            case ENUM:
+                if (!field.getOptions().isEmpty())
+                    field.setValue(random.nextInt(field.getOptions().size()), index);
+                break;
+            case STRING:
+                break;
+            default:
+                field.setDouble(field.getDouble(index) + random.nextInt(3) - 1, index);
+                break;
+        }
+    }
+
+    private void writeRecord(OutputStream out, long timestamp, UAVObject obj) throws IOException {
+        record.clear();
+        record.position(OPLogReader.RECORD_HEADER_LENGTH);
+        int length;
+        try {
+            length = UAVTalk.framePacket(record, obj);
+        } catch (Exception e) {
+            throw new IOException("Failed to pack " + obj.getName(), e);
+        }
+        if (length == 0) {
+            logger.warn("Skipping " + obj.getName() + ", it does not fit in a packet");
+            return;
+        }
+        record.putInt(0, (int) timestamp);
+        record.putLong(4, length);
+        int recordLength = OPLogReader.RECORD_HEADER_LENGTH + length;
+
+        if (corrupt(Corruption.GARBAGE)) {
+            int garbageLength = 1 + random.nextInt(MAX_GARBAGE_LENGTH);
+            random.nextBytes(garbage);
+            out.write(garbage, 0, garbageLength);
+            byteCount += garbageLength;
+        }
+        if (corrupt(Corruption.BAD_CRC)) {
+            int crc = recordLength - 1;
+            record.put(crc, (byte) (record.get(crc) ^ (1 + random.nextInt(255))));
+        }
+        if (corrupt(Corruption.TRUNCATED)) {
+            recordLength = OPLogReader.RECORD_HEADER_LENGTH + random.nextInt(length);
+        }
+
+        out.write(record.array(), 0, recordLength);
+        byteCount += recordLength;
+        recordCount++;
+    }
+
+    private boolean corrupt(Corruption kind) {
+        Double probability = corruption.get(kind);
+        if (probability == null || random.nextDouble() >= probability)
+            return false;
+        corruptCount++;
+        return true;
+    }
+
+    /**
+     * Write a synthetic log of about the given size,
+     * usage: OPLogGenerator <out file> <size in MB> [<uavo jar>] [<seed>]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            logger.error("usage: OPLogGenerator <out file> <size in MB> [<uavo jar>] [<seed>]");
+            System.exit(-100);
+        }
+        File file = new File(args[0]);
+        long maxBytes = Long.parseLong(args[1]) << 20;
+        String jarfile = args.length > 2 ? args[2] : App.LATEST_UAVO;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        new OPTelemetryService().loadUavobjects(jarfile, objManager);
+
+        OPLogGenerator generator = new OPLogGenerator(objManager, seed);
+        long bytes = generator.generate(file, Long.MAX_VALUE, maxBytes);
+        logger.info("Wrote " + generator.getRecordCount() + " records, " + bytes + " bytes to " + file);
+    }
+}
@@ -0,0 +1,141 @@
+package org.openpilot_nonag.tools;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.openpilot_nonag.telemetry.OPTelemetryService;
+import org.openpilot_nonag.uavtalk.OPLogIndex;
+import org.openpilot_nonag.uavtalk.OPLogReader;
+import org.openpilot_nonag.uavtalk.ObjectUpdateEvent;
+import org.openpilot_nonag.uavtalk.ObjectUpdateListener;
+import org.openpilot_nonag.uavtalk.RecordFilter;
+import org.openpilot_nonag.uavtalk.RecordSink;
+import org.openpilot_nonag.uavtalk.UAVObject;
+import org.openpilot_nonag.uavtalk.UAVObjectManager;
+import org.openpilot_nonag.uavtalk.UAVTalk;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Decodes a log without the Telemetry and TelemetryMonitor used for a live
+ * link, so there are no timers, no per object observers and no transactions.
+ * Only the UAVO definitions are registered and UAVTalk runs passive.
+ */
+public class OfflineDecoder {
+
+    static final Logger logger = LogManager.getLogger(OfflineDecoder.class.getName());
+
+    private final UAVObjectManager objManager;
+    private final UAVTalk uavTalk;
+    private final OPTelemetryService telemService;
+    private final String jarfile;
+    private final UAVObject firmwareIapObj;
+    private RecordFilter filter;
+
+    /**
+     * @param jarfile   The UAVO set to decode with
+     * @param sink      Receives the decoded objects
+     * @param detectUavo Switch to the UAVO set named by the FirmwareIAPObj
+     *                  in the log if it differs from jarfile
+     */
+    public OfflineDecoder(String jarfile, RecordSink sink, boolean detectUavo) {
+        this.jarfile = jarfile;
+        objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        firmwareIapObj = objManager.getObject("FirmwareIAPObj");
+
+        telemService = new OPTelemetryService();
+        telemService.loadUavobjects(jarfile, objManager);
+
+        uavTalk = new UAVTalk(null, null, objManager);
+        uavTalk.setPassive(true);
+        uavTalk.setRecordSink(sink);
+
+        if (detectUavo) {
+            uavTalk.addObjectUpdateListener(firmwareIapListener);
+        }
+    }
+
+    public UAVObjectManager getObjectManager() {
+        return objManager;
+    }
+
+    public UAVTalk getUAVTalk() {
+        return uavTalk;
+    }
+
+    /**
+     * Only decode the records the filter accepts, the others are skipped
+     * by the reader
+     */
+    public void setFilter(RecordFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Decode every record of the log.  The reader is not closed.
+     * @throws IOException
+     */
+    public void decode(OPLogReader reader) throws IOException {
+        if (filter != null) {
+            reader.setFilter(filter.bind(objManager));
+        }
+        while (reader.next()) {
+            uavTalk.processPacket(reader.getPacket(), reader.getTimestamp());
+        }
+    }
+
+    /**
+     * Decode only the named object types logged in [fromMs, toMs), reading
+     * just their records as found by the index of the log
+     * @throws IOException
+     */
+    public void decode(OPLogIndex index, Collection<String> names, long fromMs, long toMs) throws IOException {
+        List<Long> objIds = new ArrayList<Long>();
+        for (String name : names) {
+            UAVObject obj = objManager.getObject(name);
+            if (obj == null) {
+                logger.warn("Unknown object " + name);
+                continue;
+            }
+            objIds.add(obj.getObjID());
+        }
+
+        OPLogReader reader = index.open(objIds, fromMs, toMs);
+        try {
+            decode(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Waits for the first FirmwareIAPObj update, as TelemetryMonitor does,
+     * and loads the UAVO set it names
+     */
+    private final ObjectUpdateListener firmwareIapListener = new ObjectUpdateListener() {
+        @Override
+        public void objectUpdated(ObjectUpdateEvent event) {
+            UAVObject obj = event.getObject();
+            if (obj != firmwareIapObj)
+                return;
+            uavTalk.removeObjectUpdateListener(this);
+
+            String jarName = OPTelemetryService.getUavoJarName(obj);
+            if (jarName == null) {
+                logger.info("Failed to determine UAVO set");
+            } else if (!jarName.equals(jarfile)) {
+                if (new File(OPTelemetryService.JAR_DIR, jarName).exists()) {
+                    logger.info("Log was written with UAVO set " + jarName + ", loading it");
+                    telemService.loadUavobjects(jarName, objManager);
+                } else {
+                    logger.warn("Log was written with UAVO set " + jarName + " which is not available, keeping " + jarfile);
+                }
+            }
+        }
+    };
+}
@@ -0,0 +1,226 @@
+package org.openpilot_nonag.tools;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.openpilot_nonag.uavtalk.CsvRecordSink;
+import org.openpilot_nonag.uavtalk.OPLogMappedReader;
+import org.openpilot_nonag.uavtalk.OPLogReader;
+import org.openpilot_nonag.uavtalk.RecordFilter;
+import org.openpilot_nonag.uavtalk.RecordSink;
+import org.openpilot_nonag.uavtalk.UAVTalk;
+import org.openpilot_nonag.uavtalk.UavoDetector;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes one log file on several threads.  The file is split into chunks on
+ * record boundaries, each chunk is decoded by its own UAVObjectManager and
+ * UAVTalk into a part file and the parts are then merged back in timestamp
+ * order into a single data file.
+ */
+public class ParallelLogDecoder {
+
+    static final Logger logger = LogManager.getLogger(ParallelLogDecoder.class.getName());
+
+    private final File logFile;
+    private final String jarfile;
+    private final int threads;
+    private RecordFilter filter;
+
+    public ParallelLogDecoder(File logFile, String jarfile, int threads) {
+        this.logFile = logFile;
+        this.jarfile = jarfile;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Only decode the records the filter accepts, null for all
+     */
+    public void setFilter(RecordFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Decode the log into dataOutFile
+     * @throws IOException
+     */
+    public void decode(File dataOutFile) throws IOException {
+        // Only the first chunk holds the FirmwareIAPObj, so find the UAVO set
+        // up front and decode every chunk with it
+        final String uavoJar = UavoDetector.resolve(logFile, jarfile);
+        long[] bounds = findChunkBoundaries(logFile, threads);
+        int chunks = bounds.length - 1;
+        logger.info("Decoding " + logFile + " in " + chunks + " chunks on " + threads + " threads");
+
+        File dir = dataOutFile.getAbsoluteFile().getParentFile();
+        if (dir != null) dir.mkdirs();
+
+        final File[] parts = new File[chunks];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int i = 0; i < chunks; i++) {
+                parts[i] = File.createTempFile("opuavo-part" + i + "-", ".txt", dir);
+                final File part = parts[i];
+                final long start = bounds[i];
+                final long end = bounds[i + 1];
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        decodeChunk(uavoJar, start, end, part);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+
+            mergeParts(parts, dataOutFile);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding " + logFile);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to decode " + logFile, e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (File part : parts) {
+                if (part != null) part.delete();
+            }
+        }
+    }
+
+    /**
+     * Split the log into at most chunks ranges of about equal size.  The log is
+     * walked record by record, which only reads the record headers, so every
+     * boundary is the offset of a record the sequential reader would also find.
+     * @return The chunk boundaries, chunk i covers [bounds[i], bounds[i+1])
+     */
+    static long[] findChunkBoundaries(File logFile, int chunks) throws IOException {
+        long length = logFile.length();
+        long chunkSize = Math.max(1, length / chunks);
+
+        List<Long> bounds = new ArrayList<Long>();
+        bounds.add(0L);
+        long nextSplit = chunkSize;
+
+        OPLogReader reader = OPLogReader.map(logFile);
+        try {
+            while (bounds.size() < chunks && reader.next()) {
+                if (reader.getRecordOffset() >= nextSplit) {
+                    bounds.add(reader.getRecordOffset());
+                    nextSplit = reader.getRecordOffset() + chunkSize;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        bounds.add(length);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Decode the records in [start, end) with a private set of UAVObjects
+     */
+    private void decodeChunk(String uavoJar, long start, long end, File partFile) throws IOException {
+        RecordSink sink = new CsvRecordSink(partFile);
+        OfflineDecoder decoder = new OfflineDecoder(uavoJar, sink, false);
+        decoder.setFilter(filter);
+
+        OPLogReader reader = new OPLogMappedReader(logFile, start, end);
+        try {
+            decoder.decode(reader);
+        } finally {
+            reader.close();
+            sink.close();
+        }
+
+        UAVTalk.ComStats stats = decoder.getUAVTalk().getStats();
+        logger.info("Chunk [" + start + ", " + end + ") : " + reader.getRecordCount() + " records, "
+                + stats.rxObjects + " objects, " + stats.rxErrors + " errors");
+    }
+
+    /**
+     * A line read from a part file, ordered by timestamp and then by chunk so
+     * records with the same timestamp keep their order in the log
+     */
+    private static class PartLine implements Comparable<PartLine> {
+        final BufferedReader in;
+        final int chunk;
+        String data;
+        long timestamp;
+
+        PartLine(BufferedReader in, int chunk) {
+            this.in = in;
+            this.chunk = chunk;
+        }
+
+        /**
+         * Read the next row, the event number of the part is dropped
+         * @return False at the end of the part
+         */
+        boolean advance() throws IOException {
+            String line = in.readLine();
+            if (line == null)
+                return false;
+            int eventEnd = line.indexOf(',');
+            int timeEnd = line.indexOf(',', eventEnd + 1);
+            timestamp = Long.parseLong(line.substring(eventEnd + 1, timeEnd));
+            data = line.substring(eventEnd + 1);
+            return true;
+        }
+
+        @Override
+        public int compareTo(PartLine o) {
+            if (timestamp != o.timestamp)
+                return timestamp < o.timestamp ? -1 : 1;
+            return chunk - o.chunk;
+        }
+    }
+
+    /**
+     * Merge the part files by timestamp, numbering the events again from 0
+     */
+    static void mergeParts(File[] parts, File dataOutFile) throws IOException {
+        PriorityQueue<PartLine> heads = new PriorityQueue<PartLine>();
+        List<BufferedReader> readers = new ArrayList<BufferedReader>();
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dataOutFile, true)));
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                if (!parts[i].exists()) continue;
+                BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(parts[i])));
+                readers.add(in);
+                PartLine head = new PartLine(in, i);
+                if (head.advance()) heads.add(head);
+            }
+
+            long event = 0;
+            while (!heads.isEmpty()) {
+                PartLine head = heads.poll();
+                out.write(Long.toString(event++));
+                out.write(',');
+                out.write(head.data);
+                out.write('\n');
+                if (head.advance()) heads.add(head);
+            }
+        } finally {
+            out.close();
+            for (BufferedReader in : readers) {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package org.openpilot_nonag.tools;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.openpilot_nonag.uavtalk.OPLogReader;
+import org.openpilot_nonag.uavtalk.TelemetryExecutors;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Serves a log over TCP as if the flight was live.  The UAVTalk packets of
+ * the log are sent unchanged to every connected client at the times they were
+ * recorded, optionally sped up.  Each packet is due at a deadline computed
+ * from the start of the replay and its timestamp, so waiting late for one
+ * packet does not delay the ones after it.  The packets reach the clients
+ * through a TelemetryFanOut, so a slow client is handled by its policy
+ * instead of holding up the replay.  Whatever the clients send is read and
+ * discarded.
+ */
+public class ReplayServer implements Closeable {
+
+    static final Logger logger = LogManager.getLogger(ReplayServer.class.getName());
+
+    //! Speed at which the packets are sent without waiting
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+
+    //! Parking often wakes tens of microseconds late, so the last stretch before a deadline is spun
+    static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * A connected client and the thread draining what it sends
+     */
+    private class Client implements Runnable {
+        final Socket socket;
+        final TelemetryFanOut.Client output;
+        final Thread drainThread;
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            output = fanOut.addClient(socket.getRemoteSocketAddress().toString(), socket.getOutputStream(), socket);
+            drainThread = TelemetryExecutors.newThread("Replay client " + socket.getRemoteSocketAddress(), this);
+        }
+
+        @Override
+        public void run() {
+            byte[] discard = new byte[1024];
+            try {
+                InputStream in = socket.getInputStream();
+                while (in.read(discard) >= 0) {
+                }
+            } catch (IOException e) {
+                // Closed by either side
+            }
+            disconnect(this);
+        }
+
+        void close() {
+            output.close();
+        }
+    }
+
+    private final File logFile;
+    private final ServerSocket serverSocket;
+    private final List<Client> clients = new CopyOnWriteArrayList<Client>();
+    private final Object clientsChanged = new Object();
+    private TelemetryFanOut fanOut;
+    private Thread acceptThread;
+    private volatile boolean closed;
+    private double speed = 1;
+    private int queueCapacity = TelemetryFanOut.DEFAULT_QUEUE_CAPACITY;
+    private TelemetryFanOut.SlowConsumerPolicy policy = TelemetryFanOut.SlowConsumerPolicy.DROP_OLDEST;
+
+    private long packetsSent;
+    private long bytesSent;
+    private long maxLatenessNanos;
+
+    /**
+     * @param port The port to listen on, 0 for any free port
+     */
+    public ReplayServer(File logFile, int port) throws IOException {
+        this.logFile = logFile;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+    }
+
+    /**
+     * Replay at speed times the recorded rate, AS_FAST_AS_POSSIBLE to send
+     * the packets without waiting.  Takes effect at the next replay().
+     */
+    public void setSpeed(double speed) {
+        if (speed < 0 || Double.isNaN(speed))
+            throw new IllegalArgumentException("Invalid replay speed " + speed);
+        this.speed = speed;
+    }
+
+    /**
+     * Set how clients that fall behind are handled, before start()
+     * @param queueCapacity The number of packets a client may fall behind
+     */
+    public void setSlowConsumerPolicy(TelemetryFanOut.SlowConsumerPolicy policy, int queueCapacity) {
+        this.policy = policy;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Get the number of packets sent by the last replay()
+     */
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * Get the number of bytes sent to each client by the last replay()
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Get the most any packet of the last replay() was sent after it was due
+     */
+    public long getMaxLatenessNanos() {
+        return maxLatenessNanos;
+    }
+
+    /**
+     * Start accepting clients
+     */
+    public void start() {
+        fanOut = new TelemetryFanOut(queueCapacity, policy);
+        acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptClients();
+            }
+        }, "Replay server " + getPort());
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        logger.info("Serving " + logFile + " on port " + getPort());
+    }
+
+    private void acceptClients() {
+        while (!closed) {
+            try {
+                Client client = new Client(serverSocket.accept());
+                synchronized (clientsChanged) {
+                    clients.add(client);
+                    clientsChanged.notifyAll();
+                }
+                client.drainThread.start();
+                logger.info("Client connected from " + client.socket.getRemoteSocketAddress());
+            } catch (SocketException e) {
+                // The server socket was closed
+            } catch (IOException e) {
+                logger.error("Failed to accept client", e);
+            }
+        }
+    }
+
+    private void disconnect(Client client) {
+        synchronized (clientsChanged) {
+            if (!clients.remove(client))
+                return;
+            clientsChanged.notifyAll();
+        }
+        client.close();
+        logger.info("Client " + client.socket.getRemoteSocketAddress() + " disconnected");
+    }
+
+    /**
+     * Wait until at least count clients are connected
+     * @param timeoutMs How long to wait, 0 to wait forever
+     * @return False if the time ran out first
+     */
+    public boolean awaitClients(int count, long timeoutMs) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMs;
+        synchronized (clientsChanged) {
+            while (clients.size() < count && !closed) {
+                long remaining = timeoutMs == 0 ? 0 : end - System.currentTimeMillis();
+                if (timeoutMs != 0 && remaining <= 0)
+                    return false;
+                clientsChanged.wait(remaining);
+            }
+        }
+        return clients.size() >= count;
+    }
+
+    /**
+     * Send the log once to the connected clients.  Clients connecting during
+     * the replay join it from the next packet.
+     * @throws IOException if the log cannot be read
+     */
+    public void replay() throws IOException {
+        double speed = this.speed;
+        packetsSent = 0;
+        bytesSent = 0;
+        maxLatenessNanos = 0;
+
+        OPLogReader reader = OPLogReader.map(logFile);
+        try {
+            long start = System.nanoTime();
+            long firstTimestamp = -1;
+            long lastOffset = 0;
+            while (!closed && reader.next()) {
+                if (speed != AS_FAST_AS_POSSIBLE) {
+                    if (firstTimestamp < 0)
+                        firstTimestamp = reader.getTimestamp();
+                    // Never earlier than the packet before, timestamps of a
+                    // damaged log can go backwards
+                    long offset = (long) ((reader.getTimestamp() - firstTimestamp) * 1e6 / speed);
+                    lastOffset = Math.max(lastOffset, offset);
+                    long deadline = start + lastOffset;
+                    if (deadline - System.nanoTime() > 0)
+                        waitUntil(deadline);
+                    maxLatenessNanos = Math.max(maxLatenessNanos, System.nanoTime() - deadline);
+                }
+                try {
+                    fanOut.publish(reader.getPacket());
+                } catch (IOException e) {
+                    // Closed during the replay
+                    if (closed)
+                        break;
+                    throw e;
+                }
+                bytesSent += reader.getPacket().remaining();
+                packetsSent++;
+            }
+        } finally {
+            reader.close();
+        }
+        logger.info("Replayed " + packetsSent + " packets, " + bytesSent + " bytes, at most "
+                + TimeUnit.NANOSECONDS.toMicros(maxLatenessNanos) + " us late");
+    }
+
+    private static void waitUntil(long deadline) throws InterruptedIOException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.yield();
+            }
+            if (Thread.interrupted())
+                throw new InterruptedIOException("Interrupted while replaying");
+        }
+    }
+
+    /**
+     * Stop accepting clients and disconnect the connected ones once they
+     * have been sent what is queued for them
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        synchronized (clientsChanged) {
+            clientsChanged.notifyAll();
+        }
+        if (fanOut != null)
+            fanOut.close();
+        for (Client client : clients) {
+            disconnect(client);
+        }
+    }
+}
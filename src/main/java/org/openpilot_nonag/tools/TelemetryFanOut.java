@@ -0,0 +1,308 @@
+package org.openpilot_nonag.tools;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.openpilot_nonag.uavtalk.TelemetryExecutors;
+import org.openpilot_nonag.uavtalk.UAVObject;
+import org.openpilot_nonag.uavtalk.UAVTalk;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends one stream of UAVTalk packets to many clients.  Each packet is copied
+ * or framed once into an array that is then shared by all clients and never
+ * written again.  Every client has a bounded queue of packets and its own
+ * writer thread, so a slow client only holds up the others if the policy
+ * says so.
+ */
+public class TelemetryFanOut implements Closeable {
+
+    static final Logger logger = LogManager.getLogger(TelemetryFanOut.class.getName());
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    //! How long close() waits for the clients to write what they have queued
+    static final long CLOSE_TIMEOUT_MS = 5000;
+
+    static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * What to do with a packet for a client whose queue is full
+     */
+    public enum SlowConsumerPolicy {
+        //! Drop the oldest queued packet to make room, the client misses packets
+        DROP_OLDEST,
+        //! Disconnect the client
+        DISCONNECT,
+        //! Wait for room, which holds up the publisher and so every client
+        BLOCK
+    }
+
+    //! Queued to end a writer once the packets before it are written
+    private static final byte[] END = new byte[0];
+
+    /**
+     * A client and the thread writing its queue
+     */
+    public class Client implements Runnable {
+        private final String name;
+        private final OutputStream out;
+        private final Closeable connection;
+        private final BlockingQueue<byte[]> queue;
+        private final Thread writer;
+        private volatile boolean closed;
+        //! Set once END is to be queued, no packet is queued after it
+        private volatile boolean finishing;
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile long packetsWritten;
+
+        Client(String name, OutputStream out, Closeable connection) {
+            this.name = name;
+            this.out = new BufferedOutputStream(out, WRITE_BUFFER_SIZE);
+            this.connection = connection;
+            queue = new ArrayBlockingQueue<byte[]>(queueCapacity);
+            writer = TelemetryExecutors.newThread("Fan out " + name, this);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Get the number of packets dropped because the client fell behind
+         */
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+
+        public long getPacketsWritten() {
+            return packetsWritten;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    byte[] packet = queue.take();
+                    if (packet == END)
+                        break;
+                    out.write(packet);
+                    packetsWritten++;
+                    // Write out when caught up rather than per packet
+                    if (queue.isEmpty())
+                        out.flush();
+                }
+                out.flush();
+            } catch (IOException e) {
+                logger.info("Failed to write to " + name + ", disconnecting : " + e);
+            } catch (InterruptedException e) {
+                // Closed
+            }
+            close();
+        }
+
+        /**
+         * Queue a packet according to the policy
+         * @throws InterruptedIOException if interrupted waiting for room
+         */
+        synchronized void offer(byte[] packet) throws InterruptedIOException {
+            if (closed || finishing || queue.offer(packet))
+                return;
+            switch (policy) {
+                case DROP_OLDEST:
+                    // Only the writer takes from the queue and END is only
+                    // queued under this lock, so there is room after this and
+                    // END is never dropped
+                    while (!queue.offer(packet)) {
+                        if (queue.poll() != null)
+                            dropped.incrementAndGet();
+                    }
+                    break;
+                case DISCONNECT:
+                    logger.info(name + " fell " + queueCapacity + " packets behind, disconnecting");
+                    close();
+                    break;
+                case BLOCK:
+                    try {
+                        while (!closed && !finishing && !queue.offer(packet, 100, TimeUnit.MILLISECONDS)) {
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting for " + name);
+                    }
+                    break;
+            }
+        }
+
+        /**
+         * Queue END after what is queued, disconnecting if there is no room
+         * for it by the deadline
+         * @param deadline In System.currentTimeMillis() time
+         */
+        void queueEnd(long deadline) throws InterruptedException {
+            // Set first so a publisher waiting for room gives up the lock
+            finishing = true;
+            synchronized (this) {
+                while (!closed && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                    if (System.currentTimeMillis() >= deadline) {
+                        logger.info(name + " did not take what was queued in time, disconnecting");
+                        close();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Wait until the writer has written up to END or the deadline has
+         * passed, and then disconnect
+         * @param deadline In System.currentTimeMillis() time
+         */
+        void awaitEnd(long deadline) throws InterruptedException {
+            long remaining = deadline - System.currentTimeMillis();
+            // join(0) would wait for ever
+            if (remaining > 0)
+                writer.join(remaining);
+            close();
+        }
+
+        /**
+         * Disconnect now, dropping what is queued
+         */
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            clients.remove(this);
+            writer.interrupt();
+            try {
+                connection.close();
+            } catch (IOException e) {
+                logger.error("Failed to close " + name, e);
+            }
+        }
+    }
+
+    private final int queueCapacity;
+    private final SlowConsumerPolicy policy;
+    private final List<Client> clients = new CopyOnWriteArrayList<Client>();
+    //! Larger than any UAVTalk packet
+    private final ByteBuffer frame = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+    private volatile boolean closed;
+    private long packetsPublished;
+
+    public TelemetryFanOut(int queueCapacity, SlowConsumerPolicy policy) {
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("Invalid queue capacity " + queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+    }
+
+    public SlowConsumerPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Start sending the packets published from now on to a client
+     * @param out        Where the packets are written
+     * @param connection Closed when the client is disconnected, for
+     *                   instance the socket of out
+     */
+    public Client addClient(String name, OutputStream out, Closeable connection) throws IOException {
+        if (closed)
+            throw new IOException("Fan out is closed");
+        Client client = new Client(name, out, connection);
+        clients.add(client);
+        client.writer.start();
+        return client;
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public List<Client> getClients() {
+        return clients;
+    }
+
+    public long getPacketsPublished() {
+        return packetsPublished;
+    }
+
+    /**
+     * Send a packet to every client.  Only the caller's thread may publish.
+     * @param packet The packet between position() and limit(), which are
+     *               not changed
+     * @throws InterruptedIOException if interrupted waiting on a BLOCK client
+     * @throws IOException if the fan out is closed
+     */
+    public void publish(ByteBuffer packet) throws IOException {
+        byte[] shared = new byte[packet.remaining()];
+        packet.duplicate().get(shared);
+        publish(shared);
+    }
+
+    /**
+     * Frame the object as a UAVTalk TYPE_OBJ packet, once, and send it to
+     * every client
+     * @return False if the object does not fit in a packet
+     */
+    public boolean publish(UAVObject obj) throws Exception {
+        frame.clear();
+        int length = UAVTalk.framePacket(frame, obj);
+        if (length == 0)
+            return false;
+        publish(Arrays.copyOf(frame.array(), length));
+        return true;
+    }
+
+    private void publish(byte[] shared) throws IOException {
+        if (closed)
+            throw new IOException("Fan out is closed");
+        for (Client client : clients) {
+            client.offer(shared);
+        }
+        packetsPublished++;
+    }
+
+    /**
+     * Stop publishing, let every client write what it has queued, then
+     * disconnect them.  The clients share one deadline and finish at the
+     * same time rather than one after the other.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MS;
+        try {
+            for (Client client : clients) {
+                client.queueEnd(deadline);
+            }
+            for (Client client : clients) {
+                client.awaitEnd(deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Client client : clients) {
+                client.close();
+            }
+            throw new InterruptedIOException("Interrupted while closing");
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/**
+ ******************************************************************************
+ * @file       ArchiveReader.java
+ * @brief      Reads the binary columnar archives written by ArchiveRecordSink.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Only the footer is read when the archive is opened.  Columns are memory
+ * mapped when asked for and their values read by index, see
+ * ArchiveRecordSink for the layout.
+ */
+public class ArchiveReader implements Closeable {
+
+    /**
+     * A column of an object type
+     */
+    public static class Column {
+        private final String name;
+        private final UAVObjectField.FieldType type;
+        private final int width;
+
+        Column(String name, UAVObjectField.FieldType type, int width) {
+            this.name = name;
+            this.type = type;
+            this.width = width;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public UAVObjectField.FieldType getType() {
+            return type;
+        }
+
+        /**
+         * Get the number of bytes of each value
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Get the value of a row from a buffer holding this column
+         */
+        public double getDouble(ByteBuffer column, int row) {
+            int index = row * width;
+            switch (type) {
+                case INT8:
+                    return column.get(index);
+                case INT16:
+                    return column.getShort(index);
+                case INT32:
+                    return column.getInt(index);
+                case UINT8:
+                case ENUM:
+                case BITFIELD:
+                    return column.get(index) & 0xff;
+                case UINT16:
+                    return column.getShort(index) & 0xffff;
+                case UINT32:
+                    return column.getInt(index) & 0xffffffffL;
+                case FLOAT32:
+                    return column.getFloat(index);
+                default:
+                    throw new IllegalStateException("Column " + name + " has no numeric type");
+            }
+        }
+    }
+
+    /**
+     * A block of rows of an object type
+     */
+    public static class Block {
+        private final int rows;
+        private final long[] offsets;
+        private final double[] min;
+        private final double[] max;
+
+        Block(int rows, long[] offsets, double[] min, double[] max) {
+            this.rows = rows;
+            this.offsets = offsets;
+            this.min = min;
+            this.max = max;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * Get the file offset of a column of the block
+         */
+        public long getOffset(int column) {
+            return offsets[column];
+        }
+
+        public boolean hasStatistics() {
+            return min != null;
+        }
+
+        public double getMin(int column) {
+            return min[column];
+        }
+
+        public double getMax(int column) {
+            return max[column];
+        }
+    }
+
+    /**
+     * The columns and blocks of one object type
+     */
+    public static class Type {
+        private final long objId;
+        private final String name;
+        private final List<Column> columns;
+        private final List<Block> blocks;
+
+        Type(long objId, String name, List<Column> columns, List<Block> blocks) {
+            this.objId = objId;
+            this.name = name;
+            this.columns = Collections.unmodifiableList(columns);
+            this.blocks = Collections.unmodifiableList(blocks);
+        }
+
+        public long getObjID() {
+            return objId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Column> getColumns() {
+            return columns;
+        }
+
+        /**
+         * @return The index of the named column or -1 if there is none
+         */
+        public int getColumnIndex(String name) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.get(i).getName().equals(name))
+                    return i;
+            }
+            return -1;
+        }
+
+        public List<Block> getBlocks() {
+            return blocks;
+        }
+
+        public long getRowCount() {
+            long rows = 0;
+            for (Block block : blocks) {
+                rows += block.getRows();
+            }
+            return rows;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final List<Type> types;
+
+    public ArchiveReader(File archive) throws IOException {
+        file = new RandomAccessFile(archive, "r");
+        channel = file.getChannel();
+        try {
+            types = readFooter();
+        } catch (IOException e) {
+            close();
+            throw e;
+        } catch (RuntimeException e) {
+            close();
+            throw new IOException("Corrupt archive " + archive, e);
+        }
+    }
+
+    private List<Type> readFooter() throws IOException {
+        int magicLength = ArchiveRecordSink.MAGIC.length;
+        long size = channel.size();
+        if (size < 2 * magicLength + 4 + 8)
+            throw new IOException("Not an archive, too short");
+
+        ByteBuffer header = map(0, magicLength + 4);
+        byte[] magic = new byte[magicLength];
+        header.get(magic);
+        if (!Arrays.equals(magic, ArchiveRecordSink.MAGIC))
+            throw new IOException("Not an archive, bad magic");
+        int version = header.getInt();
+        if (version != ArchiveRecordSink.VERSION)
+            throw new IOException("Unsupported archive version " + version);
+
+        ByteBuffer trailer = map(size - 8 - magicLength, 8 + magicLength);
+        long footerOffset = trailer.getLong();
+        trailer.get(magic);
+        if (!Arrays.equals(magic, ArchiveRecordSink.MAGIC))
+            throw new IOException("Archive was not closed, no footer");
+
+        ByteBuffer footer = map(footerOffset, size - 8 - magicLength - footerOffset);
+        int numTypes = footer.getInt();
+        List<Type> types = new ArrayList<Type>(numTypes);
+        for (int t = 0; t < numTypes; t++) {
+            long objId = footer.getInt() & 0xffffffffL;
+            String name = getName(footer);
+
+            int numColumns = footer.getShort() & 0xffff;
+            List<Column> columns = new ArrayList<Column>(numColumns);
+            for (int c = 0; c < numColumns; c++) {
+                String columnName = getName(footer);
+                UAVObjectField.FieldType type = UAVObjectField.FieldType.values()[footer.get()];
+                columns.add(new Column(columnName, type, footer.get()));
+            }
+
+            int numBlocks = footer.getInt();
+            List<Block> blocks = new ArrayList<Block>(numBlocks);
+            for (int b = 0; b < numBlocks; b++) {
+                int rows = footer.getInt();
+                long[] offsets = new long[numColumns];
+                for (int c = 0; c < numColumns; c++) {
+                    offsets[c] = footer.getLong();
+                }
+                double[] min = null;
+                double[] max = null;
+                if (footer.get() != 0) {
+                    min = new double[numColumns];
+                    max = new double[numColumns];
+                    for (int c = 0; c < numColumns; c++) {
+                        min[c] = footer.getDouble();
+                        max[c] = footer.getDouble();
+                    }
+                }
+                blocks.add(new Block(rows, offsets, min, max));
+            }
+            types.add(new Type(objId, name, columns, blocks));
+        }
+        return Collections.unmodifiableList(types);
+    }
+
+    private static String getName(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort() & 0xffff];
+        buf.get(bytes);
+        return new String(bytes, ArchiveRecordSink.UTF8);
+    }
+
+    private ByteBuffer map(long offset, long length) throws IOException {
+        ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        return buf;
+    }
+
+    public List<Type> getTypes() {
+        return types;
+    }
+
+    /**
+     * @return The object type with the given name or null if it is not in the archive
+     */
+    public Type getType(String name) {
+        for (Type type : types) {
+            if (type.getName().equals(name))
+                return type;
+        }
+        return null;
+    }
+
+    /**
+     * Map one column of a block.  Read the values with Column.getDouble() or
+     * directly with the absolute getters of the buffer.
+     */
+    public ByteBuffer getColumn(Type type, Block block, int column) throws IOException {
+        return map(block.getOffset(column), (long) block.getRows() * type.getColumns().get(column).getWidth());
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        file.close();
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ ******************************************************************************
+ * @file       ArchiveRecordSink.java
+ * @brief      Writes decoded object updates to a binary columnar archive.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The archive holds, for every object type, blocks of up to BLOCK_ROWS
+ * updates stored column by column.  Every column is a contiguous array of
+ * little endian values in the width of its UAVO field type, so a reader can
+ * map a column and index it directly.  All numbers are little endian.
+ *
+ *   header   MAGIC (8 bytes), u32 VERSION
+ *   blocks   the columns of each block, one after the other
+ *   footer   u32 type count, then for each type
+ *              u32 object ID, name
+ *              u16 column count, then for each column
+ *                name, u8 UAVObjectField.FieldType ordinal, u8 width
+ *              u32 block count, then for each block
+ *                u32 rows, u64 file offset of each column
+ *                u8 1 if statistics follow, then f64 min, f64 max of each column
+ *   trailer  u64 footer offset, MAGIC
+ *
+ * Names are a u16 byte count followed by UTF-8 bytes.  The first two columns
+ * of a type are "timestamp" (UINT32, ms) and "instance" (UINT16), then one
+ * column per element of each numeric field, named as in the columnar CSV
+ * output.  String fields are not stored.
+ */
+public class ArchiveRecordSink implements RecordSink {
+
+    public static final byte[] MAGIC = { 'O', 'P', 'U', 'A', 'V', 'A', 'R', 'C' };
+    public static final int VERSION = 1;
+    public static final int BLOCK_ROWS = 4096;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final boolean statistics;
+    private final ByteBuffer scratch = ByteBuffer.allocate(UAVTalk.MAX_PAYLOAD_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Columns of one object type being filled with the rows of the next block
+     */
+    private static class TypeColumns {
+        final long objId;
+        final String name;
+        final List<ArchiveReader.Column> columns = new ArrayList<ArchiveReader.Column>();
+        final List<UAVObjectField> fields = new ArrayList<UAVObjectField>();
+        final List<ArchiveReader.Block> blocks = new ArrayList<ArchiveReader.Block>();
+        ByteBuffer[] buffers;
+        int rows;
+
+        TypeColumns(UAVObject obj) {
+            objId = obj.getObjID();
+            name = obj.getName();
+            columns.add(new ArchiveReader.Column("timestamp", UAVObjectField.FieldType.UINT32, 4));
+            columns.add(new ArchiveReader.Column("instance", UAVObjectField.FieldType.UINT16, 2));
+            for (UAVObjectField field : obj.getFields()) {
+                if (field.getType() == UAVObjectField.FieldType.STRING)
+                    continue;
+                fields.add(field);
+                if (field.getNumElements() == 1) {
+                    columns.add(new ArchiveReader.Column(field.getName(), field.getType(), field.getNumBytesElement()));
+                } else {
+                    for (String element : field.getElementNames()) {
+                        columns.add(new ArchiveReader.Column(field.getName() + "." + element, field.getType(),
+                                field.getNumBytesElement()));
+                    }
+                }
+            }
+            buffers = new ByteBuffer[columns.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = ByteBuffer.allocate(BLOCK_ROWS * columns.get(i).getWidth()).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    // Each UAVO type is its own class, see ColumnarCsvRecordSink
+    private final Map<Class<?>, TypeColumns> types = new LinkedHashMap<Class<?>, TypeColumns>();
+
+    public ArchiveRecordSink(File file) throws IOException {
+        this(file, true);
+    }
+
+    /**
+     * @param statistics Store the min and max of every column of each block
+     */
+    public ArchiveRecordSink(File file, boolean statistics) throws IOException {
+        this.statistics = statistics;
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null)
+            dir.mkdirs();
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        this.channel = this.file.getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(VERSION).flip();
+        writeFully(header);
+    }
+
+    @Override
+    public synchronized void write(ObjectUpdateEvent event) throws IOException {
+        UAVObject obj = event.getObject();
+        TypeColumns type = types.get(obj.getClass());
+        if (type == null) {
+            type = new TypeColumns(obj);
+            types.put(obj.getClass(), type);
+        }
+
+        ByteBuffer[] buffers = type.buffers;
+        buffers[0].putInt((int) event.getTimestamp());
+        buffers[1].putShort((short) obj.getInstID());
+        int column = 2;
+        List<UAVObjectField> fields = obj.getFields();
+        for (int n = 0; n < fields.size(); ++n) {
+            UAVObjectField field = fields.get(n);
+            if (field.getType() == UAVObjectField.FieldType.STRING)
+                continue;
+            // The packed field is the elements one after the other in their
+            // archive width, split it over the element columns
+            scratch.clear();
+            field.pack(scratch);
+            int width = field.getNumBytesElement();
+            for (int i = 0; i < field.getNumElements(); i++) {
+                buffers[column++].put(scratch.array(), i * width, width);
+            }
+        }
+
+        if (++type.rows == BLOCK_ROWS)
+            writeBlock(type);
+    }
+
+    private void writeBlock(TypeColumns type) throws IOException {
+        if (type.rows == 0)
+            return;
+
+        int numColumns = type.columns.size();
+        long[] offsets = new long[numColumns];
+        double[] min = statistics ? new double[numColumns] : null;
+        double[] max = statistics ? new double[numColumns] : null;
+
+        long offset = channel.position();
+        for (int c = 0; c < numColumns; c++) {
+            ByteBuffer buffer = type.buffers[c];
+            buffer.flip();
+            offsets[c] = offset;
+            offset += buffer.remaining();
+
+            if (statistics) {
+                ArchiveReader.Column column = type.columns.get(c);
+                min[c] = Double.POSITIVE_INFINITY;
+                max[c] = Double.NEGATIVE_INFINITY;
+                for (int row = 0; row < type.rows; row++) {
+                    double v = column.getDouble(buffer, row);
+                    if (v < min[c]) min[c] = v;
+                    if (v > max[c]) max[c] = v;
+                }
+            }
+        }
+        long remaining = offset - channel.position();
+        while (remaining > 0) {
+            remaining -= channel.write(type.buffers);
+        }
+        for (ByteBuffer buffer : type.buffers) {
+            buffer.clear();
+        }
+
+        type.blocks.add(new ArchiveReader.Block(type.rows, offsets, min, max));
+        type.rows = 0;
+    }
+
+    /**
+     * Write out the rows collected so far as blocks
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        for (TypeColumns type : types.values()) {
+            writeBlock(type);
+        }
+    }
+
+    /**
+     * Write the last blocks and the footer
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen())
+            return;
+        try {
+            flush();
+            long footerOffset = channel.position();
+            writeFully(ByteBuffer.wrap(footer()));
+
+            ByteBuffer trailer = ByteBuffer.allocate(8 + MAGIC.length).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putLong(footerOffset).put(MAGIC).flip();
+            writeFully(trailer);
+        } finally {
+            channel.close();
+            file.close();
+        }
+    }
+
+    private byte[] footer() {
+        Footer out = new Footer();
+        out.putInt(types.size());
+        for (TypeColumns type : types.values()) {
+            out.putInt((int) type.objId);
+            out.putName(type.name);
+            out.putShort(type.columns.size());
+            for (ArchiveReader.Column column : type.columns) {
+                out.putName(column.getName());
+                out.write(column.getType().ordinal());
+                out.write(column.getWidth());
+            }
+            out.putInt(type.blocks.size());
+            for (ArchiveReader.Block block : type.blocks) {
+                out.putInt(block.getRows());
+                for (int c = 0; c < type.columns.size(); c++) {
+                    out.putLong(block.getOffset(c));
+                }
+                out.write(block.hasStatistics() ? 1 : 0);
+                if (block.hasStatistics()) {
+                    for (int c = 0; c < type.columns.size(); c++) {
+                        out.putLong(Double.doubleToLongBits(block.getMin(c)));
+                        out.putLong(Double.doubleToLongBits(block.getMax(c)));
+                    }
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Little endian encoding of the footer
+     */
+    private static class Footer extends ByteArrayOutputStream {
+        private final ByteBuffer buf = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+
+        void putShort(int v) {
+            buf.clear();
+            buf.putShort((short) v);
+            write(buf.array(), 0, 2);
+        }
+
+        void putInt(int v) {
+            buf.clear();
+            buf.putInt(v);
+            write(buf.array(), 0, 4);
+        }
+
+        void putLong(long v) {
+            buf.clear();
+            buf.putLong(v);
+            write(buf.array(), 0, 8);
+        }
+
+        void putName(String name) {
+            byte[] bytes = name.getBytes(UTF8);
+            putShort(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ ******************************************************************************
+ * @file       CRC8.java
+ * @brief      Table driven CRC-8 used by UAVTalk to check packets.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The UAVTalk CRC-8, polynomial 0x07 with no reflection and zero initial
+ * and final values.  Short runs are checksummed one table lookup per byte,
+ * runs of SLICE_THRESHOLD bytes or more eight bytes at a time with
+ * slicing-by-8 tables.
+ */
+public final class CRC8 {
+
+    /*
+     * Generated by pycrc v0.7.5, http://www.tty1.net/pycrc/ using the
+     * configuration: Width = 8 Poly = 0x07 XorIn = 0x00 ReflectIn = False
+     * XorOut = 0x00 ReflectOut = False Algorithm = table-driven
+     */
+    private static final int[] TABLE = { 0x00, 0x07, 0x0e, 0x09, 0x1c,
+            0x1b, 0x12, 0x15, 0x38, 0x3f, 0x36, 0x31, 0x24, 0x23, 0x2a, 0x2d,
+            0x70, 0x77, 0x7e, 0x79, 0x6c, 0x6b, 0x62, 0x65, 0x48, 0x4f, 0x46,
+            0x41, 0x54, 0x53, 0x5a, 0x5d, 0xe0, 0xe7, 0xee, 0xe9, 0xfc, 0xfb,
+            0xf2, 0xf5, 0xd8, 0xdf, 0xd6, 0xd1, 0xc4, 0xc3, 0xca, 0xcd, 0x90,
+            0x97, 0x9e, 0x99, 0x8c, 0x8b, 0x82, 0x85, 0xa8, 0xaf, 0xa6, 0xa1,
+            0xb4, 0xb3, 0xba, 0xbd, 0xc7, 0xc0, 0xc9, 0xce, 0xdb, 0xdc, 0xd5,
+            0xd2, 0xff, 0xf8, 0xf1, 0xf6, 0xe3, 0xe4, 0xed, 0xea, 0xb7, 0xb0,
+            0xb9, 0xbe, 0xab, 0xac, 0xa5, 0xa2, 0x8f, 0x88, 0x81, 0x86, 0x93,
+            0x94, 0x9d, 0x9a, 0x27, 0x20, 0x29, 0x2e, 0x3b, 0x3c, 0x35, 0x32,
+            0x1f, 0x18, 0x11, 0x16, 0x03, 0x04, 0x0d, 0x0a, 0x57, 0x50, 0x59,
+            0x5e, 0x4b, 0x4c, 0x45, 0x42, 0x6f, 0x68, 0x61, 0x66, 0x73, 0x74,
+            0x7d, 0x7a, 0x89, 0x8e, 0x87, 0x80, 0x95, 0x92, 0x9b, 0x9c, 0xb1,
+            0xb6, 0xbf, 0xb8, 0xad, 0xaa, 0xa3, 0xa4, 0xf9, 0xfe, 0xf7, 0xf0,
+            0xe5, 0xe2, 0xeb, 0xec, 0xc1, 0xc6, 0xcf, 0xc8, 0xdd, 0xda, 0xd3,
+            0xd4, 0x69, 0x6e, 0x67, 0x60, 0x75, 0x72, 0x7b, 0x7c, 0x51, 0x56,
+            0x5f, 0x58, 0x4d, 0x4a, 0x43, 0x44, 0x19, 0x1e, 0x17, 0x10, 0x05,
+            0x02, 0x0b, 0x0c, 0x21, 0x26, 0x2f, 0x28, 0x3d, 0x3a, 0x33, 0x34,
+            0x4e, 0x49, 0x40, 0x47, 0x52, 0x55, 0x5c, 0x5b, 0x76, 0x71, 0x78,
+            0x7f, 0x6a, 0x6d, 0x64, 0x63, 0x3e, 0x39, 0x30, 0x37, 0x22, 0x25,
+            0x2c, 0x2b, 0x06, 0x01, 0x08, 0x0f, 0x1a, 0x1d, 0x14, 0x13, 0xae,
+            0xa9, 0xa0, 0xa7, 0xb2, 0xb5, 0xbc, 0xbb, 0x96, 0x91, 0x98, 0x9f,
+            0x8a, 0x8d, 0x84, 0x83, 0xde, 0xd9, 0xd0, 0xd7, 0xc2, 0xc5, 0xcc,
+            0xcb, 0xe6, 0xe1, 0xe8, 0xef, 0xfa, 0xfd, 0xf4, 0xf3 };
+
+    //! Shortest run worth the slicing loop
+    static final int SLICE_THRESHOLD = 16;
+
+    // SLICES[k][x] is the CRC of byte x followed by k zero bytes.  The CRC
+    // is linear so eight bytes b0..b7 update crc c to
+    // SLICES[7][c ^ b0] ^ SLICES[6][b1] ^ ... ^ SLICES[0][b7]
+    private static final int[][] SLICES = new int[8][256];
+
+    static {
+        SLICES[0] = TABLE;
+        for (int k = 1; k < 8; k++) {
+            for (int x = 0; x < 256; x++) {
+                SLICES[k][x] = TABLE[SLICES[k - 1][x]];
+            }
+        }
+    }
+
+    private CRC8() {
+    }
+
+    /**
+     * Update the crc with one byte
+     */
+    public static int update(int crc, int data) {
+        return TABLE[crc ^ (data & 0xff)];
+    }
+
+    /**
+     * Update the crc with length bytes of data starting at offset
+     */
+    public static int update(int crc, byte[] data, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        if (length >= SLICE_THRESHOLD) {
+            int[] t0 = SLICES[0], t1 = SLICES[1], t2 = SLICES[2], t3 = SLICES[3];
+            int[] t4 = SLICES[4], t5 = SLICES[5], t6 = SLICES[6], t7 = SLICES[7];
+            for (; i + 8 <= end; i += 8) {
+                crc = t7[crc ^ (data[i] & 0xff)] ^ t6[data[i + 1] & 0xff]
+                        ^ t5[data[i + 2] & 0xff] ^ t4[data[i + 3] & 0xff]
+                        ^ t3[data[i + 4] & 0xff] ^ t2[data[i + 5] & 0xff]
+                        ^ t1[data[i + 6] & 0xff] ^ t0[data[i + 7] & 0xff];
+            }
+        }
+        for (; i < end; i++) {
+            crc = TABLE[crc ^ (data[i] & 0xff)];
+        }
+        return crc;
+    }
+
+    /**
+     * Update the crc with length bytes of data starting at the absolute
+     * offset.  The position of the buffer is not changed.
+     */
+    public static int update(int crc, ByteBuffer data, int offset, int length) {
+        if (data.hasArray())
+            return update(crc, data.array(), data.arrayOffset() + offset, length);
+
+        int i = offset;
+        int end = offset + length;
+        if (length >= SLICE_THRESHOLD) {
+            int[] t0 = SLICES[0], t1 = SLICES[1], t2 = SLICES[2], t3 = SLICES[3];
+            int[] t4 = SLICES[4], t5 = SLICES[5], t6 = SLICES[6], t7 = SLICES[7];
+            // Read eight bytes at a time in big endian so b0 is the top byte
+            boolean little = data.order() == ByteOrder.LITTLE_ENDIAN;
+            for (; i + 8 <= end; i += 8) {
+                long v = data.getLong(i);
+                if (little)
+                    v = Long.reverseBytes(v);
+                crc = t7[crc ^ (int) (v >>> 56)] ^ t6[(int) (v >>> 48) & 0xff]
+                        ^ t5[(int) (v >>> 40) & 0xff] ^ t4[(int) (v >>> 32) & 0xff]
+                        ^ t3[(int) (v >>> 24) & 0xff] ^ t2[(int) (v >>> 16) & 0xff]
+                        ^ t1[(int) (v >>> 8) & 0xff] ^ t0[(int) v & 0xff];
+            }
+        }
+        for (; i < end; i++) {
+            crc = TABLE[crc ^ (data.get(i) & 0xff)];
+        }
+        return crc;
+    }
+
+    /**
+     * The crc of length bytes of data starting at offset
+     */
+    public static int compute(byte[] data, int offset, int length) {
+        return update(0, data, offset, length);
+    }
+
+    public static int compute(ByteBuffer data, int offset, int length) {
+        return update(0, data, offset, length);
+    }
+}
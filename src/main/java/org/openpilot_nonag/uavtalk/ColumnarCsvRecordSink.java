@@ -0,0 +1,148 @@
+/**
+ ******************************************************************************
+ * @file       ColumnarCsvRecordSink.java
+ * @brief      Writes the updates of each UAVObject type to its own CSV file with
+ *             one column per field element.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Every object type gets a file named after it in the output directory,
+ * e.g. AttitudeState.csv.  The first line is a header built from the field
+ * and element names:
+ *
+ *   timestamp,instance,q1,q2,q3,q4,Roll,Pitch,Yaw
+ *
+ * and each update adds a line of raw numbers, without units.  Enums are
+ * written as their numeric value and string fields are left out.
+ */
+public class ColumnarCsvRecordSink implements RecordSink {
+
+    public static final int TYPE_BUFFER_SIZE = 64 * 1024;
+
+    private final File dir;
+    private final StringBuilder line = new StringBuilder(1024);
+
+    /**
+     * Output of one object type.  Each UAVO type is its own class so the
+     * class identifies the type without boxing the object ID.
+     */
+    private static class TypeFile {
+        final TextFileBuffer out;
+        final List<UAVObjectField> fields = new ArrayList<UAVObjectField>();
+
+        TypeFile(File file) {
+            out = new TextFileBuffer(file, TYPE_BUFFER_SIZE);
+        }
+    }
+
+    private final Map<Class<?>, TypeFile> types = new HashMap<Class<?>, TypeFile>();
+    private final Set<String> fileNames = new HashSet<String>();
+
+    public ColumnarCsvRecordSink(File dir) {
+        this.dir = dir;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    @Override
+    public synchronized void write(ObjectUpdateEvent event) throws IOException {
+        UAVObject obj = event.getObject();
+        TypeFile type = types.get(obj.getClass());
+        if (type == null) {
+            type = createTypeFile(obj);
+            types.put(obj.getClass(), type);
+        }
+
+        line.setLength(0);
+        line.append(event.getTimestamp()).append(',').append(obj.getInstID());
+        List<UAVObjectField> fields = obj.getFields();
+        for (int n = 0; n < fields.size(); ++n) {
+            UAVObjectField field = fields.get(n);
+            if (field.getType() == UAVObjectField.FieldType.STRING)
+                continue;
+            for (int i = 0; i < field.getNumElements(); i++) {
+                line.append(',');
+                field.appendNumber(line, i);
+            }
+        }
+        line.append('\n');
+        type.out.append(line);
+    }
+
+    private TypeFile createTypeFile(UAVObject obj) throws IOException {
+        // Another UAVO set may hold a different type with the same name
+        String name = obj.getName();
+        if (!fileNames.add(name)) {
+            name += "-" + UAVTalk.toHex(obj.getObjID());
+            fileNames.add(name);
+        }
+        TypeFile type = new TypeFile(new File(dir, name + ".csv"));
+
+        StringBuilder header = new StringBuilder("timestamp,instance");
+        for (UAVObjectField field : obj.getFields()) {
+            if (field.getType() == UAVObjectField.FieldType.STRING)
+                continue;
+            if (field.getNumElements() == 1) {
+                header.append(',').append(field.getName());
+            } else {
+                for (String element : field.getElementNames()) {
+                    header.append(',').append(field.getName()).append('.').append(element);
+                }
+            }
+        }
+        header.append('\n');
+        type.out.append(header);
+        return type;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        for (TypeFile type : types.values()) {
+            type.out.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException error = null;
+        for (TypeFile type : types.values()) {
+            try {
+                type.out.close();
+            } catch (IOException e) {
+                if (error == null) error = e;
+            }
+        }
+        types.clear();
+        if (error != null)
+            throw error;
+    }
+}
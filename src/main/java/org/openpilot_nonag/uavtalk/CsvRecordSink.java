@@ -0,0 +1,104 @@
+/**
+ ******************************************************************************
+ * @file       CsvRecordSink.java
+ * @brief      Writes decoded object updates as comma separated lines through a
+ *             buffered file channel.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes one line per update: event, timestamp, object ID, name, description
+ * and then the field values.  Lines are appended to the file.
+ */
+public class CsvRecordSink implements RecordSink {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final TextFileBuffer out;
+    private final long flushIntervalMs;
+    private final StringBuilder line = new StringBuilder(1024);
+
+    private long lastFlush;
+
+    /**
+     * Only write out the buffer when it is full and on close
+     */
+    public CsvRecordSink(File file) {
+        this(file, 0);
+    }
+
+    /**
+     * @param flushIntervalMs Also write out the buffer when this long has
+     *                        passed since the last write, 0 to disable
+     */
+    public CsvRecordSink(File file, long flushIntervalMs) {
+        this(file, flushIntervalMs, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvRecordSink(File file, long flushIntervalMs, int bufferSize) {
+        this.out = new TextFileBuffer(file, bufferSize);
+        this.flushIntervalMs = flushIntervalMs;
+        this.lastFlush = System.currentTimeMillis();
+    }
+
+    public File getFile() {
+        return out.getFile();
+    }
+
+    @Override
+    public synchronized void write(ObjectUpdateEvent event) throws IOException {
+        UAVObject obj = event.getObject();
+
+        // Build the whole line first so a field that fails to format does
+        // not leave half a line in the file
+        line.setLength(0);
+        line.append(event.getSequence()).append(',');
+        line.append(event.getTimestamp()).append(',');
+        line.append(obj.getObjID()).append(',');
+        line.append(obj.getName()).append(',');
+        line.append(obj.getDescription()).append(',');
+        int dataStart = line.length();
+        obj.appendData(line);
+        for (int i = dataStart; i < line.length(); i++) {
+            if (line.charAt(i) == '\n')
+                line.setCharAt(i, ',');
+        }
+        line.append('\n');
+        out.append(line);
+
+        if (flushIntervalMs > 0 && System.currentTimeMillis() - lastFlush >= flushIntervalMs) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        lastFlush = System.currentTimeMillis();
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
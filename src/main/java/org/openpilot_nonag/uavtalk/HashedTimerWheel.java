@@ -0,0 +1,298 @@
+/**
+ ******************************************************************************
+ * @file       HashedTimerWheel.java
+ * @brief      Hashed wheel of timeouts with constant time schedule and cancel.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs timeouts from one thread that advances a wheel of buckets every
+ * tick.  A timeout goes in the bucket of the tick it is due at, counting
+ * the rounds of the wheel still to go, so scheduling and cancelling take
+ * constant time however many timeouts are pending.  Timeouts fire up to a
+ * tick late.
+ *
+ * Scheduling and cancelling only queue the timeout, the wheel thread does
+ * the bucket work at the next tick, so any thread may call them without a
+ * lock.  Tasks run on the wheel thread and must return quickly, hand
+ * anything slow to another thread.
+ */
+public class HashedTimerWheel implements Closeable {
+
+    static final Logger logger = LogManager.getLogger(HashedTimerWheel.class.getName());
+
+    public static final long DEFAULT_TICK_MS = 10;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    /**
+     * A scheduled task
+     */
+    public final class Timeout {
+        private final Runnable task;
+        private final long periodNanos;
+        //! Due time in ns from the start of the wheel
+        private long deadline;
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        Timeout(Runnable task, long deadline, long periodNanos) {
+            this.task = task;
+            this.deadline = deadline;
+            this.periodNanos = periodNanos;
+        }
+
+        /**
+         * Stop the task from running again
+         * @return False if it had already run, for a one off task, or had
+         *         been cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED))
+                return false;
+            cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * Check if a one off task has run
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            // A periodic timeout stays PENDING, but may have been cancelled
+            // since it was put in the bucket
+            if (periodNanos == 0 ? !state.compareAndSet(PENDING, EXPIRED) : state.get() != PENDING)
+                return;
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Timer task failed", e);
+            }
+            if (periodNanos > 0 && state.get() == PENDING) {
+                // At a fixed rate, picked up again at the next tick
+                deadline += periodNanos;
+                pending.add(this);
+            }
+        }
+    }
+
+    /**
+     * The timeouts due at one position of the wheel, in a linked list
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        /**
+         * Run the timeouts of this round that are due by deadline
+         */
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean closed;
+    //! The number of ticks done, only used by the wheel thread
+    private long tick;
+
+    public HashedTimerWheel(String name) {
+        this(DEFAULT_TICK_MS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE, name);
+    }
+
+    /**
+     * @param wheelSize The number of buckets, rounded up to a power of two
+     */
+    public HashedTimerWheel(long tick, TimeUnit unit, int wheelSize, String name) {
+        if (tick <= 0 || wheelSize < 1)
+            throw new IllegalArgumentException("Invalid tick " + tick + " or wheel size " + wheelSize);
+        tickNanos = unit.toNanos(tick);
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize)
+            size <<= 1;
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = size - 1;
+
+        startTime = System.nanoTime();
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                turn();
+            }
+        }, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Run task once after delay
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(task, unit.toNanos(Math.max(0, delay)), 0);
+    }
+
+    /**
+     * Run task every period after delay, on time even if a run was late
+     */
+    public Timeout scheduleAtFixedRate(Runnable task, long delay, long period, TimeUnit unit) {
+        if (period <= 0)
+            throw new IllegalArgumentException("Invalid period " + period);
+        return add(task, unit.toNanos(Math.max(0, delay)), unit.toNanos(period));
+    }
+
+    private Timeout add(Runnable task, long delayNanos, long periodNanos) {
+        if (closed)
+            throw new IllegalStateException("Timer wheel is closed");
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + delayNanos, periodNanos);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private void turn() {
+        while (!closed) {
+            long deadline = tickNanos * (tick + 1);
+            if (!sleepUntil(deadline))
+                break;
+            removeCancelled();
+            addPending();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * @return False if the wheel was closed while sleeping
+     */
+    private boolean sleepUntil(long deadline) {
+        long sleepNanos;
+        while ((sleepNanos = deadline - (System.nanoTime() - startTime)) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                if (closed)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private void addPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.state.get() != PENDING)
+                continue;
+            long ticks = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            // Already due goes in the current bucket
+            wheel[(int) (Math.max(ticks, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+        }
+    }
+
+    /**
+     * Stop the wheel, the pending timeouts never run
+     */
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
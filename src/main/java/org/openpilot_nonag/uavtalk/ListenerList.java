@@ -0,0 +1,97 @@
+/**
+ ******************************************************************************
+ * @file       ListenerList.java
+ * @brief      Copy on write list of UAVObjectListeners.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import java.util.Arrays;
+
+/**
+ * The listeners of one event of a UAVObject.  Adding and removing copy the
+ * array under the lock, notifying only reads the current array, so it takes
+ * no lock and allocates nothing and a listener may remove itself while it is
+ * being notified.  Listeners are notified in the order they were added.
+ */
+final class ListenerList {
+
+    private static final UAVObjectListener[] EMPTY = new UAVObjectListener[0];
+
+    private volatile UAVObjectListener[] listeners = EMPTY;
+
+    /**
+     * Add the listener unless it is already in the list
+     */
+    synchronized void add(UAVObjectListener listener) {
+        if (listener == null)
+            throw new NullPointerException();
+        UAVObjectListener[] current = listeners;
+        if (indexOf(current, listener) >= 0)
+            return;
+        UAVObjectListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * @return False if the listener was not in the list
+     */
+    synchronized boolean remove(UAVObjectListener listener) {
+        UAVObjectListener[] current = listeners;
+        int index = indexOf(current, listener);
+        if (index < 0)
+            return false;
+        if (current.length == 1) {
+            listeners = EMPTY;
+            return true;
+        }
+        UAVObjectListener[] updated = new UAVObjectListener[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, updated.length - index);
+        listeners = updated;
+        return true;
+    }
+
+    private static int indexOf(UAVObjectListener[] array, UAVObjectListener listener) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].equals(listener))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the current listeners, the array is never changed
+     */
+    UAVObjectListener[] toArray() {
+        return listeners;
+    }
+
+    int size() {
+        return listeners.length;
+    }
+
+    void fire(UAVObject obj, UAVObject.Event event, boolean success) {
+        UAVObjectListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            current[i].objectEvent(obj, event, success);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/**
+ ******************************************************************************
+ * @file       OPLogIndex.java
+ * @brief      Seek index of the records of each object type in an OPL log,
+ *             kept in a sidecar file next to the log.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where the records of each object type are in a log, so a window of a few
+ * object types can be read without decoding the rest of the log.  The index
+ * is built with one pass over the record headers and kept next to the log
+ * in a sidecar file named after it with INDEX_EXTENSION appended.  All
+ * numbers are little endian.
+ *
+ *   header       MAGIC (8 bytes), u32 VERSION
+ *   log          u64 length, u64 last modified time
+ *   checkpoints  u32 bucket length in ms, u32 count, then u64 offset of
+ *                each, checkpoint i is the first record logged at or after
+ *                i buckets
+ *   types        u32 count, then for each type
+ *                  u32 object ID, u32 record count,
+ *                  u32 timestamp of each record, u64 offset of each record
+ *
+ * The records of a type are kept in log order, which is assumed to be
+ * timestamp order when querying a time window.
+ */
+public class OPLogIndex {
+
+    static final Logger logger = LogManager.getLogger(OPLogIndex.class.getName());
+
+    public static final byte[] MAGIC = { 'O', 'P', 'L', 'I', 'N', 'D', 'E', 'X' };
+    public static final int VERSION = 1;
+    public static final String INDEX_EXTENSION = ".idx";
+
+    //! Default checkpoint spacing
+    public static final int DEFAULT_BUCKET_MS = 10000;
+
+    /**
+     * The records of one object type
+     */
+    static class TypeIndex {
+        final long objId;
+        int count;
+        long[] timestamps;
+        long[] offsets;
+
+        TypeIndex(long objId, int capacity) {
+            this.objId = objId;
+            timestamps = new long[capacity];
+            offsets = new long[capacity];
+        }
+
+        void add(long timestamp, long offset) {
+            if (count == offsets.length) {
+                timestamps = Arrays.copyOf(timestamps, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            timestamps[count] = timestamp;
+            offsets[count] = offset;
+            count++;
+        }
+
+        /**
+         * The first record logged at or after timestamp
+         */
+        int lowerBound(long timestamp) {
+            int lo = 0;
+            int hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (timestamps[mid] < timestamp)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private final File logFile;
+    private final long logLength;
+    private final long logModified;
+    private final int bucketMs;
+    private final long[] checkpoints;
+    private final Map<Long, TypeIndex> types;
+
+    private OPLogIndex(File logFile, long logLength, long logModified, int bucketMs, long[] checkpoints,
+                       Map<Long, TypeIndex> types) {
+        this.logFile = logFile;
+        this.logLength = logLength;
+        this.logModified = logModified;
+        this.bucketMs = bucketMs;
+        this.checkpoints = checkpoints;
+        this.types = types;
+    }
+
+    /**
+     * Get the sidecar index file of a log
+     */
+    public static File getIndexFile(File logFile) {
+        return new File(logFile.getPath() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Get the index of a log from its sidecar file, building and writing
+     * the sidecar if it is missing or older than the log
+     * @throws IOException
+     */
+    public static OPLogIndex open(File logFile) throws IOException {
+        File indexFile = getIndexFile(logFile);
+        if (indexFile.exists()) {
+            try {
+                OPLogIndex index = read(logFile, indexFile);
+                if (index.isCurrent())
+                    return index;
+                logger.info("Index " + indexFile + " is out of date, rebuilding it");
+            } catch (IOException e) {
+                logger.warn("Failed to read index " + indexFile + ", rebuilding it", e);
+            }
+        }
+
+        OPLogIndex index = build(logFile, DEFAULT_BUCKET_MS);
+        try {
+            index.write(indexFile);
+        } catch (IOException e) {
+            logger.warn("Failed to write index " + indexFile, e);
+        }
+        return index;
+    }
+
+    /**
+     * Index a log by walking its record headers
+     * @param bucketMs Spacing of the time checkpoints
+     * @throws IOException
+     */
+    public static OPLogIndex build(File logFile, int bucketMs) throws IOException {
+        long logLength = logFile.length();
+        long logModified = logFile.lastModified();
+        Map<Long, TypeIndex> types = new HashMap<Long, TypeIndex>();
+        long[] checkpoints = new long[16];
+        int checkpointCount = 0;
+
+        OPLogReader reader = OPLogReader.map(logFile);
+        try {
+            long lastObjId = -1;
+            TypeIndex last = null;
+            while (reader.next()) {
+                ByteBuffer packet = reader.getPacket();
+                int start = packet.position();
+                long objId = (packet.get(start + 4) & 0xffL) | ((packet.get(start + 5) & 0xffL) << 8)
+                        | ((packet.get(start + 6) & 0xffL) << 16) | ((packet.get(start + 7) & 0xffL) << 24);
+                if (objId != lastObjId) {
+                    last = types.get(objId);
+                    if (last == null) {
+                        last = new TypeIndex(objId, 64);
+                        types.put(objId, last);
+                    }
+                    lastObjId = objId;
+                }
+                last.add(reader.getTimestamp(), reader.getRecordOffset());
+
+                while ((long) checkpointCount * bucketMs <= reader.getTimestamp()) {
+                    if (checkpointCount == checkpoints.length)
+                        checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+                    checkpoints[checkpointCount++] = reader.getRecordOffset();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        logger.info("Indexed " + logFile + " : " + types.size() + " object types, " + checkpointCount + " checkpoints");
+        return new OPLogIndex(logFile, logLength, logModified, bucketMs,
+                Arrays.copyOf(checkpoints, checkpointCount), types);
+    }
+
+    /**
+     * Check the log has not changed since it was indexed
+     */
+    public boolean isCurrent() {
+        return logFile.length() == logLength && logFile.lastModified() == logModified;
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+
+    public int getBucketMs() {
+        return bucketMs;
+    }
+
+    /**
+     * Get the IDs of the object types found in the log
+     */
+    public List<Long> getObjectIds() {
+        List<Long> ids = new ArrayList<Long>(types.keySet());
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Get the number of records of an object type
+     */
+    public int getRecordCount(long objId) {
+        TypeIndex type = types.get(objId);
+        return type == null ? 0 : type.count;
+    }
+
+    /**
+     * Get the offsets of the records of the object types logged in
+     * [fromMs, toMs), in log order
+     */
+    public long[] getOffsets(Collection<Long> objIds, long fromMs, long toMs) {
+        int total = 0;
+        List<TypeIndex> selected = new ArrayList<TypeIndex>();
+        List<int[]> ranges = new ArrayList<int[]>();
+        for (Long objId : objIds) {
+            TypeIndex type = types.get(objId);
+            if (type == null)
+                continue;
+            int from = type.lowerBound(fromMs);
+            int to = type.lowerBound(toMs);
+            if (to > from) {
+                selected.add(type);
+                ranges.add(new int[] { from, to });
+                total += to - from;
+            }
+        }
+
+        long[] offsets = new long[total];
+        int n = 0;
+        for (int i = 0; i < selected.size(); i++) {
+            int[] range = ranges.get(i);
+            System.arraycopy(selected.get(i).offsets, range[0], offsets, n, range[1] - range[0]);
+            n += range[1] - range[0];
+        }
+        if (selected.size() > 1)
+            Arrays.sort(offsets);
+        return offsets;
+    }
+
+    /**
+     * Get the offset to start reading at for records logged from timeMs on.
+     * Records before timeMs but in the same bucket may come first.
+     */
+    public long getCheckpointOffset(long timeMs) {
+        if (timeMs <= 0 || checkpoints.length == 0)
+            return 0;
+        int bucket = (int) Math.min(timeMs / bucketMs, checkpoints.length);
+        return bucket == checkpoints.length ? logLength : checkpoints[bucket];
+    }
+
+    /**
+     * Open a reader for the records of the given object types logged in
+     * [fromMs, toMs)
+     * @throws IOException
+     */
+    public OPLogReader open(Collection<Long> objIds, long fromMs, long toMs) throws IOException {
+        return new OPLogMappedReader(logFile, getOffsets(objIds, fromMs, toMs));
+    }
+
+    /**
+     * Open a reader for the records of every object type around [fromMs,
+     * toMs), starting and ending on a checkpoint.  The reader may return
+     * records up to one bucket outside the window.
+     * @throws IOException
+     */
+    public OPLogReader open(long fromMs, long toMs) throws IOException {
+        long end = toMs / bucketMs + 1 < checkpoints.length ? checkpoints[(int) (toMs / bucketMs + 1)] : logLength;
+        return new OPLogMappedReader(logFile, getCheckpointOffset(fromMs), end);
+    }
+
+    /**
+     * Write the index to a file
+     * @throws IOException
+     */
+    public void write(File indexFile) throws IOException {
+        int size = MAGIC.length + 4 + 16 + 8 + checkpoints.length * 8 + 4;
+        for (TypeIndex type : types.values()) {
+            size += 8 + type.count * 12;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(MAGIC).putInt(VERSION);
+        buf.putLong(logLength).putLong(logModified);
+        buf.putInt(bucketMs).putInt(checkpoints.length);
+        for (long checkpoint : checkpoints) {
+            buf.putLong(checkpoint);
+        }
+        buf.putInt(types.size());
+        for (Long objId : getObjectIds()) {
+            TypeIndex type = types.get(objId);
+            buf.putInt((int) type.objId).putInt(type.count);
+            for (int i = 0; i < type.count; i++) {
+                buf.putInt((int) type.timestamps[i]);
+            }
+            for (int i = 0; i < type.count; i++) {
+                buf.putLong(type.offsets[i]);
+            }
+        }
+        buf.flip();
+
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        RandomAccessFile file = new RandomAccessFile(tmpFile, "rw");
+        try {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        } finally {
+            file.close();
+        }
+        if (!tmpFile.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!tmpFile.renameTo(indexFile))
+                throw new IOException("Failed to write " + indexFile);
+        }
+    }
+
+    /**
+     * Read the index of logFile from a file written by write()
+     * @throws IOException
+     */
+    public static OPLogIndex read(File logFile, File indexFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[] magic = new byte[MAGIC.length];
+            buf.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buf.getInt() != VERSION)
+                throw new IOException(indexFile + " is not an index of version " + VERSION);
+
+            long logLength = buf.getLong();
+            long logModified = buf.getLong();
+            int bucketMs = buf.getInt();
+            long[] checkpoints = new long[buf.getInt()];
+            for (int i = 0; i < checkpoints.length; i++) {
+                checkpoints[i] = buf.getLong();
+            }
+
+            int typeCount = buf.getInt();
+            Map<Long, TypeIndex> types = new HashMap<Long, TypeIndex>();
+            for (int t = 0; t < typeCount; t++) {
+                long objId = buf.getInt() & 0xffffffffL;
+                int count = buf.getInt();
+                TypeIndex type = new TypeIndex(objId, count);
+                type.count = count;
+                for (int i = 0; i < count; i++) {
+                    type.timestamps[i] = buf.getInt() & 0xffffffffL;
+                }
+                for (int i = 0; i < count; i++) {
+                    type.offsets[i] = buf.getLong();
+                }
+                types.put(objId, type);
+            }
+            return new OPLogIndex(logFile, logLength, logModified, bucketMs, checkpoints, types);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt index " + indexFile, e);
+        } finally {
+            file.close();
+        }
+    }
+}
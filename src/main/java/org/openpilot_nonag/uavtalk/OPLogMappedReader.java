@@ -0,0 +1,165 @@
+/**
+ ******************************************************************************
+ * @file       OPLogMappedReader.java
+ * @brief      Reads the records of an OPL log straight out of a memory mapping
+ *             of the file.  The packets handed out are views of the mapping so
+ *             they are unpacked without being copied.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class OPLogMappedReader extends OPLogReader {
+
+    //! Largest region mapped at once, a record straddling its end causes a remap
+    static final long MAP_WINDOW_SIZE = 1L << 30;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long end;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private ByteBuffer packet;
+
+    //! Offset of the next record
+    private long position;
+
+    //! Only read the records at these offsets, see OPLogIndex
+    private final long[] offsets;
+    private int nextOffset;
+
+    public OPLogMappedReader(File logFile) throws IOException {
+        this(logFile, 0, logFile.length());
+    }
+
+    /**
+     * Read only the records in [start, end) of the log.  start must be the
+     * offset of a record.
+     */
+    public OPLogMappedReader(File logFile, long start, long end) throws IOException {
+        file = new RandomAccessFile(logFile, "r");
+        channel = file.getChannel();
+        this.end = Math.min(end, channel.size());
+        position = start;
+        offsets = null;
+    }
+
+    /**
+     * Read only the records at the given offsets, in that order.  An offset
+     * that does not hold a valid record is skipped.
+     */
+    public OPLogMappedReader(File logFile, long[] offsets) throws IOException {
+        file = new RandomAccessFile(logFile, "r");
+        channel = file.getChannel();
+        this.end = channel.size();
+        this.offsets = offsets;
+    }
+
+    @Override
+    protected boolean nextRecord() throws IOException {
+        if (offsets != null) {
+            while (nextOffset < offsets.length) {
+                position = offsets[nextOffset++];
+                if (readRecordAt())
+                    return true;
+                logger.warn("No record at offset " + position);
+            }
+            return false;
+        }
+
+        while (position + RECORD_HEADER_LENGTH <= end) {
+            if (readRecordAt())
+                return true;
+
+            // Slide forward by one byte looking for the next valid record
+            skippedBytes++;
+            position++;
+        }
+
+        if (position < end) {
+            logger.warn("Discarded " + (end - position) + " trailing bytes at offset " + position);
+            skippedBytes += end - position;
+            position = end;
+        }
+        return false;
+    }
+
+    /**
+     * Read the record at position if there is a valid one
+     */
+    private boolean readRecordAt() throws IOException {
+        if (position < 0 || position + RECORD_HEADER_LENGTH > end)
+            return false;
+        mapWindow(position, Math.min(end - position, RECORD_HEADER_LENGTH + UAVTalk.MAX_PACKET_LENGTH));
+
+        int off = (int) (position - windowStart);
+        long length = window.getLong(off + 4);
+
+        if (isValidLength(length) && position + RECORD_HEADER_LENGTH + length <= end
+                && isPacket(window, off + RECORD_HEADER_LENGTH, (int) length)) {
+            int packetStart = off + RECORD_HEADER_LENGTH;
+            timestamp = window.getInt(off) & 0xffffffffL;
+            recordOffset = position;
+            recordCount++;
+            position += RECORD_HEADER_LENGTH + length;
+
+            packet.limit(packet.capacity());
+            packet.position(packetStart);
+            packet.limit(packetStart + (int) length);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public ByteBuffer getPacket() {
+        return packet;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        packet = null;
+        channel.close();
+        file.close();
+    }
+
+    /**
+     * Make sure [offset, offset + length) is inside the mapped window,
+     * mapping a new window starting at offset if it is not
+     */
+    private void mapWindow(long offset, long length) throws IOException {
+        if (window != null && offset >= windowStart && offset + length <= windowStart + window.capacity()) {
+            return;
+        }
+        windowStart = offset;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAP_WINDOW_SIZE, end - offset));
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        packet = window.duplicate();
+        packet.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ ******************************************************************************
+ * @file       OPLogReader.java
+ * @brief      Reads the records of an OpenPilot GCS log (.opl) file.  Each
+ *             record is a 4 byte millisecond timestamp, an 8 byte length and
+ *             then exactly that many bytes holding one UAVTalk packet.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public abstract class OPLogReader implements Closeable {
+
+    static final Logger logger = LogManager.getLogger(OPLogReader.class.getName());
+
+    //! timestamp (4) and packet length (8), both little endian
+    public static final int RECORD_HEADER_LENGTH = 12;
+
+    protected long timestamp;
+    protected long recordOffset;
+    protected long recordCount;
+    protected long skippedBytes;
+
+    private RecordFilter filter;
+    private long filteredCount;
+
+    /**
+     * Read the log from a stream, one record at a time
+     */
+    public static OPLogReader open(InputStream inStream) {
+        return new OPLogStreamReader(inStream);
+    }
+
+    /**
+     * Memory map the log file and read the packets straight out of the mapping
+     */
+    public static OPLogReader map(File logFile) throws IOException {
+        return new OPLogMappedReader(logFile);
+    }
+
+    /**
+     * Advance to the next record in the log that passes the filter, if one
+     * is set.  If the record framing is found to be corrupt the reader skips
+     * forward one byte at a time until it finds a header followed by a
+     * plausible UAVTalk packet.
+     * @return True if a record was read, False at the end of the log
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        while (nextRecord()) {
+            if (filter == null || filter.accept(timestamp, getPacket()))
+                return true;
+            filteredCount++;
+        }
+        return false;
+    }
+
+    /**
+     * Advance to the next record in the log, see next()
+     */
+    protected abstract boolean nextRecord() throws IOException;
+
+    /**
+     * Only return the records the filter accepts.  The others are skipped
+     * on their header alone, before any checksum or unpacking.
+     */
+    public void setFilter(RecordFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Get the UAVTalk packet of the current record, between position() and
+     * limit().  The returned buffer is reused by the next call to next().
+     */
+    public abstract ByteBuffer getPacket();
+
+    /**
+     * Get the timestamp of the current record in milliseconds since the log started
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get the byte offset of the current record in the log
+     */
+    public long getRecordOffset() {
+        return recordOffset;
+    }
+
+    /**
+     * Get the number of records read so far, including those filtered out
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Get the number of records skipped by the filter
+     */
+    public long getFilteredCount() {
+        return filteredCount;
+    }
+
+    /**
+     * Get the number of bytes discarded while resynchronizing on corrupt framing
+     */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /**
+     * Check the record length could hold a UAVTalk packet
+     */
+    static boolean isValidLength(long length) {
+        return length >= UAVTalk.HEADER_LENGTH + UAVTalk.CHECKSUM_LENGTH && length <= UAVTalk.MAX_PACKET_LENGTH;
+    }
+
+    /**
+     * Check the bytes look like a complete UAVTalk packet: sync byte, a valid
+     * type and a size field consistent with the record length.
+     */
+    static boolean isPacket(byte[] buf, int len) {
+        return isPacket(buf[0], buf[1], buf[2], buf[3], len);
+    }
+
+    static boolean isPacket(ByteBuffer buf, int off, int len) {
+        return isPacket(buf.get(off), buf.get(off + 1), buf.get(off + 2), buf.get(off + 3), len);
+    }
+
+    private static boolean isPacket(byte sync, byte type, byte size0, byte size1, int len) {
+        if ((sync & 0xff) != UAVTalk.SYNC_VAL)
+            return false;
+        if ((type & UAVTalk.TYPE_MASK) != UAVTalk.TYPE_VER)
+            return false;
+        int size = (size0 & 0xff) | ((size1 & 0xff) << 8);
+        return size + UAVTalk.CHECKSUM_LENGTH == len;
+    }
+
+    static long getInt(byte[] buf, int off) {
+        return (buf[off] & 0xffL) | (buf[off + 1] & 0xffL) << 8 | (buf[off + 2] & 0xffL) << 16 | (buf[off + 3] & 0xffL) << 24;
+    }
+
+    static long getLong(byte[] buf, int off) {
+        return getInt(buf, off) | getInt(buf, off + 4) << 32;
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ ******************************************************************************
+ * @file       OPLogStreamReader.java
+ * @brief      Reads the records of an OPL log from an InputStream.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class OPLogStreamReader extends OPLogReader {
+
+    private final PushbackInputStream inStream;
+    private final byte[] header = new byte[RECORD_HEADER_LENGTH];
+    private final ByteBuffer packet;
+
+    private long position;
+
+    public OPLogStreamReader(InputStream inStream) {
+        // Room to push back a header and a full packet when resynchronizing
+        this.inStream = new PushbackInputStream(inStream, RECORD_HEADER_LENGTH + UAVTalk.MAX_PACKET_LENGTH);
+        packet = ByteBuffer.allocate(UAVTalk.MAX_PACKET_LENGTH);
+        packet.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    protected boolean nextRecord() throws IOException {
+        byte[] buf = packet.array();
+
+        if (readFully(header, 0, RECORD_HEADER_LENGTH) < RECORD_HEADER_LENGTH) {
+            return false;
+        }
+
+        while (true) {
+            long length = getLong(header, 4);
+
+            if (isValidLength(length)) {
+                int len = (int) length;
+                int count = readFully(buf, 0, len);
+                if (count == len && isPacket(buf, len)) {
+                    timestamp = getInt(header, 0);
+                    recordOffset = position;
+                    position += RECORD_HEADER_LENGTH + len;
+                    recordCount++;
+                    packet.limit(len);
+                    packet.position(0);
+                    return true;
+                }
+                // Not a packet (or truncated), give the bytes back so they can be rescanned
+                inStream.unread(buf, 0, count);
+            }
+
+            // Slide the header window forward by one byte
+            skippedBytes++;
+            position++;
+            System.arraycopy(header, 1, header, 0, RECORD_HEADER_LENGTH - 1);
+            int val = inStream.read();
+            if (val == -1) {
+                logger.warn("Discarded " + (RECORD_HEADER_LENGTH - 1) + " trailing bytes at offset " + position);
+                skippedBytes += RECORD_HEADER_LENGTH - 1;
+                return false;
+            }
+            header[RECORD_HEADER_LENGTH - 1] = (byte) val;
+        }
+    }
+
+    @Override
+    public ByteBuffer getPacket() {
+        return packet;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inStream.close();
+    }
+
+    /**
+     * Read len bytes unless the end of the stream is reached first
+     * @return the number of bytes read
+     */
+    private int readFully(byte[] buf, int off, int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            int count = inStream.read(buf, off + n, len - n);
+            if (count < 0) {
+                break;
+            }
+            n += count;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ ******************************************************************************
+ * @file       ObjectUpdateEvent.java
+ * @brief      Describes one decoded update of a UAVObject together with the
+ *             time it was logged.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+/**
+ * An update of an object received by UAVTalk.  The events passed to
+ * ObjectUpdateListeners are never changed and may be kept.  A RecordSink is
+ * passed the same event, refilled, for every update, so it is only valid
+ * during RecordSink.write().
+ */
+public class ObjectUpdateEvent {
+
+    private UAVObject obj;
+    private long timestamp;
+    private long sequence;
+
+    public ObjectUpdateEvent(UAVObject obj, long timestamp, long sequence) {
+        set(obj, timestamp, sequence);
+    }
+
+    /**
+     * Reuse the event for the next update, only for the event UAVTalk keeps
+     * for its record sink
+     * @return This event
+     */
+    ObjectUpdateEvent set(UAVObject obj, long timestamp, long sequence) {
+        this.obj = obj;
+        this.timestamp = timestamp;
+        this.sequence = sequence;
+        return this;
+    }
+
+    /**
+     * Get the object that was updated.  Its fields hold the unpacked data
+     * only until the next update of the same object is received.
+     */
+    public UAVObject getObject() {
+        return obj;
+    }
+
+    /**
+     * Get the time of the update in milliseconds.  For logs this is the
+     * timestamp of the log record, for live links the time since the
+     * UAVTalk instance was created.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get the running count of updates processed by the UAVTalk instance
+     */
+    public long getSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ ******************************************************************************
+ * @file       ObjectUpdateListener.java
+ * @brief      Notified by UAVTalk for every object update it decodes.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+/**
+ * Notified of every object update UAVTalk decodes, before it is written to
+ * the record sink.  The event may be kept, but the object it refers to is
+ * the live one; its fields only hold this update until the next update of
+ * the same object is received.
+ */
+public interface ObjectUpdateListener {
+    void objectUpdated(ObjectUpdateEvent event);
+}
@@ -0,0 +1,159 @@
+/**
+ ******************************************************************************
+ * @file       RecordFilter.java
+ * @brief      Selects log records by object type and time window before they
+ *             are decoded.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Selects log records by object type and time before they are decoded.
+ * Objects are given by name, or by ID as a decimal or 0x prefixed hex
+ * number.  A filter is first created from names and then bound to an
+ * object manager to look up their IDs, after which only the record
+ * timestamp and the object ID in the packet header are looked at.
+ */
+public class RecordFilter {
+
+    static final Logger logger = LogManager.getLogger(RecordFilter.class.getName());
+
+    private final List<String> include;
+    private final List<String> exclude;
+    private final long fromMs;
+    private final long toMs;
+
+    //! Sorted object IDs, null until bound
+    private final long[] includeIds;
+    private final long[] excludeIds;
+
+    /**
+     * @param include Only these objects, all objects if empty
+     * @param exclude Never these objects
+     * @param fromMs  Only records logged at or after this time
+     * @param toMs    Only records logged before this time
+     */
+    public RecordFilter(Collection<String> include, Collection<String> exclude, long fromMs, long toMs) {
+        this(new ArrayList<String>(include), new ArrayList<String>(exclude), fromMs, toMs, null, null);
+    }
+
+    private RecordFilter(List<String> include, List<String> exclude, long fromMs, long toMs,
+                         long[] includeIds, long[] excludeIds) {
+        this.include = Collections.unmodifiableList(include);
+        this.exclude = Collections.unmodifiableList(exclude);
+        this.fromMs = fromMs;
+        this.toMs = toMs;
+        this.includeIds = includeIds;
+        this.excludeIds = excludeIds;
+    }
+
+    /**
+     * A filter on the time window only
+     */
+    public static RecordFilter timeWindow(long fromMs, long toMs) {
+        List<String> none = Collections.emptyList();
+        return new RecordFilter(none, none, fromMs, toMs);
+    }
+
+    public List<String> getInclude() {
+        return include;
+    }
+
+    public List<String> getExclude() {
+        return exclude;
+    }
+
+    public long getFromMs() {
+        return fromMs;
+    }
+
+    public long getToMs() {
+        return toMs;
+    }
+
+    /**
+     * Get a copy of this filter with the object names looked up in the
+     * object manager.  Unknown names are logged and ignored.
+     */
+    public RecordFilter bind(UAVObjectManager objManager) {
+        return new RecordFilter(include, exclude, fromMs, toMs, lookup(include, objManager), lookup(exclude, objManager));
+    }
+
+    private static long[] lookup(List<String> names, UAVObjectManager objManager) {
+        long[] ids = new long[names.size()];
+        int n = 0;
+        for (String name : names) {
+            UAVObject obj = objManager.getObject(name);
+            if (obj != null) {
+                ids[n++] = obj.getObjID();
+                continue;
+            }
+            try {
+                ids[n++] = Long.decode(name) & 0xffffffffL;
+            } catch (NumberFormatException e) {
+                logger.warn("Unknown object " + name + " in filter");
+                n--;
+            }
+        }
+        ids = Arrays.copyOf(ids, n);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Check a record passes the filter
+     * @param packet The UAVTalk packet of the record, from its position
+     * @throws IllegalStateException if the filter has objects and is not bound
+     */
+    public boolean accept(long timestamp, ByteBuffer packet) {
+        if (timestamp < fromMs || timestamp >= toMs)
+            return false;
+        if (include.isEmpty() && exclude.isEmpty())
+            return true;
+        if (includeIds == null)
+            throw new IllegalStateException("RecordFilter must be bound to an object manager");
+
+        // Too short to hold an object id, leave it to UAVTalk to reject
+        if (packet.remaining() < 8)
+            return true;
+
+        int start = packet.position();
+        long objId = (packet.get(start + 4) & 0xffL) | ((packet.get(start + 5) & 0xffL) << 8)
+                | ((packet.get(start + 6) & 0xffL) << 16) | ((packet.get(start + 7) & 0xffL) << 24);
+        if (!include.isEmpty() && Arrays.binarySearch(includeIds, objId) < 0)
+            return false;
+        return Arrays.binarySearch(excludeIds, objId) < 0;
+    }
+
+    @Override
+    public String toString() {
+        return "include " + (include.isEmpty() ? "all" : include) + ", exclude " + exclude
+                + ", from " + fromMs + " ms to " + (toMs == Long.MAX_VALUE ? "end" : toMs + " ms");
+    }
+}
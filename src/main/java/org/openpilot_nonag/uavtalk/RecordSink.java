@@ -0,0 +1,40 @@
+/**
+ ******************************************************************************
+ * @file       RecordSink.java
+ * @brief      Destination for the decoded object updates of a replay.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * A sink is created once per run and receives every decoded object update
+ * in order.  Implementations may buffer, close() must write out everything
+ * received.
+ */
+public interface RecordSink extends Closeable, Flushable {
+    /**
+     * Write an update.  UAVTalk refills the same event for every update, so
+     * the event must not be kept after this returns.
+     */
+    void write(ObjectUpdateEvent event) throws IOException;
+}
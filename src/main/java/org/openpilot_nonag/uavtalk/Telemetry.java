@@ -31,8 +31,7 @@ import java.util.ListIterator;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Queue;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 
@@ -179,31 +178,30 @@ public class Telemetry {
         txRetries = 0;
     }
 
+    /**
+     * Run the periodic updates in periodMs.  Each run schedules the next.
+     */
     synchronized void updateTimerSetPeriod(int periodMs) {
         if (updateTimer != null) {
             updateTimer.cancel();
             updateTimer = null;
         }
-        if (updateTimerTask != null) {
-            updateTimerTask.cancel();
-            updateTimerTask = null;
-        }
-        updateTimer = new Timer();
-        updateTimerTask = new TimerTask() {
-            @Override
-            public void run() {
-                try {
-                    processPeriodicUpdates();
-                } catch (IOException e) {
-                    updateTimerTask.cancel();
-                    updateTimer.cancel();
-                }
-            }
-        };
-        updateTimer.schedule(updateTimerTask, periodMs, periodMs);
-
+        if (stopped)
+            return;
+        updateTimer = TelemetryExecutors.schedule(periodicUpdate, periodMs, TimeUnit.MILLISECONDS);
     }
 
+    private final Runnable periodicUpdate = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                processPeriodicUpdates();
+            } catch (IOException e) {
+                // The stream has died, stop updating
+            }
+        }
+    };
+
     /**
      * Register a new object for periodic updates (if enabled)
      */
@@ -257,38 +255,28 @@ public class Telemetry {
         }
     }
 
-    final Observer unpackedObserver = new Observer() {
-        @Override
-        public void update(Observable observable, Object data) {
-            handler.unpacked((UAVObject) data);
-        }
-    };
-
-    final Observer updatedAutoObserver = new Observer() {
+    final UAVObjectListener objectListener = new UAVObjectListener() {
         @Override
-        public void update(Observable observable, Object data) {
-            handler.updatedAuto((UAVObject) data);
-        }
-    };
-
-    final Observer updatedManualObserver = new Observer() {
-        @Override
-        public void update(Observable observable, Object data) {
-            handler.updatedManual((UAVObject) data);
-        }
-    };
-
-    final Observer updatedPeriodicObserver = new Observer() {
-        @Override
-        public void update(Observable observable, Object data) {
-            handler.updatedPeriodic((UAVObject) data);
-        }
-    };
-
-    final Observer updatedRequestedObserver = new Observer() {
-        @Override
-        public void update(Observable observable, Object data) {
-            handler.updateRequested((UAVObject) data);
+        public void objectEvent(UAVObject obj, UAVObject.Event event, boolean success) {
+            switch (event) {
+                case UNPACKED:
+                    handler.unpacked(obj);
+                    break;
+                case UPDATED_AUTO:
+                    handler.updatedAuto(obj);
+                    break;
+                case UPDATED_MANUAL:
+                    handler.updatedManual(obj);
+                    break;
+                case UPDATED_PERIODIC:
+                    handler.updatedPeriodic(obj);
+                    break;
+                case UPDATE_REQUESTED:
+                    handler.updateRequested(obj);
+                    break;
+                default:
+                    break;
+            }
         }
     };
 
@@ -306,23 +294,23 @@ public class Telemetry {
             // Disconnect all previous observers from telemetry. This is
             // imortant as this can
             // be called multiple times
-            obj.removeUnpackedObserver(unpackedObserver);
-            obj.removeUpdatedAutoObserver(updatedAutoObserver);
-            obj.removeUpdatedManualObserver(updatedManualObserver);
-            obj.removeUpdatedPeriodicObserver(updatedPeriodicObserver);
-            obj.removeUpdateRequestedObserver(updatedRequestedObserver);
+            obj.removeListener(UAVObject.Event.UNPACKED, objectListener);
+            obj.removeListener(UAVObject.Event.UPDATED_AUTO, objectListener);
+            obj.removeListener(UAVObject.Event.UPDATED_MANUAL, objectListener);
+            obj.removeListener(UAVObject.Event.UPDATED_PERIODIC, objectListener);
+            obj.removeListener(UAVObject.Event.UPDATE_REQUESTED, objectListener);
 
             // Connect only the selected events
             if ((eventMask & EV_UNPACKED) != 0)
-                obj.addUnpackedObserver(unpackedObserver);
+                obj.addListener(UAVObject.Event.UNPACKED, objectListener);
             if ((eventMask & EV_UPDATED) != 0)
-                obj.addUpdatedAutoObserver(updatedAutoObserver);
+                obj.addListener(UAVObject.Event.UPDATED_AUTO, objectListener);
             if ((eventMask & EV_UPDATED_MANUAL) != 0)
-                obj.addUpdatedManualObserver(updatedManualObserver);
+                obj.addListener(UAVObject.Event.UPDATED_MANUAL, objectListener);
             if ((eventMask & EV_UPDATED_PERIODIC) != 0)
-                obj.addUpdatedPeriodicObserver(updatedPeriodicObserver);
+                obj.addListener(UAVObject.Event.UPDATED_PERIODIC, objectListener);
             if ((eventMask & EV_UPDATE_REQ) != 0)
-                obj.addUpdateRequestedObserver(updatedRequestedObserver);
+                obj.addListener(UAVObject.Event.UPDATE_REQUESTED, objectListener);
         }
     }
 
@@ -401,9 +389,6 @@ public class Telemetry {
 
         if (DEBUG)
             logger.debug("processPeriodicUpdates()");
-        // Stop timer
-
-        updateTimer.cancel();
 
         // Iterate through each object and update its timer, if zero then
         // transmit object.
@@ -495,13 +480,12 @@ public class Telemetry {
     /**
      * Stop all the telemetry timers
      */
-    public void stopTelemetry() {
-        if (updateTimerTask != null)
-            updateTimerTask.cancel();
-        updateTimerTask = null;
+    public synchronized void stopTelemetry() {
+        stopped = true;
         if (updateTimer != null)
             updateTimer.cancel();
         updateTimer = null;
+        cancelTransactionTimeout();
     }
 
     /**
@@ -514,8 +498,11 @@ public class Telemetry {
     private ObjectTransactionInfo transInfo = new ObjectTransactionInfo();
     private boolean transPending;
 
-    private Timer updateTimer;
-    private TimerTask updateTimerTask;
+    //! The next run of the periodic updates
+    private HashedTimerWheel.Timeout updateTimer;
+    //! The timeout of the pending transaction
+    private HashedTimerWheel.Timeout transactionTimer;
+    private boolean stopped;
 
     private int timeToNextUpdateMs;
     private int txErrors;
@@ -700,7 +687,7 @@ public class Telemetry {
                         transInfo = newTrans;
 
                         // Post a timeout timer if a response is epxected
-                        //handler.postDelayed(transactionTimeout, REQ_TIMEOUT_MS);
+                        postTransactionTimeout();
                     }
 
                 }
@@ -759,7 +746,7 @@ public class Telemetry {
                         e.printStackTrace();
                     }
 
-                    //handler.postDelayed(transactionTimeout, REQ_TIMEOUT_MS);
+                    postTransactionTimeout();
 
                     ++txRetries;
                 } else {
@@ -777,6 +764,18 @@ public class Telemetry {
     };
 
 
+    private synchronized void postTransactionTimeout() {
+        if (stopped)
+            return;
+        transactionTimer = TelemetryExecutors.schedule(transactionTimeout, REQ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void cancelTransactionTimeout() {
+        if (transactionTimer != null)
+            transactionTimer.cancel();
+        transactionTimer = null;
+    }
+
     /**
      * Called when a transaction is successfully completed (UAVTalk event) and maps that to
      * the appropriate object event as well as canceling the pending transaction and timeout
@@ -791,7 +790,7 @@ public class Telemetry {
                 if (DEBUG) logger.debug("Telemetry: transaction completed for " + obj.getName());
 
                 // Cancel timeout and complete transaction
-                //handler.removeCallbacks(transactionTimeout);
+                cancelTransactionTimeout();
                 transPending = false;
 
                 //Send signal
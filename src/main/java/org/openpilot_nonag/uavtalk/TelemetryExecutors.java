@@ -0,0 +1,224 @@
+/**
+ ******************************************************************************
+ * @file       TelemetryExecutors.java
+ * @brief      Threads and timers shared by the telemetry links.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads of the telemetry links and runs their timers.  The
+ * periodic updates and transaction timeouts of every Telemetry and
+ * TelemetryMonitor share one HashedTimerWheel instead of a Timer thread
+ * each.  The wheel only hands the tasks that are due to the timer threads.
+ * The pool of timer threads grows while tasks are blocked, for instance
+ * sending to a peer that stopped reading, so those links do not hold up the
+ * timers of the others.  Idle timer threads end after a while, so normally
+ * a few threads serve every link.
+ *
+ * In VIRTUAL mode the input loops and the timer tasks run on virtual
+ * threads, which need kilobytes rather than a platform thread stack each,
+ * so thousands of links fit in one JVM.  Virtual threads are looked up at
+ * run time, on a JVM without them VIRTUAL falls back to platform threads.
+ */
+public final class TelemetryExecutors {
+
+    static final Logger logger = LogManager.getLogger(TelemetryExecutors.class.getName());
+
+    public enum Mode {
+        //! A platform thread per input loop, timer tasks on the timer threads
+        PLATFORM,
+        //! A virtual thread per input loop and per timer task run
+        VIRTUAL
+    }
+
+    //! Set to "virtual" to start in VIRTUAL mode
+    public static final String MODE_PROPERTY = "openpilot.telemetry.threads";
+
+    //! How long an idle timer thread waits for another task before ending
+    static final long TIMER_THREAD_KEEP_ALIVE_S = 60;
+
+    //! Thread.ofVirtual() and Thread.Builder methods, null before Java 21
+    private static final Method ofVirtual;
+    private static final Method builderName;
+    private static final Method builderUnstarted;
+    private static final Method isVirtual;
+
+    static {
+        Method of = null, name = null, unstarted = null, virtual = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            of = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class);
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+            virtual = Thread.class.getMethod("isVirtual");
+            // Throws if virtual threads are a preview feature that is not enabled
+            unstarted.invoke(of.invoke(null), new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+        } catch (Exception e) {
+            of = null;
+        }
+        ofVirtual = of;
+        builderName = name;
+        builderUnstarted = unstarted;
+        isVirtual = virtual;
+    }
+
+    private static volatile Mode mode = "virtual".equalsIgnoreCase(System.getProperty(MODE_PROPERTY))
+            ? Mode.VIRTUAL : Mode.PLATFORM;
+
+    private static HashedTimerWheel timerWheel;
+    private static ExecutorService timerThreads;
+
+    private TelemetryExecutors() {
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return ofVirtual != null;
+    }
+
+    /**
+     * Choose the threads of the links created from now on
+     */
+    public static void setMode(Mode mode) {
+        if (mode == Mode.VIRTUAL && !isVirtualThreadSupported())
+            logger.warn("Virtual threads need Java 21, using platform threads");
+        TelemetryExecutors.mode = mode;
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Check if thread is a virtual thread
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (isVirtual == null)
+            return false;
+        try {
+            return (Boolean) isVirtual.invoke(thread);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create, but do not start, a daemon thread running task, a virtual one
+     * in VIRTUAL mode
+     */
+    public static Thread newThread(String name, Runnable task) {
+        if (mode == Mode.VIRTUAL && ofVirtual != null) {
+            try {
+                Object builder = builderName.invoke(ofVirtual.invoke(null), name);
+                return (Thread) builderUnstarted.invoke(builder, task);
+            } catch (Exception e) {
+                logger.error("Failed to create virtual thread " + name, e);
+            }
+        }
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Get the timer wheel shared by every link
+     */
+    public static synchronized HashedTimerWheel getTimerWheel() {
+        if (timerWheel == null) {
+            final AtomicInteger count = new AtomicInteger();
+            // A thread per running task, reused once it is done
+            timerThreads = new ThreadPoolExecutor(0, Integer.MAX_VALUE, TIMER_THREAD_KEEP_ALIVE_S, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Telemetry timer " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            timerWheel = new HashedTimerWheel("Telemetry timer wheel");
+        }
+        return timerWheel;
+    }
+
+    /**
+     * Run task once after delay
+     */
+    public static HashedTimerWheel.Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return getTimerWheel().schedule(dispatch(task), delay, unit);
+    }
+
+    /**
+     * Run task every period after delay.  A run is skipped if the previous
+     * one has not finished, as a Timer would run it late instead.
+     */
+    public static HashedTimerWheel.Timeout scheduleAtFixedRate(Runnable task, long delay, long period, TimeUnit unit) {
+        return getTimerWheel().scheduleAtFixedRate(dispatch(task), delay, period, unit);
+    }
+
+    /**
+     * Wrap a timer task so the wheel hands it to a timer thread, or in
+     * VIRTUAL mode to a virtual thread of its own, and an exception does
+     * not end a periodic task
+     */
+    private static Runnable dispatch(final Runnable task) {
+        final boolean virtual = mode == Mode.VIRTUAL && ofVirtual != null;
+        final AtomicBoolean running = new AtomicBoolean();
+        final Runnable guarded = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Telemetry timer task failed", e);
+                } finally {
+                    running.set(false);
+                }
+            }
+        };
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (!running.compareAndSet(false, true))
+                    return;
+                if (virtual) {
+                    newThread("Telemetry timer", guarded).start();
+                } else {
+                    timerThreads.execute(guarded);
+                }
+            }
+        };
+    }
+}
@@ -30,14 +30,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Observable;
-import java.util.Observer;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.openpilot_nonag.telemetry.OPTelemetryService;
-import org.openpilot_nonag.uavtalk.UAVObject.TransactionResult;
 
 
 public class TelemetryMonitor extends Observable {
@@ -64,8 +61,10 @@ public class TelemetryMonitor extends Observable {
     private UAVObject gcsStatsObj;
     private UAVObject flightStatsObj;
     private final UAVObject firmwareIapObj;
-    private Timer periodicTask;
+    //! Runs processStatsUpdates() every currentPeriod ms
+    private HashedTimerWheel.Timeout periodicTask;
     private int currentPeriod;
+    private boolean stopped;
     private long lastUpdateTime;
     private final List<UAVObject> queue;
     private int gcsTransactionFailCount;
@@ -124,46 +123,42 @@ public class TelemetryMonitor extends Observable {
         firmwareIapObj = objMngr.getObject("FirmwareIAPObj");
 
         // The first update of the firmwareIapObj will trigger registering the objects
-        firmwareIapObj.addUpdatedObserver(firmwareIapUpdated);
+        firmwareIapObj.addListener(UAVObject.Event.UPDATED, firmwareIapUpdated);
 
 
-        firmwareIapObj.addTransactionCompleted(new Observer() {
+        firmwareIapObj.addListener(UAVObject.Event.TRANSACTION_COMPLETED, new UAVObjectListener() {
             @Override
-            public void update(Observable observable, Object data) {
-                TransactionResult transaction = (TransactionResult) data;
-                if (transaction != null) {
-                    if (transaction.success == false) {
-                        logger.debug( "Firmware IAP transaction failed.  Retrying");
-                        firmwareIapObj.updateRequested();
-                    } else {
-                        logger.debug( "Firmware IAP transaction Succeeded");
-                    }
+            public void objectEvent(UAVObject obj, UAVObject.Event event, boolean success) {
+                if (success == false) {
+                    logger.debug( "Firmware IAP transaction failed.  Retrying");
+                    firmwareIapObj.updateRequested();
+                } else {
+                    logger.debug( "Firmware IAP transaction Succeeded");
                 }
             }
         });
 
-        flightStatsObj.addUpdatedObserver(new Observer() {
+        flightStatsObj.addListener(UAVObject.Event.UPDATED, new UAVObjectListener() {
             @Override
-            public void update(Observable observable, Object data) {
+            public void objectEvent(UAVObject obj, UAVObject.Event event, boolean success) {
                 try {
-                    flightStatsUpdated((UAVObject) data);
+                    flightStatsUpdated(obj);
                 } catch (IOException e) {
                     // The UAVTalk stream was broken, disconnect this signal
                     // TODO: Should this actually be disconnected. Do we create
                     // a new TelemetryMonitor for this
                     // or fix the stream?
-                    flightStatsObj.removeUpdatedObserver(this);
+                    flightStatsObj.removeListener(UAVObject.Event.UPDATED, this);
                 }
             }
         });
 
-        gcsStatsObj.addTransactionCompleted(new Observer() {
+        gcsStatsObj.addListener(UAVObject.Event.TRANSACTION_COMPLETED, new UAVObjectListener() {
 
             @Override
-            public void update(Observable observable, Object data) {
-                UAVObject.TransactionResult result = (UAVObject.TransactionResult) data;
-                logger.debug( "Result: " + result.success + " count " + gcsTransactionFailCount);
-                if (result.success)
+            public void objectEvent(UAVObject obj, UAVObject.Event event, boolean success) {
+                logger.debug( "Result: " + success + " count " + gcsTransactionFailCount);
+                if (success)
                     gcsTransactionFailCount = 0;
                 else
                     gcsTransactionFailCount = gcsTransactionFailCount + 1;
@@ -220,16 +215,15 @@ public class TelemetryMonitor extends Observable {
         queue.clear();
     }
 
-    final Observer transactionObserver = new Observer() {
+    final UAVObjectListener transactionListener = new UAVObjectListener() {
         @Override
-        public void update(Observable observable, Object data) {
+        public void objectEvent(UAVObject obj, UAVObject.Event event, boolean success) {
             try {
-                UAVObject.TransactionResult result = (UAVObject.TransactionResult) data;
-                transactionCompleted(result.obj, result.success);
+                transactionCompleted(obj, success);
             } catch (IOException e) {
                 // When the telemetry stream is broken disconnect these
                 // updates
-                observable.deleteObserver(this);
+                obj.removeListener(UAVObject.Event.TRANSACTION_COMPLETED, this);
             }
         }
     };
@@ -266,7 +260,7 @@ public class TelemetryMonitor extends Observable {
 
         // TODO: Does this need to stay here permanently? This appears to be
         // used for setup mainly
-        obj.addTransactionCompleted(transactionObserver);
+        obj.addListener(UAVObject.Event.TRANSACTION_COMPLETED, transactionListener);
 
         // Request update
         obj.updateRequested();
@@ -283,7 +277,7 @@ public class TelemetryMonitor extends Observable {
             logger.debug("transactionCompleted.  Status: " + success);
 
         // Remove the listener for the event that just finished
-        obj.removeTransactionCompleted(transactionObserver);
+        obj.removeListener(UAVObject.Event.TRANSACTION_COMPLETED, transactionListener);
 
         if (!success) {
             // Right now success = false means received a NAK so don't
@@ -449,14 +443,13 @@ public class TelemetryMonitor extends Observable {
             logger.debug("processStatsUpdates() - after notify");
     }
 
-    private void setPeriod(int ms) {
-        if (periodicTask == null)
-            periodicTask = new Timer();
-
-        periodicTask.cancel();
+    private synchronized void setPeriod(int ms) {
+        if (periodicTask != null)
+            periodicTask.cancel();
         currentPeriod = ms;
-        periodicTask = new Timer();
-        periodicTask.scheduleAtFixedRate(new TimerTask() {
+        if (stopped)
+            return;
+        periodicTask = TelemetryExecutors.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -464,33 +457,29 @@ public class TelemetryMonitor extends Observable {
                 } catch (IOException e) {
                     // Once the stream has died stop trying to process these
                     // updates
-                    periodicTask.cancel();
+                    stopMonitor();
                 }
             }
-        }, currentPeriod, currentPeriod);
+        }, currentPeriod, currentPeriod, TimeUnit.MILLISECONDS);
     }
 
-    public void stopMonitor() {
-        periodicTask.cancel();
+    public synchronized void stopMonitor() {
+        stopped = true;
+        if (periodicTask != null)
+            periodicTask.cancel();
         periodicTask = null;
     }
 
-    private final Observer firmwareIapUpdated = new Observer() {
+    private final UAVObjectListener firmwareIapUpdated = new UAVObjectListener() {
         @Override
-        public void update(Observable observable, Object data) {
+        public void objectEvent(UAVObject obj, UAVObject.Event event, boolean success) {
             if (DEBUG) logger.debug("Received firmware IAP Updated message");
 
-            UAVObjectField description = firmwareIapObj.getField("Description");
-            if (description == null || description.getNumElements() < 100) {
+            String jarName = OPTelemetryService.getUavoJarName(firmwareIapObj);
+            if (jarName == null) {
                 //telemService.toastMessage("Failed to determine UAVO set");
                 logger.info("Failed to determine UAVO set");
             } else {
-                final int HASH_SIZE_USED = 8;
-                String jarName = new String();
-                for (int i = 0; i < HASH_SIZE_USED; i++) {
-                    jarName += String.format("%02x", (int) description.getDouble(i + 60));
-                }
-                jarName += ".jar";
                 if (DEBUG) logger.debug("Attempting to load: " + jarName);
                 if (telemService.loadUavobjects(jarName, objMngr)) {
                     //telemService.toastMessage("Loaded appropriate UAVO set");
@@ -508,7 +497,7 @@ public class TelemetryMonitor extends Observable {
                 }
             }
 
-            firmwareIapObj.removeUpdatedObserver(this);
+            firmwareIapObj.removeListener(UAVObject.Event.UPDATED, this);
         }
     };
 
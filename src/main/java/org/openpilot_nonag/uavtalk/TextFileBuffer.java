@@ -0,0 +1,112 @@
+/**
+ ******************************************************************************
+ * @file       TextFileBuffer.java
+ * @brief      Appends text to a file through one channel and a large buffer.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Text is encoded straight into the buffer and the buffer is written to the
+ * file when it fills up or on flush().  The file is opened, for appending,
+ * the first time there is something to write so nothing is created for an
+ * empty output.
+ */
+class TextFileBuffer {
+
+    private final File file;
+    private final ByteBuffer buffer;
+    // Replaces characters the charset can not hold, as String.getBytes() does
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // The text being encoded, copied here so encoding allocates nothing
+    private CharBuffer chars = CharBuffer.allocate(1024);
+
+    private FileChannel channel;
+
+    TextFileBuffer(File file, int bufferSize) {
+        this.file = file;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    void append(StringBuilder text) throws IOException {
+        int length = text.length();
+        if (chars.capacity() < length)
+            chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+        chars.clear();
+        text.getChars(0, length, chars.array(), 0);
+        chars.limit(length);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                flush();
+            } else if (result.isUnderflow()) {
+                break;
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    /**
+     * Write the buffered text to the file
+     */
+    void flush() throws IOException {
+        if (buffer.position() == 0)
+            return;
+
+        if (channel == null) {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null)
+                dir.mkdirs();
+            channel = new FileOutputStream(file, true).getChannel();
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    void close() throws IOException {
+        flush();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -32,156 +32,226 @@ import java.util.Observer;
 
 public abstract class UAVObject {
 
-    public class CallbackListener extends Observable {
-        private final UAVObject parent;
+    /**
+     * The events an object raises, each has its own listeners
+     */
+    public enum Event {
+        TRANSACTION_COMPLETED,
+        UPDATED,
+        UNPACKED,
+        UPDATED_AUTO,
+        UPDATED_MANUAL,
+        UPDATED_PERIODIC,
+        UPDATE_REQUESTED
+    }
+
+    public class TransactionResult {
+        public UAVObject obj;
+        public boolean success;
+        public TransactionResult(UAVObject obj, boolean success) {
+            this.obj = obj;
+            this.success = success;
+        }
+    }
 
-        public CallbackListener(UAVObject parent) {
-            this.parent = parent;
+    /**
+     * Lets an Observer listen to an event.  The Observer is passed the
+     * event's Observable and the object, or a TransactionResult for
+     * TRANSACTION_COMPLETED, as data.  Two adapters of the same Observer are
+     * equal so it can be removed again.
+     */
+    private static final class ObserverAdapter implements UAVObjectListener {
+        private final Observable observable;
+        private final Observer observer;
+
+        ObserverAdapter(Observable observable, Observer observer) {
+            if (observer == null)
+                throw new NullPointerException();
+            this.observable = observable;
+            this.observer = observer;
+        }
+
+        @Override
+        public void objectEvent(UAVObject obj, Event event, boolean success) {
+            if (event == Event.TRANSACTION_COMPLETED)
+                observer.update(observable, obj.new TransactionResult(obj, success));
+            else
+                observer.update(observable, obj);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ObserverAdapter && ((ObserverAdapter) o).observer.equals(observer);
+        }
+
+        @Override
+        public int hashCode() {
+            return observer.hashCode();
         }
+    }
 
-        public void event () {
-            synchronized(this) {
-                setChanged();
-                notifyObservers(parent);
+    /**
+     * The Observable of one event, as the Observers added with the
+     * add*Observer() methods always had, so an Observer can still remove
+     * itself with observable.deleteObserver(this).  Its Observers are the
+     * event's listeners.
+     */
+    private final class EventObservable extends Observable {
+        private final Event event;
+
+        EventObservable(Event event) {
+            this.event = event;
+        }
+
+        @Override
+        public void addObserver(Observer o) {
+            addListener(event, new ObserverAdapter(this, o));
+        }
+
+        @Override
+        public void deleteObserver(Observer o) {
+            if (o != null)
+                removeListener(event, new ObserverAdapter(this, o));
+        }
+
+        @Override
+        public void deleteObservers() {
+            for (UAVObjectListener listener : listeners[event.ordinal()].toArray()) {
+                if (listener instanceof ObserverAdapter)
+                    removeListener(event, listener);
             }
         }
-        public void event (Object data) {
-            synchronized(this) {
-                setChanged();
-                notifyObservers(data);
+
+        @Override
+        public int countObservers() {
+            int count = 0;
+            for (UAVObjectListener listener : listeners[event.ordinal()].toArray()) {
+                if (listener instanceof ObserverAdapter)
+                    count++;
             }
+            return count;
         }
     }
 
-    public class TransactionResult {
-        public UAVObject obj;
-        public boolean success;
-        public TransactionResult(UAVObject obj, boolean success) {
-            this.obj = obj;
-            this.success = success;
+    //! Created when an Observer is first added to the event
+    private final EventObservable[] observables = new EventObservable[Event.values().length];
+
+    private Observable observable(Event event) {
+        synchronized (observables) {
+            EventObservable observable = observables[event.ordinal()];
+            if (observable == null) {
+                observable = new EventObservable(event);
+                observables[event.ordinal()] = observable;
+            }
+            return observable;
         }
     }
 
-    private final CallbackListener transactionCompletedListeners = new CallbackListener(this);
-    public void addTransactionCompleted(Observer o) {
-        synchronized(transactionCompletedListeners) {
-            transactionCompletedListeners.addObserver(o);
+    private final ListenerList[] listeners = createListenerLists();
+
+    private static ListenerList[] createListenerLists() {
+        ListenerList[] lists = new ListenerList[Event.values().length];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = new ListenerList();
         }
+        return lists;
+    }
+
+    /**
+     * Listen to an event of this object.  Adding a listener twice has no
+     * effect, listeners may be added and removed from any thread including
+     * from within a notification.
+     */
+    public void addListener(Event event, UAVObjectListener listener) {
+        listeners[event.ordinal()].add(listener);
+    }
+
+    public void removeListener(Event event, UAVObjectListener listener) {
+        listeners[event.ordinal()].remove(listener);
+    }
+
+    /**
+     * Get the number of listeners of an event
+     */
+    public int getListenerCount(Event event) {
+        return listeners[event.ordinal()].size();
+    }
+
+    private void fire(Event event, boolean success) {
+        listeners[event.ordinal()].fire(this, event, success);
+    }
+
+    public void addTransactionCompleted(Observer o) {
+        addListener(Event.TRANSACTION_COMPLETED, new ObserverAdapter(observable(Event.TRANSACTION_COMPLETED), o));
     }
     public void removeTransactionCompleted(Observer o) {
-        synchronized(transactionCompletedListeners) {
-            transactionCompletedListeners.deleteObserver(o);
-        }
+        removeListener(Event.TRANSACTION_COMPLETED, new ObserverAdapter(observable(Event.TRANSACTION_COMPLETED), o));
     }
     void transactionCompleted(boolean status) {
-        synchronized(transactionCompletedListeners) {
-            transactionCompletedListeners.event(new TransactionResult(this,status));
-        }
+        fire(Event.TRANSACTION_COMPLETED, status);
     }
 
-    private final CallbackListener updatedListeners = new CallbackListener(this);
     public void removeUpdatedObserver(Observer o) {
-        synchronized(updatedListeners) {
-            updatedListeners.deleteObserver(o);
-        }
+        removeListener(Event.UPDATED, new ObserverAdapter(observable(Event.UPDATED), o));
     }
     public void addUpdatedObserver(Observer o) {
-        synchronized(updatedListeners) {
-            updatedListeners.addObserver(o);
-        }
+        addListener(Event.UPDATED, new ObserverAdapter(observable(Event.UPDATED), o));
     }
     void updated(boolean manually) {
-        synchronized(updatedListeners) {
-            updatedListeners.event();
-        }
+        fire(Event.UPDATED, true);
         if(manually)
             updatedManual();
     }
     public void updated() { updated(true); };
 
-    private final CallbackListener unpackedListeners = new CallbackListener(this);
     public void addUnpackedObserver(Observer o) {
-        synchronized(unpackedListeners) {
-            unpackedListeners.addObserver(o);
-        }
+        addListener(Event.UNPACKED, new ObserverAdapter(observable(Event.UNPACKED), o));
     }
     public void removeUnpackedObserver(Observer o) {
-        synchronized(unpackedListeners) {
-            unpackedListeners.deleteObserver(o);
-        }
+        removeListener(Event.UNPACKED, new ObserverAdapter(observable(Event.UNPACKED), o));
     }
     void unpacked() {
-        synchronized(unpackedListeners) {
-            unpackedListeners.event();
-        }
+        fire(Event.UNPACKED, true);
     }
 
-    private final CallbackListener updatedAutoListeners = new CallbackListener(this);
     public void addUpdatedAutoObserver(Observer o) {
-        synchronized(updatedAutoListeners) {
-            updatedAutoListeners.addObserver(o);
-        }
+        addListener(Event.UPDATED_AUTO, new ObserverAdapter(observable(Event.UPDATED_AUTO), o));
     }
     public void removeUpdatedAutoObserver(Observer o) {
-        synchronized(updatedAutoListeners) {
-            updatedAutoListeners.deleteObserver(o);
-        }
+        removeListener(Event.UPDATED_AUTO, new ObserverAdapter(observable(Event.UPDATED_AUTO), o));
     }
     void updatedAuto() {
-        synchronized(updatedAutoListeners) {
-            updatedAutoListeners.event();
-        }
+        fire(Event.UPDATED_AUTO, true);
     }
 
-    private final CallbackListener updatedManualListeners = new CallbackListener(this);
     public void addUpdatedManualObserver(Observer o) {
-        synchronized(updatedManualListeners) {
-            updatedManualListeners.addObserver(o);
-        }
+        addListener(Event.UPDATED_MANUAL, new ObserverAdapter(observable(Event.UPDATED_MANUAL), o));
     }
     public void removeUpdatedManualObserver(Observer o) {
-        synchronized(updatedManualListeners) {
-            updatedManualListeners.deleteObserver(o);
-        }
+        removeListener(Event.UPDATED_MANUAL, new ObserverAdapter(observable(Event.UPDATED_MANUAL), o));
     }
     void updatedManual() {
-        synchronized(updatedManualListeners) {
-            updatedManualListeners.event();
-        }
+        fire(Event.UPDATED_MANUAL, true);
     }
 
-    private final CallbackListener updatedPeriodicListeners = new CallbackListener(this);
     public void addUpdatedPeriodicObserver(Observer o) {
-        synchronized(updatedPeriodicListeners) {
-            updatedPeriodicListeners.addObserver(o);
-        }
+        addListener(Event.UPDATED_PERIODIC, new ObserverAdapter(observable(Event.UPDATED_PERIODIC), o));
     }
     public void removeUpdatedPeriodicObserver(Observer o) {
-        synchronized(updatedPeriodicListeners) {
-            updatedPeriodicListeners.deleteObserver(o);
-        }
+        removeListener(Event.UPDATED_PERIODIC, new ObserverAdapter(observable(Event.UPDATED_PERIODIC), o));
     }
     void updatedPeriodic() {
-        synchronized(updatedPeriodicListeners) {
-            updatedPeriodicListeners.event();
-        }
+        fire(Event.UPDATED_PERIODIC, true);
     }
 
-    private final CallbackListener updateRequestedListeners = new CallbackListener(this);
     public void addUpdateRequestedObserver(Observer o) {
-        synchronized(updateRequestedListeners) {
-            updateRequestedListeners.addObserver(o);
-        }
+        addListener(Event.UPDATE_REQUESTED, new ObserverAdapter(observable(Event.UPDATE_REQUESTED), o));
     }
     public void removeUpdateRequestedObserver(Observer o) {
-        synchronized(updateRequestedListeners) {
-            updateRequestedListeners.deleteObserver(o);
-        }
+        removeListener(Event.UPDATE_REQUESTED, new ObserverAdapter(observable(Event.UPDATE_REQUESTED), o));
     }
     public void updateRequested() {
-        synchronized(updateRequestedListeners) {
-            updateRequestedListeners.event();
-        }
+        fire(Event.UPDATE_REQUESTED, true);
     }
 
     public abstract boolean isMetadata();
@@ -615,10 +685,8 @@ public abstract class UAVObject {
             throw new Exception("Not enough bytes in ByteBuffer to pack object");
         int numBytes = 0;
 
-        ListIterator<UAVObjectField> li = fields.listIterator();
-        while (li.hasNext()) {
-            UAVObjectField field = li.next();
-            numBytes += field.pack(dataOut);
+        for (int n = 0; n < fields.size(); ++n) {
+            numBytes += fields.get(n).pack(dataOut);
         }
         return numBytes;
     }
@@ -637,10 +705,8 @@ public abstract class UAVObject {
 
         // QMutexLocker locker(mutex);
         int numBytes = 0;
-        ListIterator<UAVObjectField> li = fields.listIterator();
-        while (li.hasNext()) {
-            UAVObjectField field = li.next();
-            numBytes += field.unpack(dataIn);
+        for (int n = 0; n < fields.size(); ++n) {
+            numBytes += fields.get(n).unpack(dataIn);
         }
 
         // Trigger all the listeners for the unpack event
@@ -814,13 +880,18 @@ public abstract class UAVObject {
      * Return a string with the object information (only the data)
      */
     public String toStringData() {
-        String s = new String();
-        ListIterator<UAVObjectField> li = fields.listIterator();
-        while (li.hasNext()) {
-            UAVObjectField field = li.next();
-            s += field.toString();
+        StringBuilder s = new StringBuilder();
+        appendData(s);
+        return s.toString();
+    }
+
+    /**
+     * Append the same text as toStringData()
+     */
+    public void appendData(StringBuilder s) {
+        for (int n = 0; n < fields.size(); ++n) {
+            fields.get(n).appendTo(s);
         }
-        return s;
     }
 
     // /**
@@ -26,6 +26,7 @@ package org.openpilot_nonag.uavtalk;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class UAVObjectField {
@@ -115,65 +116,40 @@ public class UAVObjectField {
      * @param dataOut
      * @return the number of bytes added
      **/
-    @SuppressWarnings("unchecked")
     public synchronized int pack(ByteBuffer dataOut) {
         // Pack each element in output buffer
         dataOut.order(ByteOrder.LITTLE_ENDIAN);
         switch (type)
         {
             case INT8:
-                for (int index = 0; index < numElements; ++index) {
-                    Integer val = (Integer) getValue(index);
-                    dataOut.put(val.byteValue());
-                }
+            case ENUM:
+                for (int index = 0; index < numElements; ++index)
+                    dataOut.put(byteData[index]);
                 break;
             case INT16:
-                for (int index = 0; index < numElements; ++index) {
-                    Integer val = (Integer) getValue(index);
-                    dataOut.putShort(val.shortValue());
-                }
+                for (int index = 0; index < numElements; ++index)
+                    dataOut.putShort(shortData[index]);
                 break;
             case INT32:
-                for (int index = 0; index < numElements; ++index) {
-                    Integer val = (Integer) getValue(index);
-                    dataOut.putInt(val);
-                }
+                for (int index = 0; index < numElements; ++index)
+                    dataOut.putInt(intData[index]);
                 break;
             case UINT8:
-                // TODO: Deal properly with unsigned
-                for (int index = 0; index < numElements; ++index) {
-                    Integer val = (Integer) getValue(index);
-                    dataOut.put(val.byteValue());
-                }
+            case BITFIELD:
+                for (int index = 0; index < numElements; ++index)
+                    dataOut.put((byte) shortData[index]);
                 break;
             case UINT16:
-                // TODO: Deal properly with unsigned
-                for (int index = 0; index < numElements; ++index) {
-                    Integer val = (Integer) getValue(index);
-                    dataOut.putShort(val.shortValue());
-                }
+                for (int index = 0; index < numElements; ++index)
+                    dataOut.putShort((short) intData[index]);
                 break;
             case UINT32:
-                // TODO: Deal properly with unsigned
-                for (int index = 0; index < numElements; ++index) {
-                    Integer val = (int) ( ((Long) getValue(index)).longValue() & 0xffffffffL);
-                    dataOut.putInt(val);
-                }
-                break;
-            case FLOAT32:
                 for (int index = 0; index < numElements; ++index)
-                    dataOut.putFloat((Float) getValue(index));
+                    dataOut.putInt((int) longData[index]);
                 break;
-            case ENUM:
-                List<Byte> l = (List<Byte>) data;
+            case FLOAT32:
                 for (int index = 0; index < numElements; ++index)
-                    dataOut.put(l.get(index));
-                break;
-            case BITFIELD:
-                for (int index = 0; index < numElements; ++index) {
-                    Integer val = (Integer) getValue(index);
-                    dataOut.put(val.byteValue());
-                }
+                    dataOut.putFloat(floatData[index]);
                 break;
             case STRING:
                 // TODO: Implement strings
@@ -183,96 +159,41 @@ public class UAVObjectField {
         return getNumBytes();
     }
 
-    @SuppressWarnings("unchecked")
     public synchronized int unpack(ByteBuffer dataIn) {
         // Unpack each element from input buffer
         dataIn.order(ByteOrder.LITTLE_ENDIAN);
         switch (type)
         {
             case INT8:
-            {
-                List<Byte> l = (List<Byte>) this.data;
-                for (int index = 0 ; index < numElements; ++index) {
-                    Long val = bound(dataIn.get());
-                    l.set(index, val.byteValue());
-                }
+            case ENUM:
+                for (int index = 0 ; index < numElements; ++index)
+                    byteData[index] = dataIn.get();
                 break;
-            }
             case INT16:
-            {
-                List<Short> l = (List<Short>) this.data;
-                for (int index = 0 ; index < numElements; ++index) {
-                    Long val = bound(dataIn.getShort());
-                    l.set(index, val.shortValue());
-                }
+                for (int index = 0 ; index < numElements; ++index)
+                    shortData[index] = dataIn.getShort();
                 break;
-            }
             case INT32:
-            {
-                List<Integer> l = (List<Integer>) this.data;
-                for (int index = 0 ; index < numElements; ++index) {
-                    Long val = bound(dataIn.getInt());
-                    l.set(index, val.intValue());
-                }
+                for (int index = 0 ; index < numElements; ++index)
+                    intData[index] = dataIn.getInt();
                 break;
-            }
             case UINT8:
-            {
-                List<Short> l = (List<Short>) this.data;
-                for (int index = 0 ; index < numElements; ++index) {
-                    int signedval = dataIn.get();  // this sign extends it
-                    int unsignedval = signedval & 0xff;    // drop sign extension
-                    l.set(index, (short) unsignedval);
-                }
+            case BITFIELD:
+                for (int index = 0 ; index < numElements; ++index)
+                    shortData[index] = (short) (dataIn.get() & 0xff); // drop sign extension
                 break;
-            }
             case UINT16:
-            {
-                List<Integer> l = (List<Integer>) this.data;
-                for (int index = 0 ; index < numElements; ++index) {
-                    int signedval = dataIn.getShort();  // this sign extends it
-                    int unsignedval = signedval & 0xffff;    // drop sign extension
-                    l.set(index, unsignedval);
-                }
+                for (int index = 0 ; index < numElements; ++index)
+                    intData[index] = dataIn.getShort() & 0xffff;
                 break;
-            }
             case UINT32:
-            {
-                List<Long> l = (List<Long>) this.data;
-                for (int index = 0 ; index < numElements; ++index) {
-                    long signedval = dataIn.getInt();  // this sign extends it
-                    long unsignedval = signedval & 0xffffffffL;    // drop sign extension
-                    l.set(index, unsignedval);
-                }
+                for (int index = 0 ; index < numElements; ++index)
+                    longData[index] = dataIn.getInt() & 0xffffffffL;
                 break;
-            }
             case FLOAT32:
-            {
-                List<Float> l = (List<Float>) this.data;
-                for (int index = 0 ; index < numElements; ++index) {
-                    Float val = dataIn.getFloat();
-                    l.set(index, val);
-                }
-                break;
-            }
-            case BITFIELD:
-            {
-                List<Short> l = (List<Short>) this.data;
-                for (int index = 0 ; index < numElements; ++index) {
-                    int signedval = dataIn.get();  // this sign extends it
-                    int unsignedval = signedval & 0xff;    // drop sign extension
-                    l.set(index, (short) unsignedval);
-                }
+                for (int index = 0 ; index < numElements; ++index)
+                    floatData[index] = dataIn.getFloat();
                 break;
-            }
-            case ENUM:
-            {
-                List<Byte> l = (List<Byte>) this.data;
-                for (int index = 0 ; index < numElements; ++index) {
-                    l.set(index, dataIn.get());
-                }
-                break;
-            }
             case STRING:
                 // TODO: implement strings
                 //throw new Exception("Strings not handled");
@@ -282,7 +203,6 @@ public class UAVObjectField {
     }
 
     public Object getValue()  { return getValue(0); };
-    @SuppressWarnings("unchecked")
     public synchronized Object getValue(int index)  {
         // Check that index is not out of bounds
         if ( index >= numElements )
@@ -293,32 +213,27 @@ public class UAVObjectField {
         switch (type)
         {
             case INT8:
-                return ((List<Byte>) data).get(index).intValue();
+                return (int) byteData[index];
             case INT16:
-                return ((List<Short>) data).get(index).intValue();
-            case INT32:
-                return ((List<Integer>) data).get(index).intValue();
             case UINT8:
-                return ((List<Short>) data).get(index).intValue();
+            case BITFIELD:
+                return (int) shortData[index];
+            case INT32:
             case UINT16:
-                return ((List<Integer>) data).get(index).intValue();
+                return intData[index];
             case UINT32:
-                return ((List<Long>) data).get(index);
+                return longData[index];
             case FLOAT32:
-                return ((List<Float>) data).get(index);
+                return floatData[index];
             case ENUM:
             {
-                List<Byte> l = (List<Byte>) data;
-                Byte val = l.get(index);
+                byte val = byteData[index];
 
                 //if(val >= options.size() || val < 0)
                 //	throw new Exception("Invalid value for" + name);
 
                 return options.get(val);
             }
-            case BITFIELD:
-                return ((List<Short>) data).get(index).intValue();
-
             case STRING:
             {
                 //throw new Exception("Shit I should do this");
@@ -329,7 +244,6 @@ public class UAVObjectField {
     }
 
     public void setValue(Object data) { setValue(data,0); }
-    @SuppressWarnings("unchecked")
     public synchronized void setValue(Object data, int index) {
         // Check that index is not out of bounds
         //if ( index >= numElements );
@@ -343,47 +257,23 @@ public class UAVObjectField {
             switch (type)
             {
                 case INT8:
-                {
-                    List<Byte> l = (List<Byte>) this.data;
-                    l.set(index, bound(data).byteValue());
+                    byteData[index] = (byte) bound(data);
                     break;
-                }
                 case INT16:
-                {
-                    List<Short> l = (List<Short>) this.data;
-                    l.set(index, bound(data).shortValue());
-                    break;
-                }
-                case INT32:
-                {
-                    List<Integer> l = (List<Integer>) this.data;
-                    l.set(index, bound(data).intValue());
-                    break;
-                }
                 case UINT8:
-                {
-                    List<Short> l = (List<Short>) this.data;
-                    l.set(index, bound(data).shortValue());
+                case BITFIELD:
+                    shortData[index] = (short) bound(data);
                     break;
-                }
+                case INT32:
                 case UINT16:
-                {
-                    List<Integer> l = (List<Integer>) this.data;
-                    l.set(index, bound(data).intValue());
+                    intData[index] = (int) bound(data);
                     break;
-                }
                 case UINT32:
-                {
-                    List<Long> l = (List<Long>) this.data;
-                    l.set(index, bound(data));
+                    longData[index] = bound(data);
                     break;
-                }
                 case FLOAT32:
-                {
-                    List<Float> l = (List<Float>) this.data;
-                    l.set(index, ((Number) data).floatValue());
+                    floatData[index] = ((Number) data).floatValue();
                     break;
-                }
                 case ENUM:
                 {
                     byte val;
@@ -394,14 +284,7 @@ public class UAVObjectField {
                         val = (byte) options.indexOf(data);
                     }
                     //if(val < 0) throw new Exception("Enumerated value not found");
-                    List<Byte> l = (List<Byte>) this.data;
-                    l.set(index, val);
-                    break;
-                }
-                case BITFIELD:
-                {
-                    List<Short> l = (List<Short>) this.data;
-                    l.set(index, bound(data).shortValue());
+                    byteData[index] = val;
                     break;
                 }
                 case STRING:
@@ -414,11 +297,22 @@ public class UAVObjectField {
     }
 
     public int getInt() { return getInt(0); };
-    @SuppressWarnings("unchecked")
-    public int getInt(int index) {
+    public synchronized int getInt(int index) {
         switch (type) {
+            case INT8:
             case ENUM:
-                return ((List<Byte>)data).get(index);
+                return byteData[index];
+            case INT16:
+            case UINT8:
+            case BITFIELD:
+                return shortData[index];
+            case INT32:
+            case UINT16:
+                return intData[index];
+            case UINT32:
+                return (int) longData[index];
+            case FLOAT32:
+                return (int) floatData[index];
             default:
                 break;
         }
@@ -431,15 +325,16 @@ public class UAVObjectField {
     }
 
     public double getDouble() { return getDouble(0); };
-    @SuppressWarnings("unchecked")
-    public double getDouble(int index) {
+    public synchronized double getDouble(int index) {
         switch (type) {
-            case ENUM:
-                return ((List<Byte>)data).get(index);
+            case UINT32:
+                return longData[index];
+            case FLOAT32:
+                return floatData[index];
             default:
                 break;
         }
-        return ((Number) getValue(index)).doubleValue();
+        return getInt(index);
     }
 
     public void setDouble(double value) { setDouble(value, 0); };
@@ -517,89 +412,88 @@ public class UAVObjectField {
 
     @Override
     public String toString() {
-        String sout = new String();
-        sout += name + ": ";
+        StringBuilder sout = new StringBuilder();
+        appendTo(sout);
+        return sout.toString();
+    }
+
+    /**
+     * Append the same text as toString() without boxing the values
+     */
+    public synchronized void appendTo(StringBuilder sout) {
+        sout.append(name).append(": ");
         for (int i = 0; i < numElements; i++) {
-            sout += getValue(i).toString();
+            appendValue(sout, i);
             if (i != numElements-1)
-                sout += ", ";
+                sout.append(", ");
             else
-                sout += " ";
+                sout.append(' ');
         }
         if (units.length() > 0)
-            sout += " (" + units + ")\n";
+            sout.append(" (").append(units).append(")\n");
         else
-            sout += "\n";
-        return sout;
+            sout.append('\n');
+    }
+
+    /**
+     * Append the raw numeric value of an element, enums as their index.
+     * Strings have no numeric value and append nothing.
+     */
+    public synchronized void appendNumber(StringBuilder sout, int index) {
+        switch (type) {
+            case ENUM:
+                sout.append(byteData[index] & 0xff);
+                break;
+            case STRING:
+                break;
+            default:
+                appendValue(sout, index);
+        }
+    }
+
+    private void appendValue(StringBuilder sout, int index) {
+        switch (type) {
+            case UINT32:
+                sout.append(longData[index]);
+                break;
+            case FLOAT32:
+                sout.append(floatData[index]);
+                break;
+            case ENUM:
+            case STRING:
+                sout.append(getValue(index));
+                break;
+            default:
+                sout.append(getInt(index));
+        }
     }
 
     void fieldUpdated(UAVObjectField field) {
 
     }
 
-    @SuppressWarnings("unchecked")
     public synchronized void clear() {
         switch (type)
         {
             case INT8:
-                ((ArrayList<Byte>) data).clear();
-                for(int index = 0; index < numElements; ++index) {
-                    ((ArrayList<Byte>) data).add((byte) 0);
-                }
+            case ENUM:
+            case STRING:
+                Arrays.fill(byteData, (byte) 0);
                 break;
             case INT16:
-                ((ArrayList<Short>) data).clear();
-                for(int index = 0; index < numElements; ++index) {
-                    ((ArrayList<Short>) data).add((short) 0);
-                }
-                break;
-            case INT32:
-                ((ArrayList<Integer>) data).clear();
-                for(int index = 0; index < numElements; ++index) {
-                    ((ArrayList<Integer>) data).add(0);
-                }
-                break;
             case UINT8:
-                ((ArrayList<Short>) data).clear();
-                for(int index = 0; index < numElements; ++index) {
-                    ((ArrayList<Short>) data).add((short) 0);
-                }
+            case BITFIELD:
+                Arrays.fill(shortData, (short) 0);
                 break;
+            case INT32:
             case UINT16:
-                ((ArrayList<Integer>) data).clear();
-                for(int index = 0; index < numElements; ++index) {
-                    ((ArrayList<Integer>) data).add(0);
-                }
+                Arrays.fill(intData, 0);
                 break;
             case UINT32:
-                ((ArrayList<Long>) data).clear();
-                for(int index = 0; index < numElements; ++index) {
-                    ((ArrayList<Long>) data).add((long) 0);
-                }
+                Arrays.fill(longData, 0);
                 break;
             case FLOAT32:
-                ((ArrayList<Float>) data).clear();
-                for(int index = 0; index < numElements; ++index) {
-                    ((ArrayList<Float>) data).add((float) 0);
-                }
-                break;
-            case BITFIELD:
-                ((ArrayList<Short>) data).clear();
-                for(int index = 0; index < numElements; ++index) {
-                    ((ArrayList<Short>) data).add((short) 0);
-                }
-                break;
-            case ENUM:
-                ((ArrayList<Byte>) data).clear();
-                for(int index = 0; index < numElements; ++index) {
-                    ((ArrayList<Byte>) data).add((byte) 0);
-                }
-                break;
-            case STRING:
-                ((ArrayList<Byte>) data).clear();
-                for(int index = 0; index < numElements; ++index) {
-                    ((ArrayList<Byte>) data).add((byte) 0);
-                }
+                Arrays.fill(floatData, 0);
                 break;
         }
     }
@@ -612,57 +506,56 @@ public class UAVObjectField {
         this.options = options;
         this.numElements = elementNames.size();
         this.offset = 0;
-        this.data = null;
         this.obj = null;
         this.elementNames = elementNames;
 
-        // Set field size
+        // Values are stored in a primitive array of the narrowest java type
+        // that holds the whole range of the field type
         switch (type)
         {
             case INT8:
-                data = new ArrayList<Byte>(this.numElements);
+                byteData = new byte[numElements];
                 numBytesPerElement = 1;
                 break;
             case INT16:
-                data = new ArrayList<Short>(this.numElements);
+                shortData = new short[numElements];
                 numBytesPerElement = 2;
                 break;
             case INT32:
-                data = new ArrayList<Integer>(this.numElements);
+                intData = new int[numElements];
                 numBytesPerElement = 4;
                 break;
             case UINT8:
-                data = new ArrayList<Short>(this.numElements);
+                shortData = new short[numElements];
                 numBytesPerElement = 1;
                 break;
             case UINT16:
-                data = new ArrayList<Integer>(this.numElements);
+                intData = new int[numElements];
                 numBytesPerElement = 2;
                 break;
             case UINT32:
-                data = new ArrayList<Long>(this.numElements);
+                longData = new long[numElements];
                 numBytesPerElement = 4;
                 break;
             case FLOAT32:
-                data = new ArrayList<Float>(this.numElements);
+                floatData = new float[numElements];
                 numBytesPerElement = 4;
                 break;
             case ENUM:
-                data = new ArrayList<Byte>(this.numElements);
+                byteData = new byte[numElements];
                 numBytesPerElement = 1;
                 break;
             case BITFIELD:
-                data = new ArrayList<Short>(this.numElements);
+                shortData = new short[numElements];
                 numBytesPerElement = 1;
                 break;
             case STRING:
-                data = new ArrayList<Byte>(this.numElements);
+                byteData = new byte[numElements];
                 numBytesPerElement = 1;
                 break;
             default:
                 numBytesPerElement = 0;
         }
-        clear();
     }
 
     /**
@@ -671,7 +564,7 @@ public class UAVObjectField {
      * @return long value with the right range (for float rounds)
      * @note This is mostly needed because java has no unsigned integer
      */
-    protected Long bound (Object val) {
+    protected long bound (Object val) {
 
         long num = 0;
         if (isNumeric())
@@ -737,7 +630,11 @@ public class UAVObjectField {
                 new ArrayList<String>(elementNames),
                 new ArrayList<String>(options));
         newField.initialize(obj);
-        newField.data = data;
+        if (byteData != null) newField.byteData = byteData.clone();
+        if (shortData != null) newField.shortData = shortData.clone();
+        if (intData != null) newField.intData = intData.clone();
+        if (longData != null) newField.longData = longData.clone();
+        if (floatData != null) newField.floatData = floatData.clone();
         return newField;
     }
 
@@ -750,5 +647,10 @@ public class UAVObjectField {
     private int numBytesPerElement;
     private int offset;
     private UAVObject obj;
-    protected Object data;
+    // Only the array for the field type is allocated
+    private byte[] byteData;
+    private short[] shortData;
+    private int[] intData;
+    private long[] longData;
+    private float[] floatData;
 }
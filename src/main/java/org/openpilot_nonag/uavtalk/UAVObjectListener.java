@@ -0,0 +1,38 @@
+/**
+ ******************************************************************************
+ * @file       UAVObjectListener.java
+ * @brief      Typed callback for the events of a UAVObject.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+/**
+ * Receives the events of a UAVObject, see UAVObject.addListener().  It is
+ * called on the thread raising the event, which may hold the object lock,
+ * so it must not block.
+ */
+public interface UAVObjectListener {
+    /**
+     * @param obj     The object the event is for
+     * @param event   What happened
+     * @param success The outcome of a TRANSACTION_COMPLETED event, true for
+     *                the other events
+     */
+    void objectEvent(UAVObject obj, UAVObject.Event event, boolean success);
+}
@@ -29,6 +29,7 @@ import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class UAVObjectManager {
 
@@ -39,6 +40,125 @@ public class UAVObjectManager {
     // Use array list to store objects since rarely added or deleted
     private final List<List<UAVObject>> objects = new ArrayList<List<UAVObject>>();
 
+    // Lookup tables over objects, updated under the manager's lock whenever
+    // an object or instance is registered.  Readers need no lock.
+    private volatile ObjectIndex index = new ObjectIndex(16);
+
+    /**
+     * The objects hashed by object ID, with open addressing on primitive
+     * keys, and by name.  Only one thread at a time may add to it, readers
+     * may look up at any time.
+     */
+    static final class ObjectIndex {
+
+        /**
+         * The instances of an object, never changed once published so a
+         * reader seeing the entry sees all of it
+         */
+        static final class Entry {
+            final long objId;
+            //! The list in the manager the instances are a snapshot of
+            final List<UAVObject> source;
+            final UAVObject[] instances;
+            final List<UAVObject> view;
+
+            Entry(List<UAVObject> source) {
+                this.objId = source.get(0).getObjID();
+                this.source = source;
+                instances = source.toArray(new UAVObject[source.size()]);
+                view = Collections.unmodifiableList(Arrays.asList(instances));
+            }
+        }
+
+        private final Entry[] entries;
+        private final Map<String, Long> names;
+        private int size;
+
+        ObjectIndex(int capacity) {
+            entries = new Entry[capacity];
+            names = new ConcurrentHashMap<String, Long>(capacity);
+        }
+
+        /**
+         * Find the slot holding objId, or the empty slot where it would go
+         */
+        private int slot(long objId) {
+            int mask = entries.length - 1;
+            // Object IDs are already hashes but mix them so sequential IDs spread out
+            long h = objId * 0x9E3779B97F4A7C15L;
+            int i = (int) (h ^ (h >>> 32)) & mask;
+            Entry entry;
+            while ((entry = entries[i]) != null && entry.objId != objId) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        /**
+         * Add or refresh the entry for a list of instances in the manager
+         * @return This index, or a larger copy once this one is half full
+         */
+        ObjectIndex update(List<UAVObject> instList) {
+            if (instList.size() == 0)
+                return this;
+            UAVObject obj = instList.get(0);
+            int slot = slot(obj.getObjID());
+            Entry entry = entries[slot];
+            if (entry != null) {
+                // Keep the first registration, as the list scan did
+                if (entry.source == instList)
+                    entries[slot] = new Entry(instList);
+                return this;
+            }
+            if ((size + 1) * 2 > entries.length)
+                return grow().update(instList);
+            entries[slot] = new Entry(instList);
+            size++;
+            if (!names.containsKey(obj.getName()))
+                names.put(obj.getName(), obj.getObjID());
+            return this;
+        }
+
+        private ObjectIndex grow() {
+            ObjectIndex grown = new ObjectIndex(entries.length * 2);
+            for (Entry entry : entries) {
+                if (entry != null) {
+                    grown.entries[grown.slot(entry.objId)] = entry;
+                    grown.size++;
+                }
+            }
+            grown.names.putAll(names);
+            return grown;
+        }
+
+        UAVObject get(long objId, long instId) {
+            Entry entry = entries[slot(objId)];
+            if (entry == null)
+                return null;
+            UAVObject[] insts = entry.instances;
+            // Instance IDs normally match their position in the list
+            if (instId >= 0 && instId < insts.length && insts[(int) instId].getInstID() == instId)
+                return insts[(int) instId];
+            for (UAVObject obj : insts) {
+                if (obj.getInstID() == instId)
+                    return obj;
+            }
+            return null;
+        }
+
+        List<UAVObject> getInstances(long objId) {
+            Entry entry = entries[slot(objId)];
+            return entry == null ? null : entry.view;
+        }
+
+        /**
+         * @return The object ID registered under name or null if there is none
+         */
+        Long getObjID(String name) {
+            return names.get(name);
+        }
+    }
+
     public class CallbackListener extends Observable {
         public void event (UAVObject obj) {
             setChanged();
@@ -107,6 +227,7 @@ public class UAVObjectManager {
                     // Assign the next available ID and initialize the object instance the nadd
                     obj.initialize(instList.size(), mobj);
                     instList.add(obj);
+                    index = index.update(instList);
                     return true;
                 }
 
@@ -119,28 +240,6 @@ public class UAVObjectManager {
                     }
                 }
 
-                // If the instance ID is specified and not at the default value (0) then we need to make sure
-                // that there are no gaps in the instance list. If gaps are found then then additional instances
-                // will be created.
-                for(long instId = instList.size(); instId < obj.getInstID(); instId++) {
-                    UAVDataObject newObj = obj.clone(instId);
-                    newObj.initialize(mobj);
-                    instList.add(newObj);
-                    newInstance.event(newObj);
-                }
-                obj.initialize(mobj);
-                instList.add(obj);
-                newInstance.event(obj);
-
-                instIter = instList.listIterator();
-                while(instIter.hasNext()) {
-                    UAVObject testObj = instIter.next();
-                    if(testObj.getInstID() == obj.getInstID()) {
-                        return false;
-                    }
-                }
-
-
                 // Check if there are any gaps between the requested instance ID and the ones in the list,
                 // if any then create the missing instances.
                 for (long instId = instList.size(); instId < obj.getInstID(); ++instId)
@@ -154,6 +253,7 @@ public class UAVObjectManager {
                 obj.initialize(mobj);
                 // Add the actual object instance in the list
                 instList.add(obj);
+                index = index.update(instList);
                 newInstance.event(obj);
                 return true;
             }
@@ -181,6 +281,7 @@ public class UAVObjectManager {
         List<UAVObject> ls = new ArrayList<UAVObject>();
         ls.add(obj);
         objects.add(ls);
+        index = index.update(ls);
         newObject.event(obj);
     }
 
@@ -301,32 +402,22 @@ public class UAVObjectManager {
     /**
      * Helper function for the public getObject() functions.
      */
-    public synchronized UAVObject getObject(String name, long objId, long instId)
+    public UAVObject getObject(String name, long objId, long instId)
     {
-        //logger.debug("looking for name : {}, objId: {}, instId: {} ", name, objId, instId);
-        // Check if this object type is already in the list
-        ListIterator<List<UAVObject>> objIter = objects.listIterator();
-        while(objIter.hasNext()) {
-            List<UAVObject> instList = objIter.next();
-            if (instList.size() > 0) {
-                if ( (name != null && instList.get(0).getName().compareTo(name) == 0) || (name == null && instList.get(0).getObjID() == objId) ) {
-                    // Look for the requested instance ID
-                    ListIterator<UAVObject> iter = instList.listIterator();
-                    while(iter.hasNext()) {
-                        UAVObject obj = iter.next();
-                        if(obj.getInstID() == instId) {
-                            return obj;
-                        }
-                    }
-                }
-            }
+        ObjectIndex idx = index;
+        if (name != null) {
+            Long id = idx.getObjID(name);
+            if (id == null)
+                return null;
+            objId = id;
         }
-
-        return null;
+        return idx.get(objId, instId);
     }
 
     /**
-     * Get all the instances of the object specified by name
+     * Get all the instances of the object specified by name.  The lists
+     * returned by the getObjectInstances() functions are read only snapshots
+     * taken when the last instance was registered.
      */
     public List<UAVObject> getObjectInstances(String name)
     {
@@ -344,20 +435,16 @@ public class UAVObjectManager {
     /**
      * Helper function for the public getObjectInstances()
      */
-    public synchronized List<UAVObject> getObjectInstances(String name, long objId)
+    public List<UAVObject> getObjectInstances(String name, long objId)
     {
-        // Check if this object type is already in the list
-        ListIterator<List<UAVObject>> objIter = objects.listIterator();
-        while(objIter.hasNext()) {
-            List<UAVObject> instList = objIter.next();
-            if (instList.size() > 0) {
-                if ( (name != null && instList.get(0).getName().compareTo(name) == 0) || (name == null && instList.get(0).getObjID() == objId) ) {
-                    return instList;
-                }
-            }
+        ObjectIndex idx = index;
+        if (name != null) {
+            Long id = idx.getObjID(name);
+            if (id == null)
+                return null;
+            objId = id;
         }
-
-        return null;
+        return idx.getInstances(objId);
     }
 
     /**
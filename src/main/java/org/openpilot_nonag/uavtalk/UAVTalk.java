@@ -30,7 +30,6 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.gson.Gson;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
@@ -39,10 +38,13 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 
 
 public class UAVTalk {
@@ -58,7 +60,13 @@ public class UAVTalk {
 
     private Thread inputProcessingThread = null;
 
-    private File dataOutFile;
+    //! Where decoded objects are written, created on first use if not set
+    private RecordSink recordSink;
+    //! Flushes the default sink, null unless it was created
+    private HashedTimerWheel.Timeout defaultSinkFlush;
+
+    //! Only decode, see setPassive()
+    private boolean passive;
 
     /**
      * A reference to the thread for processing the incoming stream.  Currently this method is ONLY
@@ -67,7 +75,7 @@ public class UAVTalk {
     public Thread getInputProcessThread() {
         if (inputProcessingThread == null)
 
-            inputProcessingThread = new Thread() {
+            inputProcessingThread = TelemetryExecutors.newThread("UAVTalk input", new Runnable() {
                 @Override
                 public void run() {
                     while(true) {
@@ -81,39 +89,14 @@ public class UAVTalk {
                         }
                     }
                 }
-            };
+            });
         return inputProcessingThread;
     }
 
     /**
      * Constants
      */
-    private static final int SYNC_VAL = 0x3C;
-
-    private static final short crc_table[] = { 0x00, 0x07, 0x0e, 0x09, 0x1c,
-            0x1b, 0x12, 0x15, 0x38, 0x3f, 0x36, 0x31, 0x24, 0x23, 0x2a, 0x2d,
-            0x70, 0x77, 0x7e, 0x79, 0x6c, 0x6b, 0x62, 0x65, 0x48, 0x4f, 0x46,
-            0x41, 0x54, 0x53, 0x5a, 0x5d, 0xe0, 0xe7, 0xee, 0xe9, 0xfc, 0xfb,
-            0xf2, 0xf5, 0xd8, 0xdf, 0xd6, 0xd1, 0xc4, 0xc3, 0xca, 0xcd, 0x90,
-            0x97, 0x9e, 0x99, 0x8c, 0x8b, 0x82, 0x85, 0xa8, 0xaf, 0xa6, 0xa1,
-            0xb4, 0xb3, 0xba, 0xbd, 0xc7, 0xc0, 0xc9, 0xce, 0xdb, 0xdc, 0xd5,
-            0xd2, 0xff, 0xf8, 0xf1, 0xf6, 0xe3, 0xe4, 0xed, 0xea, 0xb7, 0xb0,
-            0xb9, 0xbe, 0xab, 0xac, 0xa5, 0xa2, 0x8f, 0x88, 0x81, 0x86, 0x93,
-            0x94, 0x9d, 0x9a, 0x27, 0x20, 0x29, 0x2e, 0x3b, 0x3c, 0x35, 0x32,
-            0x1f, 0x18, 0x11, 0x16, 0x03, 0x04, 0x0d, 0x0a, 0x57, 0x50, 0x59,
-            0x5e, 0x4b, 0x4c, 0x45, 0x42, 0x6f, 0x68, 0x61, 0x66, 0x73, 0x74,
-            0x7d, 0x7a, 0x89, 0x8e, 0x87, 0x80, 0x95, 0x92, 0x9b, 0x9c, 0xb1,
-            0xb6, 0xbf, 0xb8, 0xad, 0xaa, 0xa3, 0xa4, 0xf9, 0xfe, 0xf7, 0xf0,
-            0xe5, 0xe2, 0xeb, 0xec, 0xc1, 0xc6, 0xcf, 0xc8, 0xdd, 0xda, 0xd3,
-            0xd4, 0x69, 0x6e, 0x67, 0x60, 0x75, 0x72, 0x7b, 0x7c, 0x51, 0x56,
-            0x5f, 0x58, 0x4d, 0x4a, 0x43, 0x44, 0x19, 0x1e, 0x17, 0x10, 0x05,
-            0x02, 0x0b, 0x0c, 0x21, 0x26, 0x2f, 0x28, 0x3d, 0x3a, 0x33, 0x34,
-            0x4e, 0x49, 0x40, 0x47, 0x52, 0x55, 0x5c, 0x5b, 0x76, 0x71, 0x78,
-            0x7f, 0x6a, 0x6d, 0x64, 0x63, 0x3e, 0x39, 0x30, 0x37, 0x22, 0x25,
-            0x2c, 0x2b, 0x06, 0x01, 0x08, 0x0f, 0x1a, 0x1d, 0x14, 0x13, 0xae,
-            0xa9, 0xa0, 0xa7, 0xb2, 0xb5, 0xbc, 0xbb, 0x96, 0x91, 0x98, 0x9f,
-            0x8a, 0x8d, 0x84, 0x83, 0xde, 0xd9, 0xd0, 0xd7, 0xc2, 0xc5, 0xcc,
-            0xcb, 0xe6, 0xe1, 0xe8, 0xef, 0xfa, 0xfd, 0xf4, 0xf3 };
+    static final int SYNC_VAL = 0x3C;
 
     enum RxStateType {
         STATE_SYNC, STATE_TYPE, STATE_SIZE, STATE_OBJID, STATE_INSTID, STATE_DATA, STATE_CS, STATE_ERROR, STATE_COMPLETE
@@ -136,6 +119,8 @@ public class UAVTalk {
 
     static final int CHECKSUM_LENGTH = 1;
 
+    static final long DEFAULT_SINK_FLUSH_MS = 1000;
+
     static final int MAX_PAYLOAD_LENGTH = 256;
 
     static final int MAX_PACKET_LENGTH = (HEADER_LENGTH	+ MAX_PAYLOAD_LENGTH + CHECKSUM_LENGTH);
@@ -173,6 +158,21 @@ public class UAVTalk {
     RxStateType rxState;
     ComStats stats = new ComStats();
     int event;
+    //! Timestamp of the packet being processed, in ms
+    long rxTimestamp;
+    //! Reference for the timestamps of live packets
+    final long startTime;
+
+    //! Copied on add and remove so notifying needs neither a lock nor an iterator
+    private volatile ObjectUpdateListener[] updateListeners = new ObjectUpdateListener[0];
+    private final Object updateListenersLock = new Object();
+    //! Held while an object is received.  Per instance, rxState is an enum
+    //! constant shared by every UAVTalk in the JVM.
+    private final Object rxLock = new Object();
+    //! Refilled for the record sink for every update, under rxLock
+    private final ObjectUpdateEvent rxEvent = new ObjectUpdateEvent(null, 0, 0);
+    //! Frames the packets sent, under the txBuffer lock
+    private final ByteBuffer txBuffer = ByteBuffer.allocate(MAX_PACKET_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
 
     //! Currently only one UAVTalk transaction is permitted at a time.  If this is null none are in process
     //! otherwise points to the pending object
@@ -220,8 +220,84 @@ public class UAVTalk {
         // SLOT(processInputStream()));
 
         event=0;
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * The file decoded objects are written to unless set otherwise, named
+     * after the current time
+     */
+    public static File getDefaultDataOutFile() {
         String fileName = new SimpleDateFormat("'data/opuavo-'yyyyMMddhhmm'.txt'").format(new Date());
-        dataOutFile = new File(fileName);
+        return new File(fileName);
+    }
+
+    /**
+     * A passive UAVTalk decodes the objects it receives but never transmits,
+     * so requests, acks and nacks are ignored and no transactions are
+     * tracked.  Use this when replaying a log offline.
+     */
+    public void setPassive(boolean passive) {
+        this.passive = passive;
+    }
+
+    public boolean isPassive() {
+        return passive;
+    }
+
+    /**
+     * Get the sink decoded objects are written to.  Unless one was set this
+     * is a CsvRecordSink on the default data file, flushed every second
+     * even when nothing arrives, which closeRecordSink() closes.
+     */
+    public synchronized RecordSink getRecordSink() {
+        if (recordSink == null) {
+            recordSink = new CsvRecordSink(getDefaultDataOutFile(), DEFAULT_SINK_FLUSH_MS);
+            defaultSinkFlush = TelemetryExecutors.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    flushDefaultSink();
+                }
+            }, DEFAULT_SINK_FLUSH_MS, DEFAULT_SINK_FLUSH_MS, TimeUnit.MILLISECONDS);
+        }
+        return recordSink;
+    }
+
+    private synchronized void flushDefaultSink() {
+        if (defaultSinkFlush == null)
+            return;
+        try {
+            recordSink.flush();
+        } catch (IOException e) {
+            logger.error("Failed to flush " + recordSink, e);
+        }
+    }
+
+    /**
+     * Write the decoded objects to sink.  The caller owns the sink and must
+     * close it at the end of the run.
+     */
+    public synchronized void setRecordSink(RecordSink sink) {
+        try {
+            closeRecordSink();
+        } catch (IOException e) {
+            logger.error("Failed to close the default sink", e);
+        }
+        recordSink = sink;
+    }
+
+    /**
+     * Close the default sink, if one was created, at the end of the link.
+     * A sink given to setRecordSink() is left to its owner.
+     */
+    public synchronized void closeRecordSink() throws IOException {
+        if (defaultSinkFlush == null)
+            return;
+        defaultSinkFlush.cancel();
+        defaultSinkFlush = null;
+        RecordSink sink = recordSink;
+        recordSink = null;
+        sink.close();
     }
 
     /**
@@ -240,6 +316,25 @@ public class UAVTalk {
         return stats;
     }
 
+    /**
+     * Add a listener notified with the log timestamp of every object update
+     */
+    public void addObjectUpdateListener(ObjectUpdateListener l) {
+        synchronized(updateListenersLock) {
+            ObjectUpdateListener[] listeners = Arrays.copyOf(updateListeners, updateListeners.length + 1);
+            listeners[listeners.length - 1] = l;
+            updateListeners = listeners;
+        }
+    }
+
+    public void removeObjectUpdateListener(ObjectUpdateListener l) {
+        synchronized(updateListenersLock) {
+            List<ObjectUpdateListener> listeners = new ArrayList<ObjectUpdateListener>(Arrays.asList(updateListeners));
+            if (listeners.remove(l))
+                updateListeners = listeners.toArray(new ObjectUpdateListener[listeners.size()]);
+        }
+    }
+
     /**
      * Send the specified object through the telemetry link. \param[in] obj
      * Object to send \param[in] acked Selects if an ack is required \param[in]
@@ -344,13 +439,134 @@ public class UAVTalk {
 
         processInputByte(val);
         if (rxState == RxStateType.STATE_COMPLETE) {
-            synchronized(rxState) {
-                rxBuffer.position(0);
-                receiveObject(rxType, rxObjId, rxInstId, rxBuffer);
-                stats.rxObjectBytes += rxLength;
-                stats.rxObjects++;
+            receiveCompletePacket();
+        }
+        return true;
+    }
+
+    /**
+     * Process the bytes of a live stream between data.position() and
+     * data.limit(), as processInputStream() would one read at a time.  A
+     * packet may be split across calls, the state machine carries on where
+     * the last call stopped.  On return the position is at the limit.
+     * @return The number of objects received
+     * @throws IOException
+     */
+    public int processInputBuffer(ByteBuffer data) throws IOException {
+        int received = 0;
+        while (data.hasRemaining()) {
+            processInputByte(data.get() & 0xff);
+            if (rxState == RxStateType.STATE_COMPLETE) {
+                receiveCompletePacket();
+                received++;
             }
         }
+        return received;
+    }
+
+    /**
+     * Receive the object the state machine has just completed
+     */
+    private void receiveCompletePacket() throws IOException {
+        synchronized(rxLock) {
+            rxTimestamp = System.currentTimeMillis() - startTime;
+            rxBuffer.position(0);
+            receiveObject(rxType, rxObjId, rxInstId, rxBuffer);
+            stats.rxObjectBytes += rxLength;
+            stats.rxObjects++;
+        }
+    }
+
+    /**
+     * Process a complete UAVTalk packet, for instance one framed by a log
+     * record (see OPLogReader).  The packet occupies data.position() up to
+     * data.limit().  Since the packet boundaries are already known there is
+     * no need to hunt for the sync byte one byte at a time as
+     * processInputByte() does.  On return the position is at the end of the
+     * packet.
+     * @return True if the packet was valid and the object was received, False otherwise
+     * @throws IOException
+     */
+    public boolean processPacket(ByteBuffer data) throws IOException {
+        return processPacket(data, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Process a complete UAVTalk packet that was logged at the given time.
+     * The timestamp is passed on to the object update listeners.
+     * @param timestamp The log timestamp in ms
+     */
+    public boolean processPacket(ByteBuffer data, long timestamp) throws IOException {
+        Validate.notNull(objMngr);
+
+        int start = data.position();
+        int limit = data.limit();
+        int length = limit - start;
+
+        stats.rxBytes += length;
+
+        if (length < HEADER_LENGTH + CHECKSUM_LENGTH || (data.get(start) & 0xff) != SYNC_VAL) {
+            if (WARN) logger.trace("Bad packet framing");
+            stats.rxErrors++;
+            data.position(limit);
+            return false;
+        }
+
+        int type = data.get(start + 1) & 0xff;
+        if ((type & TYPE_MASK) != TYPE_VER) {
+            if (ERROR) logger.error( "Unknown UAVTalk type:" + type);
+            stats.rxErrors++;
+            data.position(limit);
+            return false;
+        }
+
+        int size = (data.get(start + 2) & 0xff) | ((data.get(start + 3) & 0xff) << 8);
+        long objId = (data.get(start + 4) & 0xffL) | ((data.get(start + 5) & 0xffL) << 8)
+                | ((data.get(start + 6) & 0xffL) << 16) | ((data.get(start + 7) & 0xffL) << 24);
+        long instId = (data.get(start + 8) & 0xff) | ((data.get(start + 9) & 0xff) << 8);
+
+        UAVObject obj = objMngr.getObject(objId);
+        if (obj == null) {
+            if (WARN) logger.trace("Unknown ID: " + toHex(objId));
+            stats.rxErrors++;
+            data.position(limit);
+            return false;
+        }
+
+        // Determine data length
+        int dataLength;
+        if (type == TYPE_OBJ_REQ || type == TYPE_ACK || type == TYPE_NACK) {
+            dataLength = 0;
+        } else {
+            dataLength = obj.getNumBytes();
+        }
+
+        // Check the lengths match
+        if (dataLength >= MAX_PAYLOAD_LENGTH || size != HEADER_LENGTH + dataLength
+                || size + CHECKSUM_LENGTH != length) {
+            if (WARN) logger.trace("Mismatched packet size");
+            stats.rxErrors++;
+            data.position(limit);
+            return false;
+        }
+
+        if (updateCRC(0, data, start, size) != (data.get(start + size) & 0xff)) {
+            if (WARN) logger.trace("Bad crc");
+            stats.rxErrors++;
+            data.position(limit);
+            return false;
+        }
+
+        data.position(start + HEADER_LENGTH);
+        data.limit(start + HEADER_LENGTH + dataLength);
+        synchronized(rxLock) {
+            rxTimestamp = timestamp;
+            receiveObject(type, objId, instId, data);
+            stats.rxObjectBytes += dataLength;
+            stats.rxObjects++;
+        }
+        data.limit(limit);
+        data.position(limit);
         return true;
     }
 
@@ -585,19 +801,34 @@ public class UAVTalk {
      */
     public boolean receiveObject(int type, long objId, long instId, ByteBuffer data) throws IOException {
 
-        logger.debug("Received object : " + toHex(objId));
+        if (DEBUG) logger.debug("Received object : " + toHex(objId));
         assert (objMngr != null);
 
         UAVObject obj = null;
         boolean error = false;
         boolean allInstances = (instId == ALL_INSTANCES ? true : false);
 
+        // A passive link only decodes objects, it never answers or tracks transactions
+        if (passive) {
+            switch (type) {
+                case TYPE_OBJ:
+                case TYPE_OBJ_ACK:
+                    return !allInstances && updateObject(objId, instId, data) != null;
+                case TYPE_OBJ_REQ:
+                case TYPE_ACK:
+                case TYPE_NACK:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
         // Process message type
         switch (type) {
             case TYPE_OBJ:
                 // All instances, not allowed for OBJ messages
                 if (!allInstances) {
-                    logger.debug("Received object: " + objMngr.getObject(objId).getName());
+                    if (DEBUG) logger.debug("Received object: " + objMngr.getObject(objId).getName());
 
                     // Get object and update its data
                     obj = updateObject(objId, instId, data);
@@ -729,6 +960,9 @@ public class UAVTalk {
             }
             if (DEBUG) logger.debug("Unpacking new object");
             instobj.unpack(data);
+
+            processDataObject(instobj);
+
             return instobj;
         } else {
             // Unpack data into object instance
@@ -736,14 +970,13 @@ public class UAVTalk {
             obj.unpack(data);
 
 
-            processDataObject((UAVDataObject) obj);
+            processDataObject(obj);
 
             return obj;
         }
     }
 
     private boolean processDataObject(UAVObject obj) {
-        String val;
         try {
 
             UAVDataObject dobj = null;
@@ -754,16 +987,16 @@ public class UAVTalk {
                 return true;
             }
 
-            StringBuilder sb = new StringBuilder();
-            sb.append(event + ",");
-            sb.append(dobj.getObjID() + ",");
-            sb.append(dobj.getName() + ",");
-            sb.append(dobj.getDescription() + ",");
-            sb.append(dobj.toStringData().replace("\n", ","));
-            sb.append('\n');
+            // Listeners may keep their event, only the sink's is reused
+            ObjectUpdateListener[] listeners = updateListeners;
+            if (listeners.length > 0) {
+                ObjectUpdateEvent update = new ObjectUpdateEvent(dobj, rxTimestamp, event);
+                for (int i = 0; i < listeners.length; i++) {
+                    listeners[i].objectUpdated(update);
+                }
+            }
 
-            logger.info(sb.toString());
-            FileUtils.writeStringToFile(dataOutFile, sb.toString(), true);
+            getRecordSink().write(rxEvent.set(dobj, rxTimestamp, event));
 
             event++;
 
@@ -835,6 +1068,56 @@ public class UAVTalk {
         }
     }
 
+    /**
+     * Write a complete object packet for the current data of obj into out,
+     * starting at its position, as it would be sent on the telemetry link or
+     * stored in a log record.  The buffer must be little endian and have room
+     * for getNumBytes() plus the header and checksum.
+     * @return The packet length, 0 if the object could not be packed
+     * @throws Exception
+     */
+    public static int framePacket(ByteBuffer out, UAVObject obj) throws Exception {
+        return framePacket(out, TYPE_OBJ, obj.getObjID(), obj.getInstID(), obj);
+    }
+
+    /**
+     * Write a packet of the given type into out, see framePacket(ByteBuffer, UAVObject).
+     * obj can be null for packets without data (requests, ACK and NACK).
+     */
+    static int framePacket(ByteBuffer out, int type, long objId, long instId, UAVObject obj) throws Exception {
+        int start = out.position();
+
+        // Determine data length
+        int length;
+        if (type == TYPE_OBJ_REQ || type == TYPE_ACK || type == TYPE_NACK) {
+            length = 0;
+        } else {
+            length = obj.getNumBytes();
+        }
+
+        // Check length
+        if (length >= MAX_PAYLOAD_LENGTH) {
+            return 0;
+        }
+
+        // Setup type and object id fields
+        out.put((byte) (SYNC_VAL & 0xff));
+        out.put((byte) (type & 0xff));
+        out.putShort((short) (length + HEADER_LENGTH));
+        out.putInt((int) objId);
+        out.putShort((short) (instId & 0xffff));
+
+        // Copy data (if any)
+        if (length > 0 && obj.pack(out) == 0) {
+            out.position(start);
+            return 0;
+        }
+
+        // Calculate checksum
+        out.put((byte) (CRC8.compute(out, start, out.position() - start) & 0xff));
+        return out.position() - start;
+    }
+
     /**
      * Send an object through the telemetry link.
      * @param[in] obj Object to send
@@ -902,40 +1185,15 @@ public class UAVTalk {
      * @param[in] type Transaction type \return Success (true), Failure (false)
      */
     private boolean transmitSingleObject(int type, long objId, long instId, UAVObject obj) throws IOException {
-        int length = 0;
-
         assert (objMngr != null && outStream != null);
 
         // IMPORTANT : obj can be null (when type is NACK for example)
 
-        // Determine data length
-        if (type == TYPE_OBJ_REQ || type == TYPE_ACK || type == TYPE_NACK) {
-            length = 0;
-        } else {
-            length = obj.getNumBytes();
-        }
-
-        ByteBuffer bbuf = ByteBuffer.allocate(MAX_PACKET_LENGTH);
-        bbuf.order(ByteOrder.LITTLE_ENDIAN);
-
-        // Setup type and object id fields
-        bbuf.put((byte) (SYNC_VAL & 0xff));
-        bbuf.put((byte) (type & 0xff));
-        bbuf.putShort((short) (length + HEADER_LENGTH));
-        bbuf.putInt((int) objId);
-        bbuf.putShort((short) (instId & 0xffff));
-
-
-        // Check length
-        if (length >= MAX_PAYLOAD_LENGTH) {
-            ++stats.txErrors;
-            return false;
-        }
-
-        // Copy data (if any)
-        if (length > 0)
+        int packlen;
+        synchronized(txBuffer) {
+            txBuffer.clear();
             try {
-                if (obj.pack(bbuf) == 0) {
+                if (framePacket(txBuffer, type, objId, instId, obj) == 0) {
                     ++stats.txErrors;
                     return false;
                 }
@@ -945,20 +1203,14 @@ public class UAVTalk {
                 e.printStackTrace();
                 return false;
             }
-
-        // Calculate checksum
-        bbuf.put((byte) (updateCRC(0, bbuf.array(), bbuf.position()) & 0xff));
-
-        int packlen = bbuf.position();
-        bbuf.position(0);
-        byte[] dst = new byte[packlen];
-        bbuf.get(dst, 0, packlen);
-
-        outStream.write(dst);
+            packlen = txBuffer.position();
+            outStream.write(txBuffer.array(), 0, packlen);
+        }
+        int length = packlen - HEADER_LENGTH - CHECKSUM_LENGTH;
 
         // Update stats
         ++stats.txObjects;
-        stats.txBytes += bbuf.position();
+        stats.txBytes += packlen;
         stats.txObjectBytes += length;
 
         // Done
@@ -1021,24 +1273,22 @@ public class UAVTalk {
     }
 
     /**
-     * Update the crc value with new data.
-     *
-     * Generated by pycrc v0.7.5, http://www.tty1.net/pycrc/ using the
-     * configuration: Width = 8 Poly = 0x07 XorIn = 0x00 ReflectIn = False
-     * XorOut = 0x00 ReflectOut = False Algorithm = table-driven
+     * Update the crc value with new data, see CRC8.
      *
      * \param crc The current crc value. \param data Pointer to a buffer of \a
      * data_len bytes. \param length Number of bytes in the \a data buffer.
      * \return The updated crc value.
      */
     int updateCRC(int crc, int data) {
-        return crc_table[crc ^ (data & 0xff)];
+        return CRC8.update(crc, data);
     }
 
     int updateCRC(int crc, byte[] data, int length) {
-        for (int i = 0; i < length; i++)
-            crc = updateCRC(crc, data[i]);
-        return crc;
+        return CRC8.update(crc, data, 0, length);
+    }
+
+    int updateCRC(int crc, ByteBuffer data, int offset, int length) {
+        return CRC8.update(crc, data, offset, length);
     }
 
     private OnTransactionCompletedListener transactionListener = null;
@@ -0,0 +1,117 @@
+/**
+ ******************************************************************************
+ * @file       UavoDetector.java
+ * @brief      Finds the UAVO set a log was written with by scanning it for the
+ *             first FirmwareIAPObj update.
+ * @see        The GNU Public License (GPL) Version 3
+ *
+ *****************************************************************************/
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.openpilot_nonag.telemetry.OPTelemetryService;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds the UAVO set a log was written with before it is decoded, so the
+ * whole log can be decoded in one pass with the right definitions instead
+ * of dropping every object seen before the FirmwareIAPObj update.
+ */
+public class UavoDetector {
+
+    static final Logger logger = LogManager.getLogger(UavoDetector.class.getName());
+
+    /**
+     * Find the UAVO jar named by the first valid FirmwareIAPObj update in the
+     * log.  The log is memory mapped and only the packet headers are looked
+     * at until that update is found.
+     * @return The jar name or null if the log holds no FirmwareIAPObj update
+     * @throws IOException
+     */
+    public static String detect(File logFile) throws IOException {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        UAVObject firmwareIapObj = objManager.getObject("FirmwareIAPObj");
+        long objId = firmwareIapObj.getObjID();
+        int length = UAVTalk.HEADER_LENGTH + firmwareIapObj.getNumBytes() + UAVTalk.CHECKSUM_LENGTH;
+
+        OPLogReader reader = OPLogReader.map(logFile);
+        try {
+            while (reader.next()) {
+                ByteBuffer packet = reader.getPacket();
+                int start = packet.position();
+                if (packet.remaining() != length)
+                    continue;
+                int type = packet.get(start + 1) & 0xff;
+                if (type != UAVTalk.TYPE_OBJ && type != UAVTalk.TYPE_OBJ_ACK)
+                    continue;
+                if (getObjId(packet, start) != objId)
+                    continue;
+                if (CRC8.compute(packet, start, length - 1) != (packet.get(start + length - 1) & 0xff))
+                    continue;
+
+                ByteBuffer data = packet.duplicate();
+                data.position(start + UAVTalk.HEADER_LENGTH);
+                data.limit(start + length - 1);
+                firmwareIapObj.unpack(data.slice().order(ByteOrder.LITTLE_ENDIAN));
+                logger.debug("FirmwareIAPObj found at offset " + reader.getRecordOffset());
+                return OPTelemetryService.getUavoJarName(firmwareIapObj);
+            }
+        } finally {
+            reader.close();
+        }
+        return null;
+    }
+
+    private static long getObjId(ByteBuffer packet, int start) {
+        return (packet.get(start + 4) & 0xffL) | (packet.get(start + 5) & 0xffL) << 8
+                | (packet.get(start + 6) & 0xffL) << 16 | (packet.get(start + 7) & 0xffL) << 24;
+    }
+
+    /**
+     * The UAVO jar to decode the log with: the one the log names if it is
+     * available, defaultJar otherwise
+     */
+    public static String resolve(File logFile, String defaultJar) {
+        String jarName;
+        try {
+            jarName = detect(logFile);
+        } catch (IOException e) {
+            logger.warn("Failed to scan " + logFile + " for its UAVO set", e);
+            return defaultJar;
+        }
+
+        if (jarName == null) {
+            logger.info("No FirmwareIAPObj in " + logFile + ", using UAVO set " + defaultJar);
+            return defaultJar;
+        }
+        if (!new File(OPTelemetryService.JAR_DIR, jarName).exists()) {
+            logger.warn("Log was written with UAVO set " + jarName + " which is not available, using " + defaultJar);
+            return defaultJar;
+        }
+        if (!jarName.equals(defaultJar))
+            logger.info("Log was written with UAVO set " + jarName);
+        return jarName;
+    }
+}
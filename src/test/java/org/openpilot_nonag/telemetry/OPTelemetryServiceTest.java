@@ -2,8 +2,11 @@ package org.openpilot_nonag.telemetry;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.openpilot_nonag.uavtalk.UAVObject;
 import org.openpilot_nonag.uavtalk.UAVObjectManager;
 
+import static org.junit.Assert.*;
+
 
 public class OPTelemetryServiceTest {
 
@@ -20,7 +23,34 @@ public class OPTelemetryServiceTest {
         UAVObjectManager objManager = new UAVObjectManager();
         String jar = "bed2641e417be160.jar";
 
-        opTelemetryService.loadUavobjects(jar, objManager);
+        assertTrue(opTelemetryService.loadUavobjects(jar, objManager));
+        assertNotNull(objManager.getObject("AttitudeState"));
+        assertNotNull(objManager.getObject("FirmwareIAPObj"));
+    }
 
+    @Test
+    public void testLoadCachedUavobjects() throws Exception {
+        String jar = "bed2641e417be160.jar";
+        UAVObjectManager first = new UAVObjectManager();
+        UAVObjectManager second = new UAVObjectManager();
+        assertTrue(opTelemetryService.loadUavobjects(jar, first));
+        assertTrue(new OPTelemetryService().loadUavobjects(jar, second));
+
+        assertSame(OPTelemetryService.getUavoSet(jar), OPTelemetryService.getUavoSet(jar));
+        assertEquals(first.getDataObjects().size(), second.getDataObjects().size());
+
+        // Same classes, separate objects with separate metadata
+        UAVObject a = first.getObject("AttitudeState");
+        UAVObject b = second.getObject("AttitudeState");
+        assertSame(a.getClass(), b.getClass());
+        assertNotSame(a, b);
+        assertNotSame(first.getObject("AttitudeStateMeta"), second.getObject("AttitudeStateMeta"));
+        a.getField("Roll").setDouble(12.5);
+        assertEquals(0.0, b.getField("Roll").getDouble(), 0);
+    }
+
+    @Test
+    public void testLoadMissingJar() throws Exception {
+        assertFalse(opTelemetryService.loadUavobjects("0000000000000000.jar", new UAVObjectManager()));
     }
-}
\ No newline at end of file
+}
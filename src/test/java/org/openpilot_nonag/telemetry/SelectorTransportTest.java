@@ -0,0 +1,189 @@
+package org.openpilot_nonag.telemetry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openpilot_nonag.tools.ReplayServer;
+import org.openpilot_nonag.tools.TelemetryFanOut;
+import org.openpilot_nonag.uavtalk.ObjectUpdateEvent;
+import org.openpilot_nonag.uavtalk.OPLogReader;
+import org.openpilot_nonag.uavtalk.RecordSink;
+import org.openpilot_nonag.uavtalk.UAVObject;
+import org.openpilot_nonag.uavtalk.UAVObjectManager;
+import org.openpilot_nonag.uavtalk.UAVTalk;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SelectorTransportTest {
+
+    static final File SAMPLE_LOG = new File("sample-file/OP-2014-07-17_17-52-20-good.opl");
+
+    static final int LINKS = 8;
+
+    private SelectorTransport transport;
+    private ReplayServer server;
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null)
+            server.close();
+        if (transport != null)
+            transport.close();
+    }
+
+    /**
+     * Counts the records instead of writing them
+     */
+    static class CountingSink implements RecordSink {
+        volatile int count;
+
+        @Override
+        public void write(ObjectUpdateEvent event) throws IOException {
+            count++;
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    private static UAVObjectManager newObjectManager() {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        new OPTelemetryService().loadUavobjects("bed2641e417be160.jar", objManager);
+        return objManager;
+    }
+
+    private static int countSelectorThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("Telemetry selector"))
+                count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testManyLinks() throws Exception {
+        server = new ReplayServer(SAMPLE_LOG, 0);
+        server.setSpeed(ReplayServer.AS_FAST_AS_POSSIBLE);
+        server.setSlowConsumerPolicy(TelemetryFanOut.SlowConsumerPolicy.BLOCK, TelemetryFanOut.DEFAULT_QUEUE_CAPACITY);
+        server.start();
+
+        transport = new SelectorTransport();
+        List<CountingSink> sinks = new ArrayList<CountingSink>();
+        for (int i = 0; i < LINKS; i++) {
+            SelectorTransport.Link link = transport.connect(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()), newObjectManager());
+            CountingSink sink = new CountingSink();
+            link.getUavTalk().setPassive(true);
+            link.getUavTalk().setRecordSink(sink);
+            link.start();
+            sinks.add(sink);
+        }
+        assertTrue(server.awaitClients(LINKS, 5000));
+        List<SelectorTransport.Link> links = new ArrayList<SelectorTransport.Link>(transport.getLinks());
+        assertEquals(1, countSelectorThreads());
+
+        server.replay();
+        server.close();
+        long end = System.currentTimeMillis() + 10000;
+        while (transport.getLinkCount() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, transport.getLinkCount());
+
+        // Every link decodes what the log decodes offline
+        for (int i = 0; i < LINKS; i++) {
+            SelectorTransport.Link link = links.get(i);
+            assertTrue(link.isClosed());
+            assertEquals(server.getBytesSent(), link.getBytesReceived());
+            assertEquals(10470, link.getUavTalk().getStats().rxObjects);
+            assertTrue(sinks.get(i).count > 10000);
+        }
+    }
+
+    @Test
+    public void testProcessInputBufferSplitsPackets() throws Exception {
+        UAVTalk uavTalk = new UAVTalk(null, null, newObjectManager());
+        uavTalk.setPassive(true);
+        uavTalk.setRecordSink(new CountingSink());
+
+        // Hand the packets over in pieces that do not line up with them
+        OPLogReader reader = OPLogReader.map(SAMPLE_LOG);
+        ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+        int received = 0;
+        while (reader.next()) {
+            pending.put(reader.getPacket());
+            if (pending.position() > 1000) {
+                pending.flip();
+                ByteBuffer piece = pending.duplicate();
+                piece.limit(777);
+                received += uavTalk.processInputBuffer(piece);
+                pending.position(777);
+                pending.compact();
+            }
+        }
+        reader.close();
+        pending.flip();
+        received += uavTalk.processInputBuffer(pending);
+
+        assertFalse(pending.hasRemaining());
+        assertEquals(10470, received);
+        assertEquals(10470, uavTalk.getStats().rxObjects);
+    }
+
+    @Test
+    public void testSend() throws Exception {
+        ServerSocket vehicle = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        try {
+            transport = new SelectorTransport();
+            UAVObjectManager objManager = newObjectManager();
+            SelectorTransport.Link link = transport.connect(vehicle.getLocalSocketAddress(), objManager);
+            link.start();
+
+            // Sent before the connection may have completed
+            UAVObject obj = objManager.getObject("GCSTelemetryStats");
+            assertTrue(link.getUavTalk().sendObject(obj, false, false));
+
+            ByteBuffer expected = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+            int length = UAVTalk.framePacket(expected, obj);
+            Socket socket = vehicle.accept();
+            byte[] received = new byte[length];
+            InputStream in = socket.getInputStream();
+            for (int n = 0; n < length; ) {
+                int read = in.read(received, n, length - n);
+                assertTrue(read > 0);
+                n += read;
+            }
+            assertTrue(Arrays.equals(Arrays.copyOf(expected.array(), length), received));
+
+            // Closed by the vehicle
+            socket.close();
+            long end = System.currentTimeMillis() + 5000;
+            while (!link.isClosed() && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertTrue(link.isClosed());
+        } finally {
+            vehicle.close();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.openpilot_nonag.tools;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openpilot_nonag.uavtalk.ObjectUpdateEvent;
+import org.openpilot_nonag.uavtalk.RecordSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BatchDecoderTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testFindLogs() throws Exception {
+        File root = tempFolder.newFolder("flights");
+        File day1 = new File(root, "day1");
+        File day2 = new File(root, "day2");
+        FileUtils.touch(new File(day1, "a.opl"));
+        FileUtils.touch(new File(day1, "notes.txt"));
+        FileUtils.touch(new File(day2, "b.opl"));
+        FileUtils.touch(new File(day2, "c.opl"));
+
+        List<File> logs = BatchDecoder.findLogs(Arrays.asList(root.getPath()));
+        assertEquals(Arrays.asList(new File(day1, "a.opl"), new File(day2, "b.opl"), new File(day2, "c.opl")), logs);
+
+        logs = BatchDecoder.findLogs(Arrays.asList(root.getPath() + "/day*/b.opl", day1.getPath()));
+        assertEquals(Arrays.asList(new File(day1, "a.opl"), new File(day2, "b.opl")), logs);
+    }
+
+    @Test
+    public void testDecodeBatch() throws Exception {
+        File root = tempFolder.newFolder("logs");
+        File first = new File(root, "1/flight.opl");
+        // A comma in the path must not shift the summary columns
+        File second = new File(root, "2,b/flight.opl");
+        FileUtils.copyFile(OfflineDecoderTest.SAMPLE_LOG, first);
+        FileUtils.copyFile(OfflineDecoderTest.SAMPLE_LOG, second);
+        File broken = new File(root, "broken.opl");
+        FileUtils.writeByteArrayToFile(broken, new byte[] { 0x3c, 0x20 });
+
+        File outDir = tempFolder.newFolder("out");
+        BatchDecoder decoder = new BatchDecoder("bed2641e417be160.jar", 2, outDir, Logging.OutputFormat.CSV);
+        List<BatchDecoder.Result> results = decoder.decode(BatchDecoder.findLogs(Arrays.asList(root.getPath())));
+
+        assertEquals(3, results.size());
+        for (BatchDecoder.Result result : results) {
+            assertNull(result.failure);
+        }
+        assertEquals(10470, results.get(0).objects);
+        assertEquals(10470, results.get(1).objects);
+        assertEquals(0, results.get(2).records);
+
+        // Same name in two directories
+        assertEquals(new File(outDir, "flight.txt"), results.get(0).output);
+        assertEquals(new File(outDir, "flight-1.txt"), results.get(1).output);
+        assertTrue(FileUtils.contentEquals(results.get(0).output, results.get(1).output));
+
+        List<String> summary = FileUtils.readLines(new File(outDir, BatchDecoder.SUMMARY_FILE));
+        assertEquals(4, summary.size());
+        assertTrue(summary.get(1).startsWith(first.getPath() + ","));
+        assertTrue(summary.get(2).startsWith("\"" + second.getPath() + "\","));
+        for (String line : summary.subList(1, summary.size())) {
+            List<String> fields = parseCsvLine(line);
+            assertEquals(8, fields.size());
+            assertTrue(fields.get(1), fields.get(1).isEmpty() || new File(fields.get(1)).exists());
+        }
+        assertEquals(results.get(1).output.getPath(), parseCsvLine(summary.get(2)).get(1));
+        // Nothing written for the broken log
+        assertEquals("", parseCsvLine(summary.get(3)).get(1));
+    }
+
+    @Test
+    public void testSummaryOutputsExist() throws Exception {
+        File log = tempFolder.newFile("flight.opl");
+        FileUtils.copyFile(OfflineDecoderTest.SAMPLE_LOG, log);
+        for (Logging.OutputFormat format : Logging.OutputFormat.values()) {
+            File outDir = tempFolder.newFolder(format.name());
+            List<BatchDecoder.Result> results = new BatchDecoder("bed2641e417be160.jar", 1, outDir, format)
+                    .decode(Arrays.asList(log));
+            assertNull(results.get(0).failure);
+            List<String> summary = FileUtils.readLines(new File(outDir, BatchDecoder.SUMMARY_FILE));
+            File output = new File(parseCsvLine(summary.get(1)).get(1));
+            assertEquals(results.get(0).output, output);
+            assertTrue(format + " " + output, output.exists());
+        }
+    }
+
+    @Test
+    public void testDecodeAgainReplacesOutput() throws Exception {
+        File log = tempFolder.newFile("flight.opl");
+        FileUtils.copyFile(OfflineDecoderTest.SAMPLE_LOG, log);
+        for (Logging.OutputFormat format : Logging.OutputFormat.values()) {
+            File outDir = tempFolder.newFolder("again-" + format.name());
+            BatchDecoder decoder = new BatchDecoder("bed2641e417be160.jar", 1, outDir, format);
+            File output = decoder.decode(Arrays.asList(log)).get(0).output;
+            File firstRun = new File(tempFolder.getRoot(), "first-" + format.name());
+            if (output.isDirectory()) {
+                FileUtils.copyDirectory(output, firstRun);
+            } else {
+                FileUtils.copyFile(output, firstRun);
+            }
+
+            // The same output as the first run, not a second copy of it
+            decoder.decode(Arrays.asList(log));
+            if (output.isDirectory()) {
+                String[] names = output.list();
+                assertEquals(firstRun.list().length, names.length);
+                for (String name : names) {
+                    assertTrue(format + " " + name,
+                            FileUtils.contentEquals(new File(firstRun, name), new File(output, name)));
+                }
+            } else {
+                assertEquals(format.name(), firstRun.length(), output.length());
+                if (format == Logging.OutputFormat.CSV)
+                    assertTrue(FileUtils.contentEquals(firstRun, output));
+            }
+        }
+    }
+
+    @Test
+    public void testLogsDecodedConcurrently() throws Exception {
+        File first = tempFolder.newFile("first.opl");
+        File second = tempFolder.newFile("second.opl");
+        FileUtils.copyFile(OfflineDecoderTest.SAMPLE_LOG, first);
+        FileUtils.copyFile(OfflineDecoderTest.SAMPLE_LOG, second);
+
+        // Each worker waits in its first write until the other is writing too
+        final CountDownLatch bothWriting = new CountDownLatch(2);
+        final AtomicInteger met = new AtomicInteger();
+        BatchDecoder decoder = new BatchDecoder("bed2641e417be160.jar", 2, tempFolder.newFolder("out"),
+                Logging.OutputFormat.CSV) {
+            @Override
+            RecordSink createSink(Result result) throws IOException {
+                final RecordSink sink = super.createSink(result);
+                return new RecordSink() {
+                    boolean first = true;
+
+                    @Override
+                    public void write(ObjectUpdateEvent event) throws IOException {
+                        if (first) {
+                            first = false;
+                            bothWriting.countDown();
+                            try {
+                                if (bothWriting.await(10, TimeUnit.SECONDS))
+                                    met.incrementAndGet();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        sink.write(event);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        sink.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        sink.close();
+                    }
+                };
+            }
+        };
+        List<BatchDecoder.Result> results = decoder.decode(Arrays.asList(first, second));
+
+        assertEquals(2, met.get());
+        for (BatchDecoder.Result result : results) {
+            assertNull(result.failure);
+            assertEquals(10470, result.objects);
+        }
+    }
+
+    /**
+     * Split a summary line, undoing the quoting of BatchDecoder.csvField()
+     */
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
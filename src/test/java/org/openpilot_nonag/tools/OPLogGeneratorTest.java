@@ -0,0 +1,111 @@
+package org.openpilot_nonag.tools;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openpilot_nonag.telemetry.OPTelemetryService;
+import org.openpilot_nonag.uavtalk.OPLogReader;
+import org.openpilot_nonag.uavtalk.UAVObjectManager;
+import org.openpilot_nonag.uavtalk.UAVTalk;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class OPLogGeneratorTest {
+
+    static final String UAVO_JAR = "bed2641e417be160.jar";
+
+    private UAVObjectManager objManager;
+
+    @Before
+    public void setUp() {
+        objManager = createObjectManager();
+    }
+
+    private static UAVObjectManager createObjectManager() {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        new OPTelemetryService().loadUavobjects(UAVO_JAR, objManager);
+        return objManager;
+    }
+
+    private byte[] generate(OPLogGenerator generator, long durationMs) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.generate(out, durationMs, Long.MAX_VALUE);
+        return out.toByteArray();
+    }
+
+    private OfflineDecoder decode(byte[] log, OfflineDecoderTest.CountingSink sink) throws Exception {
+        OfflineDecoder decoder = new OfflineDecoder(UAVO_JAR, sink, false);
+        OPLogReader reader = OPLogReader.open(new ByteArrayInputStream(log));
+        decoder.decode(reader);
+        reader.close();
+        return decoder;
+    }
+
+    @Test
+    public void testGeneratedLogDecodes() throws Exception {
+        OPLogGenerator generator = new OPLogGenerator(objManager, 1);
+        generator.setUpdatePeriod("AttitudeState", 10);
+        generator.setInstances("AccessoryDesired", 3);
+        byte[] log = generate(generator, 60000);
+
+        OfflineDecoderTest.CountingSink sink = new OfflineDecoderTest.CountingSink();
+        OfflineDecoder decoder = decode(log, sink);
+        UAVTalk.ComStats stats = decoder.getUAVTalk().getStats();
+        assertEquals(generator.getRecordCount(), stats.rxObjects);
+        assertEquals(0, stats.rxErrors);
+        assertEquals(generator.getRecordCount(), sink.count);
+
+        assertEquals(3, decoder.getObjectManager().getNumInstances("AccessoryDesired"));
+
+        // The same seed and starting values write the same log
+        generator = new OPLogGenerator(createObjectManager(), 1);
+        generator.setUpdatePeriod("AttitudeState", 10);
+        generator.setInstances("AccessoryDesired", 3);
+        assertTrue(Arrays.equals(log, generate(generator, 60000)));
+    }
+
+    @Test
+    public void testUpdateRates() throws Exception {
+        OPLogGenerator generator = new OPLogGenerator(objManager, 2);
+        generator.setUpdatePeriod("AttitudeState", 10);
+        generator.setUpdatePeriod("GyroState", 0);
+        byte[] log = generate(generator, 10000);
+
+        long attitudeId = objManager.getObject("AttitudeState").getObjID();
+        long gyroId = objManager.getObject("GyroState").getObjID();
+        int attitude = 0;
+        int gyro = 0;
+        OPLogReader reader = OPLogReader.open(new ByteArrayInputStream(log));
+        while (reader.next()) {
+            long objId = reader.getPacket().getInt(reader.getPacket().position() + 4) & 0xffffffffL;
+            if (objId == attitudeId) attitude++;
+            if (objId == gyroId) gyro++;
+        }
+        reader.close();
+
+        assertTrue("AttitudeState updates: " + attitude, attitude > 900 && attitude <= 1000);
+        assertEquals(1, gyro);
+    }
+
+    @Test
+    public void testCorruptLogDecodes() throws Exception {
+        OPLogGenerator generator = new OPLogGenerator(objManager, 3);
+        generator.setCorruptionRate(OPLogGenerator.Corruption.BAD_CRC, 0.01);
+        generator.setCorruptionRate(OPLogGenerator.Corruption.TRUNCATED, 0.01);
+        generator.setCorruptionRate(OPLogGenerator.Corruption.GARBAGE, 0.01);
+        byte[] log = generate(generator, 120000);
+        assertTrue(generator.getCorruptCount() > 0);
+
+        OfflineDecoderTest.CountingSink sink = new OfflineDecoderTest.CountingSink();
+        UAVTalk.ComStats stats = decode(log, sink).getUAVTalk().getStats();
+        // A truncated record can take the following record with it
+        assertTrue(stats.rxObjects < generator.getRecordCount());
+        assertTrue(stats.rxObjects >= generator.getRecordCount() - 2 * generator.getCorruptCount());
+        assertTrue(stats.rxErrors > 0);
+    }
+}
@@ -0,0 +1,99 @@
+package org.openpilot_nonag.tools;
+
+import org.junit.Test;
+import org.openpilot_nonag.telemetry.OPTelemetryService;
+import org.openpilot_nonag.uavtalk.OPLogIndex;
+import org.openpilot_nonag.uavtalk.OPLogReader;
+import org.openpilot_nonag.uavtalk.ObjectUpdateEvent;
+import org.openpilot_nonag.uavtalk.RecordFilter;
+import org.openpilot_nonag.uavtalk.RecordSink;
+import org.openpilot_nonag.uavtalk.UAVTalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OfflineDecoderTest {
+
+    static final File SAMPLE_LOG = new File("sample-file/OP-2014-07-17_17-52-20-good.opl");
+
+    /**
+     * Counts the records instead of writing them
+     */
+    static class CountingSink implements RecordSink {
+        int count;
+        long lastSequence = -1;
+
+        @Override
+        public void write(ObjectUpdateEvent event) throws IOException {
+            assertEquals(lastSequence + 1, event.getSequence());
+            lastSequence = event.getSequence();
+            count++;
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    @Test
+    public void testDecodeSampleLog() throws Exception {
+        CountingSink sink = new CountingSink();
+        OfflineDecoder decoder = new OfflineDecoder("bed2641e417be160.jar", sink, true);
+
+        OPLogReader reader = OPLogReader.map(SAMPLE_LOG);
+        decoder.decode(reader);
+        reader.close();
+
+        UAVTalk.ComStats stats = decoder.getUAVTalk().getStats();
+        assertEquals(10470, stats.rxObjects);
+        assertTrue(sink.count > 10000);
+
+        // The log names the UAVO set it was decoded with
+        assertEquals("bed2641e417be160.jar",
+                OPTelemetryService.getUavoJarName(decoder.getObjectManager().getObject("FirmwareIAPObj")));
+    }
+
+    @Test
+    public void testDecodeIndexedWindow() throws Exception {
+        CountingSink sink = new CountingSink();
+        OfflineDecoder decoder = new OfflineDecoder("bed2641e417be160.jar", sink, false);
+        OPLogIndex index = OPLogIndex.build(SAMPLE_LOG, OPLogIndex.DEFAULT_BUCKET_MS);
+
+        long attitudeId = decoder.getObjectManager().getObject("AttitudeState").getObjID();
+        List<Long> ids = Collections.singletonList(attitudeId);
+        decoder.decode(index, Arrays.asList("AttitudeState"), 60000, 120000);
+
+        assertEquals(index.getOffsets(ids, 60000, 120000).length, sink.count);
+        assertTrue(sink.count > 500);
+        assertEquals(sink.count, decoder.getUAVTalk().getStats().rxObjects);
+    }
+
+    @Test
+    public void testDecodeFiltered() throws Exception {
+        CountingSink sink = new CountingSink();
+        OfflineDecoder decoder = new OfflineDecoder("bed2641e417be160.jar", sink, false);
+        List<String> none = Collections.emptyList();
+        decoder.setFilter(new RecordFilter(Arrays.asList("AttitudeState"), none, 60000, 120000));
+
+        OPLogReader reader = OPLogReader.map(SAMPLE_LOG);
+        decoder.decode(reader);
+        reader.close();
+
+        // Same records as the index finds, the rest never reach UAVTalk
+        long attitudeId = decoder.getObjectManager().getObject("AttitudeState").getObjID();
+        OPLogIndex index = OPLogIndex.build(SAMPLE_LOG, OPLogIndex.DEFAULT_BUCKET_MS);
+        int expected = index.getOffsets(Collections.singletonList(attitudeId), 60000, 120000).length;
+        assertEquals(expected, sink.count);
+        assertEquals(expected, decoder.getUAVTalk().getStats().rxObjects);
+        assertEquals(reader.getRecordCount() - expected, reader.getFilteredCount());
+    }
+}
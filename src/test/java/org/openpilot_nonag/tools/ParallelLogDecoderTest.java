@@ -0,0 +1,67 @@
+package org.openpilot_nonag.tools;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openpilot_nonag.uavtalk.CsvRecordSink;
+import org.openpilot_nonag.uavtalk.OPLogMappedReader;
+import org.openpilot_nonag.uavtalk.OPLogReader;
+import org.openpilot_nonag.uavtalk.RecordSink;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ParallelLogDecoderTest {
+
+    static final File SAMPLE_LOG = new File("sample-file/OP-2014-07-17_17-52-20-good.opl");
+    static final String UAVO = "bed2641e417be160.jar";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testChunkBoundaries() throws Exception {
+        long[] bounds = ParallelLogDecoder.findChunkBoundaries(SAMPLE_LOG, 4);
+        assertEquals(5, bounds.length);
+        assertEquals(0, bounds[0]);
+        assertEquals(SAMPLE_LOG.length(), bounds[4]);
+
+        // Every boundary starts a record and the chunks together hold them all
+        long records = 0;
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bounds[i] < bounds[i + 1]);
+            OPLogReader reader = new OPLogMappedReader(SAMPLE_LOG, bounds[i], bounds[i + 1]);
+            while (reader.next()) {
+                records++;
+            }
+            assertEquals(0, reader.getSkippedBytes());
+            reader.close();
+        }
+        assertEquals(10553, records);
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+        // Decoded the way a headless Logging.openFile() does, in one pass
+        // that switches UAVO set on the log's FirmwareIAPObj
+        File sequential = new File(tempFolder.getRoot(), "sequential.txt");
+        RecordSink sink = new CsvRecordSink(sequential);
+        OPLogReader reader = OPLogReader.map(SAMPLE_LOG);
+        new OfflineDecoder(UAVO, sink, true).decode(reader);
+        reader.close();
+        sink.close();
+        List<String> expected = FileUtils.readLines(sequential);
+        assertTrue(expected.size() > 10000);
+
+        for (int threads : new int[] { 1, 4 }) {
+            File parallel = new File(tempFolder.getRoot(), "parallel" + threads + ".txt");
+            new ParallelLogDecoder(SAMPLE_LOG, UAVO, threads).decode(parallel);
+            assertEquals("Decoded on " + threads + " threads", expected, FileUtils.readLines(parallel));
+        }
+        // The part files are cleaned up
+        assertEquals(3, tempFolder.getRoot().list().length);
+    }
+}
@@ -0,0 +1,143 @@
+package org.openpilot_nonag.tools;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openpilot_nonag.telemetry.OPTelemetryService;
+import org.openpilot_nonag.uavtalk.OPLogReader;
+import org.openpilot_nonag.uavtalk.UAVObjectManager;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReplayServerTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private ReplayServer server;
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null)
+            server.close();
+    }
+
+    /**
+     * Reads everything a client receives until the server disconnects it
+     */
+    static class Receiver extends Thread {
+        final Socket socket;
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        Receiver(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            setDaemon(true);
+            start();
+        }
+
+        @Override
+        public void run() {
+            byte[] buf = new byte[4096];
+            try {
+                InputStream in = socket.getInputStream();
+                int n;
+                while ((n = in.read(buf)) >= 0) {
+                    received.write(buf, 0, n);
+                }
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * The packets of the log back to back, as a live link would carry them
+     */
+    private static byte[] readPackets(File log) throws IOException {
+        ByteArrayOutputStream packets = new ByteArrayOutputStream();
+        OPLogReader reader = OPLogReader.map(log);
+        while (reader.next()) {
+            ByteBuffer packet = reader.getPacket();
+            byte[] bytes = new byte[packet.remaining()];
+            packet.get(bytes);
+            packets.write(bytes);
+        }
+        reader.close();
+        return packets.toByteArray();
+    }
+
+    @Test
+    public void testReplayToClients() throws Exception {
+        server = new ReplayServer(OfflineDecoderTest.SAMPLE_LOG, 0);
+        server.setSpeed(ReplayServer.AS_FAST_AS_POSSIBLE);
+        // Sent faster than the clients read, so nothing may be dropped
+        server.setSlowConsumerPolicy(TelemetryFanOut.SlowConsumerPolicy.BLOCK, TelemetryFanOut.DEFAULT_QUEUE_CAPACITY);
+        server.start();
+
+        Receiver first = new Receiver(server.getPort());
+        Receiver second = new Receiver(server.getPort());
+        assertTrue(server.awaitClients(2, 5000));
+        server.replay();
+        server.close();
+        first.join(5000);
+        second.join(5000);
+
+        byte[] expected = readPackets(OfflineDecoderTest.SAMPLE_LOG);
+        assertEquals(10553, server.getPacketsSent());
+        assertEquals(expected.length, server.getBytesSent());
+        assertTrue(Arrays.equals(expected, first.received.toByteArray()));
+        assertTrue(Arrays.equals(expected, second.received.toByteArray()));
+    }
+
+    @Test
+    public void testPacedReplay() throws Exception {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        new OPTelemetryService().loadUavobjects(OPLogGeneratorTest.UAVO_JAR, objManager);
+        File log = tempFolder.newFile("paced.opl");
+        OPLogGenerator generator = new OPLogGenerator(objManager, 1);
+        generator.setUpdatePeriod("AttitudeState", 10);
+        generator.generate(log, 2000, Long.MAX_VALUE);
+
+        long first = -1;
+        long last = 0;
+        OPLogReader reader = OPLogReader.map(log);
+        while (reader.next()) {
+            if (first < 0)
+                first = reader.getTimestamp();
+            last = reader.getTimestamp();
+        }
+        reader.close();
+
+        server = new ReplayServer(log, 0);
+        server.setSpeed(4);
+        server.start();
+        Receiver receiver = new Receiver(server.getPort());
+        assertTrue(server.awaitClients(1, 5000));
+
+        long start = System.nanoTime();
+        server.replay();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        server.close();
+        receiver.join(5000);
+
+        // Four times faster than recorded, without drifting late
+        long expectedMs = (last - first) / 4;
+        assertTrue("Replay took " + elapsedMs + " ms, expected " + expectedMs,
+                elapsedMs >= expectedMs && elapsedMs < expectedMs + 200);
+        assertTrue(server.getMaxLatenessNanos() < TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(generator.getRecordCount(), server.getPacketsSent());
+        assertEquals(server.getBytesSent(), receiver.received.size());
+    }
+}
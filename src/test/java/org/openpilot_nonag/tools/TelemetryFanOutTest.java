@@ -0,0 +1,207 @@
+package org.openpilot_nonag.tools;
+
+import org.junit.Test;
+import org.openpilot_nonag.uavtalk.UAVObject;
+import org.openpilot_nonag.uavtalk.UAVObjectManager;
+import org.openpilot_nonag.uavtalk.UAVTalk;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class TelemetryFanOutTest {
+
+    static final int CAPACITY = 8;
+
+    /**
+     * Collects what is written, holding every write until opened
+     */
+    static class Consumer extends ByteArrayOutputStream implements Closeable {
+        final CountDownLatch gate = new CountDownLatch(1);
+        volatile boolean closed;
+
+        Consumer(boolean open) {
+            if (open)
+                gate.countDown();
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static ByteBuffer packet(int i) {
+        return ByteBuffer.wrap(new byte[] { (byte) i, (byte) (i >> 8) });
+    }
+
+    private static byte[] packets(int from, int to) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = from; i < to; i++) {
+            out.write(i);
+            out.write(i >> 8);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Publish the packets, letting the fast client keep up
+     */
+    private static void publish(TelemetryFanOut fanOut, TelemetryFanOut.Client fast, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            fanOut.publish(packet(i));
+            while (fast.getPacketsWritten() <= i) {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        TelemetryFanOut fanOut = new TelemetryFanOut(CAPACITY, TelemetryFanOut.SlowConsumerPolicy.DROP_OLDEST);
+        Consumer fast = new Consumer(true);
+        Consumer slow = new Consumer(false);
+        TelemetryFanOut.Client fastClient = fanOut.addClient("fast", fast, fast);
+        TelemetryFanOut.Client slowClient = fanOut.addClient("slow", slow, slow);
+
+        publish(fanOut, fastClient, 100);
+        assertTrue(slowClient.getDroppedCount() > 0);
+        slow.gate.countDown();
+        fanOut.close();
+
+        assertTrue(Arrays.equals(packets(0, 100), fast.toByteArray()));
+        // The slow client got the packets it had taken before falling
+        // behind and then the latest ones
+        byte[] received = slow.toByteArray();
+        assertEquals(100 - slowClient.getDroppedCount(), received.length / 2);
+        byte[] latest = packets(100 - CAPACITY, 100);
+        assertTrue(Arrays.equals(latest, Arrays.copyOfRange(received, received.length - latest.length, received.length)));
+        assertTrue(fast.closed && slow.closed);
+        assertEquals(0, fanOut.getClientCount());
+    }
+
+    @Test
+    public void testDisconnect() throws Exception {
+        TelemetryFanOut fanOut = new TelemetryFanOut(CAPACITY, TelemetryFanOut.SlowConsumerPolicy.DISCONNECT);
+        Consumer fast = new Consumer(true);
+        Consumer slow = new Consumer(false);
+        TelemetryFanOut.Client fastClient = fanOut.addClient("fast", fast, fast);
+        TelemetryFanOut.Client slowClient = fanOut.addClient("slow", slow, slow);
+
+        publish(fanOut, fastClient, 100);
+        assertTrue(slowClient.isClosed());
+        assertTrue(slow.closed);
+        assertEquals(1, fanOut.getClientCount());
+        slow.gate.countDown();
+        fanOut.close();
+
+        assertTrue(Arrays.equals(packets(0, 100), fast.toByteArray()));
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        final TelemetryFanOut fanOut = new TelemetryFanOut(CAPACITY, TelemetryFanOut.SlowConsumerPolicy.BLOCK);
+        Consumer slow = new Consumer(false);
+        fanOut.addClient("slow", slow, slow);
+
+        Thread publisher = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 100; i++) {
+                        fanOut.publish(packet(i));
+                    }
+                } catch (IOException e) {
+                }
+            }
+        };
+        publisher.start();
+        publisher.join(500);
+        // Held up by the slow client
+        assertTrue(publisher.isAlive());
+        assertTrue(fanOut.getPacketsPublished() < 100);
+
+        slow.gate.countDown();
+        publisher.join(5000);
+        assertFalse(publisher.isAlive());
+        fanOut.close();
+        assertTrue(Arrays.equals(packets(0, 100), slow.toByteArray()));
+    }
+
+    @Test
+    public void testPublishObject() throws Exception {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        UAVObject obj = objManager.getObject("GCSTelemetryStats");
+
+        TelemetryFanOut fanOut = new TelemetryFanOut(CAPACITY, TelemetryFanOut.SlowConsumerPolicy.BLOCK);
+        Consumer first = new Consumer(true);
+        Consumer second = new Consumer(true);
+        fanOut.addClient("first", first, first);
+        fanOut.addClient("second", second, second);
+        assertTrue(fanOut.publish(obj));
+        fanOut.close();
+
+        ByteBuffer expected = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        int length = UAVTalk.framePacket(expected, obj);
+        assertTrue(Arrays.equals(Arrays.copyOf(expected.array(), length), first.toByteArray()));
+        assertTrue(Arrays.equals(first.toByteArray(), second.toByteArray()));
+    }
+
+    @Test
+    public void testPublishAfterClose() throws Exception {
+        TelemetryFanOut fanOut = new TelemetryFanOut(CAPACITY, TelemetryFanOut.SlowConsumerPolicy.DROP_OLDEST);
+        Consumer consumer = new Consumer(true);
+        fanOut.addClient("client", consumer, consumer);
+        fanOut.publish(packet(0));
+        fanOut.close();
+        try {
+            fanOut.publish(packet(1));
+            fail("Published after close");
+        } catch (IOException e) {
+        }
+        assertTrue(Arrays.equals(packets(0, 1), consumer.toByteArray()));
+    }
+
+    @Test
+    public void testCloseSharesDeadline() throws Exception {
+        TelemetryFanOut fanOut = new TelemetryFanOut(CAPACITY, TelemetryFanOut.SlowConsumerPolicy.DROP_OLDEST);
+        Consumer[] stuck = new Consumer[3];
+        for (int i = 0; i < stuck.length; i++) {
+            stuck[i] = new Consumer(false);
+            fanOut.addClient("stuck " + i, stuck[i], stuck[i]);
+        }
+        for (int i = 0; i < 100; i++) {
+            fanOut.publish(packet(i));
+        }
+
+        // Clients that never take what is queued are all given up on at
+        // the one deadline, not one after the other
+        long start = System.currentTimeMillis();
+        fanOut.close();
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed < 2 * TelemetryFanOut.CLOSE_TIMEOUT_MS);
+        for (Consumer consumer : stuck) {
+            assertTrue(consumer.closed);
+        }
+        assertEquals(0, fanOut.getClientCount());
+    }
+}
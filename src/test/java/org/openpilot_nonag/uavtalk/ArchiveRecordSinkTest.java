@@ -0,0 +1,91 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class ArchiveRecordSinkTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        UAVObject flightStats = objManager.getObject("FlightTelemetryStats");
+        UAVObject gcsStats = objManager.getObject("GCSTelemetryStats");
+
+        // Enough updates for a full block and a partial one
+        int updates = ArchiveRecordSink.BLOCK_ROWS + 10;
+        File file = tempFolder.newFile("flight.opa");
+        ArchiveRecordSink sink = new ArchiveRecordSink(file);
+        ByteBuffer data = ByteBuffer.allocate(flightStats.getNumBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < updates; i++) {
+            data.clear();
+            data.putFloat(i * 0.5f).putInt(i);
+            data.position(data.limit() - 1);
+            data.put((byte) (i % 4));
+            data.flip();
+            flightStats.unpack(data);
+            sink.write(new ObjectUpdateEvent(flightStats, 1000 + i, i));
+        }
+        sink.write(new ObjectUpdateEvent(gcsStats, 5000, updates));
+        sink.close();
+
+        ArchiveReader reader = new ArchiveReader(file);
+        assertEquals(2, reader.getTypes().size());
+        assertEquals(1, reader.getType("GCSTelemetryStats").getRowCount());
+
+        ArchiveReader.Type type = reader.getType("FlightTelemetryStats");
+        assertEquals(flightStats.getObjID(), type.getObjID());
+        assertEquals(updates, type.getRowCount());
+        assertEquals(2, type.getBlocks().size());
+        assertEquals("timestamp", type.getColumns().get(0).getName());
+        assertEquals("instance", type.getColumns().get(1).getName());
+
+        int timestamp = type.getColumnIndex("timestamp");
+        int txDataRate = type.getColumnIndex("TxDataRate");
+        int txBytes = type.getColumnIndex("TxBytes");
+        int status = type.getColumnIndex("Status");
+        assertEquals(UAVObjectField.FieldType.ENUM, type.getColumns().get(status).getType());
+
+        int row = 0;
+        for (ArchiveReader.Block block : type.getBlocks()) {
+            ByteBuffer times = reader.getColumn(type, block, timestamp);
+            ByteBuffer rates = reader.getColumn(type, block, txDataRate);
+            ByteBuffer bytes = reader.getColumn(type, block, txBytes);
+            ByteBuffer states = reader.getColumn(type, block, status);
+            for (int i = 0; i < block.getRows(); i++, row++) {
+                assertEquals(1000 + row, times.getInt(i * 4));
+                assertEquals(row * 0.5f, rates.getFloat(i * 4), 0);
+                assertEquals(row, type.getColumns().get(txBytes).getDouble(bytes, i), 0);
+                assertEquals(row % 4, states.get(i));
+            }
+        }
+
+        ArchiveReader.Block last = type.getBlocks().get(1);
+        assertTrue(last.hasStatistics());
+        assertEquals(1000 + ArchiveRecordSink.BLOCK_ROWS, last.getMin(timestamp), 0);
+        assertEquals(1000 + updates - 1, last.getMax(timestamp), 0);
+        assertEquals(0, last.getMin(status), 0);
+        assertEquals(3, last.getMax(status), 0);
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAnArchive() throws Exception {
+        File file = tempFolder.newFile("garbage.opa");
+        FileUtils.writeStringToFile(file, "this is not an archive, just some text");
+        new ArchiveReader(file);
+    }
+}
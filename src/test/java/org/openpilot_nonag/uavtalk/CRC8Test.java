@@ -0,0 +1,69 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CRC8Test {
+
+    /**
+     * Reference bit at a time CRC-8, polynomial 0x07
+     */
+    private static int bitwise(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= data[i] & 0xff;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xff : (crc << 1) & 0xff;
+            }
+        }
+        return crc;
+    }
+
+    @Test
+    public void testCheckValue() {
+        byte[] check = "123456789".getBytes();
+        assertEquals(0xf4, CRC8.compute(check, 0, check.length));
+        assertEquals(0xf4, bitwise(check, 0, check.length));
+    }
+
+    @Test
+    public void testSlicingMatchesBytewise() {
+        Random random = new Random(42);
+        byte[] data = new byte[300];
+        random.nextBytes(data);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data);
+        ByteBuffer heap = ByteBuffer.wrap(data);
+
+        for (int offset = 0; offset < 9; offset++) {
+            for (int length = 0; length + offset <= data.length; length += 7) {
+                int expected = bitwise(data, offset, length);
+                assertEquals(expected, CRC8.compute(data, offset, length));
+                assertEquals(expected, CRC8.compute(heap, offset, length));
+                direct.order(ByteOrder.LITTLE_ENDIAN);
+                assertEquals(expected, CRC8.compute(direct, offset, length));
+                direct.order(ByteOrder.BIG_ENDIAN);
+                assertEquals(expected, CRC8.compute(direct, offset, length));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdate() {
+        byte[] data = new byte[100];
+        new Random(7).nextBytes(data);
+
+        int crc = 0;
+        for (byte b : data) {
+            crc = CRC8.update(crc, b);
+        }
+        assertEquals(crc, CRC8.update(CRC8.compute(data, 0, 40), data, 40, 60));
+        assertEquals(bitwise(data, 0, data.length), crc);
+    }
+}
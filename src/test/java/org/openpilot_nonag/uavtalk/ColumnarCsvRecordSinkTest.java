@@ -0,0 +1,55 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ColumnarCsvRecordSinkTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testFilePerType() throws Exception {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        UAVObject flightStats = objManager.getObject("FlightTelemetryStats");
+        UAVObject gcsStats = objManager.getObject("GCSTelemetryStats");
+
+        // TxDataRate 1.5, TxBytes 4294967295, the other counters 0 and
+        // Status Connected
+        ByteBuffer data = ByteBuffer.allocate(flightStats.getNumBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        data.putFloat(1.5f).putInt(-1);
+        data.position(data.limit() - 1);
+        data.put((byte) 3);
+        data.flip();
+        flightStats.unpack(data);
+
+        File dir = new File(tempFolder.getRoot(), "flight");
+        ColumnarCsvRecordSink sink = new ColumnarCsvRecordSink(dir);
+        sink.write(new ObjectUpdateEvent(flightStats, 10, 0));
+        sink.write(new ObjectUpdateEvent(gcsStats, 15, 1));
+        sink.write(new ObjectUpdateEvent(flightStats, 20, 2));
+        sink.close();
+
+        assertEquals(2, dir.list().length);
+
+        List<String> lines = FileUtils.readLines(new File(dir, "FlightTelemetryStats.csv"));
+        assertEquals(3, lines.size());
+        assertEquals("timestamp,instance,TxDataRate,TxBytes,TxFailures,TxRetries,RxDataRate,RxBytes,"
+                + "RxFailures,RxSyncErrors,RxCrcErrors,Status", lines.get(0));
+        assertEquals("10,0,1.5,4294967295,0,0,0.0,0,0,0,0,3", lines.get(1));
+        assertTrue(lines.get(2).startsWith("20,0,"));
+
+        assertEquals(2, FileUtils.readLines(new File(dir, "GCSTelemetryStats.csv")).size());
+    }
+}
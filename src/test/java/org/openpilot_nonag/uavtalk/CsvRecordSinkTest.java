@@ -0,0 +1,48 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CsvRecordSinkTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteLines() throws Exception {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        UAVObject obj = objManager.getObject("FlightTelemetryStats");
+
+        File file = new File(tempFolder.getRoot(), "out/data.txt");
+        // A buffer smaller than a line so every write spills
+        CsvRecordSink sink = new CsvRecordSink(file, 0, 64);
+        for (int i = 0; i < 3; i++) {
+            sink.write(new ObjectUpdateEvent(obj, 100 + i, i));
+        }
+        sink.close();
+
+        String data = obj.toStringData().replace("\n", ",");
+        List<String> lines = FileUtils.readLines(file);
+        assertEquals(3, lines.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + "," + (100 + i) + "," + obj.getObjID() + "," + obj.getName() + ","
+                    + obj.getDescription() + "," + data, lines.get(i));
+        }
+    }
+
+    @Test
+    public void testNoFileWithoutRecords() throws Exception {
+        File file = new File(tempFolder.getRoot(), "empty.txt");
+        new CsvRecordSink(file).close();
+        assertFalse(file.exists());
+    }
+}
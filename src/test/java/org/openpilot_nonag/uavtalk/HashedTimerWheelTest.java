@@ -0,0 +1,152 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HashedTimerWheelTest {
+
+    private HashedTimerWheel wheel;
+
+    @Before
+    public void setUp() {
+        // A small wheel so the delays below span several rounds
+        wheel = new HashedTimerWheel(1, TimeUnit.MILLISECONDS, 8, "Test wheel");
+    }
+
+    @After
+    public void tearDown() {
+        wheel.close();
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        final CountDownLatch fired = new CountDownLatch(1);
+        final long[] firedAt = new long[1];
+        long start = System.nanoTime();
+        HashedTimerWheel.Timeout timeout = wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                firedAt[0] = System.nanoTime();
+                fired.countDown();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(firedAt[0] - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final AtomicInteger fired = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                fired.incrementAndGet();
+            }
+        };
+        List<HashedTimerWheel.Timeout> timeouts = new ArrayList<HashedTimerWheel.Timeout>();
+        for (int i = 0; i < 10000; i++) {
+            timeouts.add(wheel.schedule(task, 500 + i % 50, TimeUnit.MILLISECONDS));
+        }
+        for (HashedTimerWheel.Timeout timeout : timeouts) {
+            assertTrue(timeout.cancel());
+            assertTrue(timeout.isCancelled());
+        }
+
+        // A timeout scheduled after them fires once they would all have
+        final CountDownLatch last = new CountDownLatch(1);
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                last.countDown();
+            }
+        }, 600, TimeUnit.MILLISECONDS);
+        assertTrue(last.await(5, TimeUnit.SECONDS));
+        assertEquals(0, fired.get());
+    }
+
+    @Test
+    public void testCancelFixedRateWhileDue() throws Exception {
+        final CountDownLatch blocking = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger fired = new AtomicInteger();
+        // Both due at the same tick, in the same bucket, the first holds
+        // the slowWheel while the second is cancelled
+        HashedTimerWheel slowWheel = new HashedTimerWheel(100, TimeUnit.MILLISECONDS, 8, "Slow slowWheel");
+        try {
+            slowWheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    blocking.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }, 150, TimeUnit.MILLISECONDS);
+            final HashedTimerWheel.Timeout timeout = slowWheel.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    fired.incrementAndGet();
+                }
+            }, 150, 100, TimeUnit.MILLISECONDS);
+
+            assertTrue(blocking.await(5, TimeUnit.SECONDS));
+            final boolean[] cancelled = new boolean[1];
+            Thread canceller = new Thread() {
+                @Override
+                public void run() {
+                    cancelled[0] = timeout.cancel();
+                }
+            };
+            canceller.start();
+            canceller.join();
+            release.countDown();
+
+            // Let the slowWheel turn past the period
+            final CountDownLatch later = new CountDownLatch(1);
+            slowWheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    later.countDown();
+                }
+            }, 250, TimeUnit.MILLISECONDS);
+            assertTrue(later.await(5, TimeUnit.SECONDS));
+            assertTrue(cancelled[0]);
+            assertEquals(0, fired.get());
+        } finally {
+            slowWheel.close();
+        }
+    }
+
+    @Test
+    public void testFixedRate() throws Exception {
+        final AtomicInteger fired = new AtomicInteger();
+        final CountDownLatch runs = new CountDownLatch(5);
+        HashedTimerWheel.Timeout timeout = wheel.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                fired.incrementAndGet();
+                runs.countDown();
+            }
+        }, 0, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(runs.await(5, TimeUnit.SECONDS));
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.isExpired());
+        int count = fired.get();
+        Thread.sleep(100);
+        assertEquals(count, fired.get());
+    }
+}
@@ -0,0 +1,138 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+
+import static org.junit.Assert.*;
+
+public class ListenerListTest {
+
+    private UAVObject obj;
+    private final List<String> calls = new ArrayList<String>();
+
+    private UAVObjectListener recorder(final String name) {
+        return new UAVObjectListener() {
+            @Override
+            public void objectEvent(UAVObject o, UAVObject.Event event, boolean success) {
+                assertSame(obj, o);
+                calls.add(name + ":" + event + ":" + success);
+            }
+        };
+    }
+
+    @Before
+    public void setUp() {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        obj = objManager.getObject("FirmwareIAPObj");
+    }
+
+    @Test
+    public void testAddRemove() {
+        UAVObjectListener a = recorder("a");
+        UAVObjectListener b = recorder("b");
+        obj.addListener(UAVObject.Event.UPDATED, a);
+        obj.addListener(UAVObject.Event.UPDATED, b);
+        obj.addListener(UAVObject.Event.UPDATED, a);
+        assertEquals(2, obj.getListenerCount(UAVObject.Event.UPDATED));
+
+        // Updated by the autopilot, so no UPDATED_MANUAL
+        obj.updated(false);
+        assertEquals("[a:UPDATED:true, b:UPDATED:true]", calls.toString());
+
+        calls.clear();
+        obj.removeListener(UAVObject.Event.UPDATED, a);
+        obj.addListener(UAVObject.Event.UPDATED_MANUAL, a);
+        obj.updated();
+        assertEquals("[b:UPDATED:true, a:UPDATED_MANUAL:true]", calls.toString());
+
+        calls.clear();
+        obj.addListener(UAVObject.Event.TRANSACTION_COMPLETED, b);
+        obj.transactionCompleted(false);
+        obj.unpacked();
+        assertEquals("[b:TRANSACTION_COMPLETED:false]", calls.toString());
+    }
+
+    @Test
+    public void testRemoveWhileNotifying() {
+        final UAVObjectListener b = recorder("b");
+        UAVObjectListener once = new UAVObjectListener() {
+            @Override
+            public void objectEvent(UAVObject o, UAVObject.Event event, boolean success) {
+                calls.add("once");
+                o.removeListener(event, this);
+                o.removeListener(event, b);
+            }
+        };
+        obj.addListener(UAVObject.Event.UNPACKED, once);
+        obj.addListener(UAVObject.Event.UNPACKED, b);
+
+        // The notification in progress still reaches b
+        obj.unpacked();
+        obj.unpacked();
+        assertEquals("[once, b:UNPACKED:true]", calls.toString());
+        assertEquals(0, obj.getListenerCount(UAVObject.Event.UNPACKED));
+    }
+
+    @Test
+    public void testObserverAdapter() {
+        final List<Object> data = new ArrayList<Object>();
+        Observer observer = new Observer() {
+            @Override
+            public void update(Observable observable, Object arg) {
+                data.add(arg);
+            }
+        };
+        obj.addUpdatedObserver(observer);
+        obj.addTransactionCompleted(observer);
+        obj.updated(false);
+        obj.transactionCompleted(true);
+
+        assertEquals(2, data.size());
+        assertSame(obj, data.get(0));
+        UAVObject.TransactionResult result = (UAVObject.TransactionResult) data.get(1);
+        assertSame(obj, result.obj);
+        assertTrue(result.success);
+
+        obj.removeUpdatedObserver(observer);
+        obj.removeTransactionCompleted(observer);
+        assertEquals(0, obj.getListenerCount(UAVObject.Event.UPDATED));
+        assertEquals(0, obj.getListenerCount(UAVObject.Event.TRANSACTION_COMPLETED));
+    }
+
+    @Test
+    public void testObserverRemovesItself() {
+        final List<Observable> observables = new ArrayList<Observable>();
+        Observer once = new Observer() {
+            @Override
+            public void update(Observable observable, Object arg) {
+                observables.add(observable);
+                // As the Observers of the original Observable API did
+                observable.deleteObserver(this);
+            }
+        };
+        obj.addUnpackedObserver(once);
+        obj.addUpdatedObserver(once);
+        obj.unpacked();
+        obj.unpacked();
+
+        assertEquals(1, observables.size());
+        assertNotNull(observables.get(0));
+        assertEquals(0, observables.get(0).countObservers());
+        assertEquals(0, obj.getListenerCount(UAVObject.Event.UNPACKED));
+        // Only removed from the event it was notified of
+        assertEquals(1, obj.getListenerCount(UAVObject.Event.UPDATED));
+
+        // The same Observable adds and counts the event's Observers
+        observables.get(0).addObserver(once);
+        assertEquals(1, observables.get(0).countObservers());
+        observables.get(0).deleteObservers();
+        assertEquals(0, obj.getListenerCount(UAVObject.Event.UNPACKED));
+    }
+}
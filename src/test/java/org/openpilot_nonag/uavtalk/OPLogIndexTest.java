@@ -0,0 +1,101 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OPLogIndexTest {
+
+    //! AttitudeState
+    static final long ATTITUDE_ID = 0xd7e0d964L;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File logFile;
+
+    @Before
+    public void setUp() throws Exception {
+        logFile = tempFolder.newFile("flight.opl");
+        FileUtils.copyFile(new File(OPLogReaderTest.SAMPLE_LOG), logFile);
+    }
+
+    private static long getObjId(ByteBuffer packet) {
+        int start = packet.position();
+        return (packet.get(start + 4) & 0xffL) | ((packet.get(start + 5) & 0xffL) << 8)
+                | ((packet.get(start + 6) & 0xffL) << 16) | ((packet.get(start + 7) & 0xffL) << 24);
+    }
+
+    /**
+     * Offsets of the records of objId logged in [fromMs, toMs), by reading the whole log
+     */
+    private List<Long> scan(long objId, long fromMs, long toMs) throws Exception {
+        List<Long> offsets = new ArrayList<Long>();
+        OPLogReader reader = OPLogReader.map(logFile);
+        while (reader.next()) {
+            if ((objId < 0 || getObjId(reader.getPacket()) == objId)
+                    && reader.getTimestamp() >= fromMs && reader.getTimestamp() < toMs)
+                offsets.add(reader.getRecordOffset());
+        }
+        reader.close();
+        return offsets;
+    }
+
+    private static List<Long> readOffsets(OPLogReader reader) throws Exception {
+        List<Long> offsets = new ArrayList<Long>();
+        while (reader.next()) {
+            offsets.add(reader.getRecordOffset());
+        }
+        reader.close();
+        return offsets;
+    }
+
+    @Test
+    public void testQueryWindow() throws Exception {
+        OPLogIndex index = OPLogIndex.build(logFile, OPLogIndex.DEFAULT_BUCKET_MS);
+
+        int records = 0;
+        for (long objId : index.getObjectIds()) {
+            records += index.getRecordCount(objId);
+        }
+        assertEquals(10553, records);
+
+        List<Long> expected = scan(ATTITUDE_ID, 60000, 120000);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, readOffsets(index.open(Collections.singletonList(ATTITUDE_ID), 60000, 120000)));
+
+        // Every object in the window, starting on a checkpoint
+        List<Long> window = readOffsets(index.open(60000, 120000));
+        assertTrue(window.containsAll(scan(-1, 60000, 120000)));
+        assertTrue(window.size() < records / 2);
+    }
+
+    @Test
+    public void testSidecar() throws Exception {
+        File indexFile = OPLogIndex.getIndexFile(logFile);
+        OPLogIndex built = OPLogIndex.open(logFile);
+        assertTrue(indexFile.exists());
+
+        OPLogIndex read = OPLogIndex.open(logFile);
+        assertEquals(built.getObjectIds(), read.getObjectIds());
+        List<Long> ids = built.getObjectIds();
+        assertTrue(Arrays.equals(built.getOffsets(ids, 0, Long.MAX_VALUE), read.getOffsets(ids, 0, Long.MAX_VALUE)));
+        assertEquals(built.getCheckpointOffset(123456), read.getCheckpointOffset(123456));
+
+        // Appending to the log makes the index stale
+        FileUtils.writeByteArrayToFile(logFile, new byte[] { 0 }, true);
+        assertFalse(read.isCurrent());
+        assertTrue(OPLogIndex.open(logFile).isCurrent());
+    }
+}
@@ -0,0 +1,99 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class OPLogReaderTest {
+
+    static final String SAMPLE_LOG = "sample-file/OP-2014-07-17_17-52-20-good.opl";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadSampleLog() throws Exception {
+        checkSampleLog(OPLogReader.open(new BufferedInputStream(new FileInputStream(SAMPLE_LOG))));
+    }
+
+    @Test
+    public void testMapSampleLog() throws Exception {
+        checkSampleLog(OPLogReader.map(new File(SAMPLE_LOG)));
+    }
+
+    private void checkSampleLog(OPLogReader reader) throws Exception {
+        long lastTimestamp = 0;
+        while (reader.next()) {
+            ByteBuffer packet = reader.getPacket();
+            assertEquals(UAVTalk.SYNC_VAL, packet.get(packet.position()) & 0xff);
+            assertTrue(reader.getTimestamp() >= lastTimestamp);
+            lastTimestamp = reader.getTimestamp();
+        }
+        reader.close();
+
+        assertEquals(10553, reader.getRecordCount());
+        assertEquals(0, reader.getSkippedBytes());
+        assertEquals(747463, lastTimestamp);
+    }
+
+    @Test
+    public void testResynchronizeAfterGarbage() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeRecord(out, 10, 0x1234L);
+        out.write(new byte[] { 0x3c, 0x20, 0x00, 0x7f, 0x05 });
+        writeRecord(out, 20, 0x5678L);
+        // Truncated record at the end of the log
+        byte[] last = record(30, 0x9abcL);
+        out.write(last, 0, last.length - 3);
+
+        checkResynchronize(OPLogReader.open(new ByteArrayInputStream(out.toByteArray())), last.length);
+
+        File logFile = tempFolder.newFile("garbage.opl");
+        FileUtils.writeByteArrayToFile(logFile, out.toByteArray());
+        checkResynchronize(OPLogReader.map(logFile), last.length);
+    }
+
+    private void checkResynchronize(OPLogReader reader, int lastLength) throws Exception {
+        assertTrue(reader.next());
+        assertEquals(10, reader.getTimestamp());
+        assertTrue(reader.next());
+        assertEquals(20, reader.getTimestamp());
+        assertEquals(OPLogReader.RECORD_HEADER_LENGTH + 11 + 5, reader.getRecordOffset());
+        assertFalse(reader.next());
+        assertEquals(2, reader.getRecordCount());
+        assertEquals(5 + lastLength - 3, reader.getSkippedBytes());
+        reader.close();
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, int timestamp, long objId) throws Exception {
+        out.write(record(timestamp, objId));
+    }
+
+    /**
+     * A record holding an object request packet (no payload)
+     */
+    private static byte[] record(int timestamp, long objId) {
+        ByteBuffer buf = ByteBuffer.allocate(OPLogReader.RECORD_HEADER_LENGTH + UAVTalk.HEADER_LENGTH + 1);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(timestamp);
+        buf.putLong(UAVTalk.HEADER_LENGTH + 1);
+        buf.put((byte) UAVTalk.SYNC_VAL);
+        buf.put((byte) UAVTalk.TYPE_OBJ_REQ);
+        buf.putShort((short) UAVTalk.HEADER_LENGTH);
+        buf.putInt((int) objId);
+        buf.putShort((short) 0);
+        buf.put((byte) 0);
+        return buf.array();
+    }
+}
@@ -0,0 +1,85 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.junit.Test;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecordFilterTest {
+
+    //! AttitudeState
+    static final long ATTITUDE_ID = 0xd7e0d964L;
+
+    private static long getObjId(ByteBuffer packet) {
+        int start = packet.position();
+        return (packet.get(start + 4) & 0xffL) | ((packet.get(start + 5) & 0xffL) << 8)
+                | ((packet.get(start + 6) & 0xffL) << 16) | ((packet.get(start + 7) & 0xffL) << 24);
+    }
+
+    @Test
+    public void testIncludeInWindow() throws Exception {
+        List<String> none = Collections.emptyList();
+        RecordFilter filter = new RecordFilter(Arrays.asList("0xD7E0D964"), none, 60000, 120000)
+                .bind(new UAVObjectManager());
+
+        int expected = 0;
+        OPLogReader reader = OPLogReader.map(new File(OPLogReaderTest.SAMPLE_LOG));
+        while (reader.next()) {
+            if (getObjId(reader.getPacket()) == ATTITUDE_ID
+                    && reader.getTimestamp() >= 60000 && reader.getTimestamp() < 120000)
+                expected++;
+        }
+        reader.close();
+        assertTrue(expected > 500);
+
+        int count = 0;
+        reader = OPLogReader.map(new File(OPLogReaderTest.SAMPLE_LOG));
+        reader.setFilter(filter);
+        while (reader.next()) {
+            assertEquals(ATTITUDE_ID, getObjId(reader.getPacket()));
+            assertTrue(reader.getTimestamp() >= 60000 && reader.getTimestamp() < 120000);
+            count++;
+        }
+        reader.close();
+
+        assertEquals(expected, count);
+        assertEquals(10553, reader.getRecordCount());
+        assertEquals(10553 - count, reader.getFilteredCount());
+    }
+
+    @Test
+    public void testExcludeByName() throws Exception {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        long firmwareIapId = objManager.getObject("FirmwareIAPObj").getObjID();
+
+        List<String> none = Collections.emptyList();
+        RecordFilter filter = new RecordFilter(none, Arrays.asList("FirmwareIAPObj", "NoSuchObject"), 0, Long.MAX_VALUE)
+                .bind(objManager);
+
+        OPLogReader reader = OPLogReader.map(new File(OPLogReaderTest.SAMPLE_LOG));
+        reader.setFilter(filter);
+        int count = 0;
+        while (reader.next()) {
+            assertNotEquals(firmwareIapId, getObjId(reader.getPacket()));
+            count++;
+        }
+        reader.close();
+
+        assertTrue(reader.getFilteredCount() > 0);
+        assertEquals(10553, count + reader.getFilteredCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnboundFilter() throws Exception {
+        List<String> none = Collections.emptyList();
+        RecordFilter filter = new RecordFilter(Arrays.asList("AttitudeState"), none, 0, Long.MAX_VALUE);
+        filter.accept(0, ByteBuffer.allocate(16));
+    }
+}
@@ -0,0 +1,135 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TelemetryExecutorsTest {
+
+    static final int LINKS = 50;
+
+    static final int BLOCKED = 5;
+
+    @After
+    public void tearDown() {
+        TelemetryExecutors.setMode(TelemetryExecutors.Mode.PLATFORM);
+    }
+
+    private static Thread runThread() throws InterruptedException {
+        final Thread[] ran = new Thread[1];
+        Thread thread = TelemetryExecutors.newThread("Test", new Runnable() {
+            @Override
+            public void run() {
+                ran[0] = Thread.currentThread();
+            }
+        });
+        thread.start();
+        thread.join(5000);
+        assertSame(thread, ran[0]);
+        assertTrue(thread.isDaemon());
+        return thread;
+    }
+
+    @Test
+    public void testNewThread() throws Exception {
+        assertFalse(TelemetryExecutors.isVirtual(runThread()));
+
+        // Falls back to a platform thread before Java 21
+        TelemetryExecutors.setMode(TelemetryExecutors.Mode.VIRTUAL);
+        assertEquals(TelemetryExecutors.isVirtualThreadSupported(), TelemetryExecutors.isVirtual(runThread()));
+    }
+
+    @Test
+    public void testOverlappingRunsSkipped() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch runs = new CountDownLatch(3);
+        HashedTimerWheel.Timeout task = TelemetryExecutors.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()));
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                }
+                running.decrementAndGet();
+                runs.countDown();
+            }
+        }, 0, 5, TimeUnit.MILLISECONDS);
+        assertTrue(runs.await(5, TimeUnit.SECONDS));
+        task.cancel();
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void testBlockedTasksDoNotStopOthers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(BLOCKED);
+        Runnable blockedSend = new Runnable() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    // As a send to a peer that stopped reading
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        try {
+            for (int i = 0; i < BLOCKED; i++) {
+                TelemetryExecutors.schedule(blockedSend, 0, TimeUnit.MILLISECONDS);
+            }
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+            final CountDownLatch ran = new CountDownLatch(1);
+            TelemetryExecutors.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    ran.countDown();
+                }
+            }, 0, TimeUnit.MILLISECONDS);
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testLinksShareScheduler() throws Exception {
+        OutputStream discard = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        };
+        TelemetryExecutors.getTimerWheel();
+        int threadsBefore = Thread.activeCount();
+
+        List<Telemetry> telemetry = new ArrayList<Telemetry>();
+        List<TelemetryMonitor> monitors = new ArrayList<TelemetryMonitor>();
+        for (int i = 0; i < LINKS; i++) {
+            UAVObjectManager objManager = new UAVObjectManager();
+            TelemObjectsInitialize.register(objManager);
+            Telemetry tel = new Telemetry(new UAVTalk(null, discard, objManager), objManager);
+            telemetry.add(tel);
+            monitors.add(new TelemetryMonitor(objManager, tel));
+        }
+
+        // Only a few timer threads, not a Timer per Telemetry and monitor
+        assertTrue(Thread.activeCount() - threadsBefore < LINKS / 5);
+
+        for (int i = 0; i < LINKS; i++) {
+            monitors.get(i).stopMonitor();
+            telemetry.get(i).stopTelemetry();
+        }
+    }
+}
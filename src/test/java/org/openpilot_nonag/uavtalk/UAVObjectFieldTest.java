@@ -0,0 +1,77 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class UAVObjectFieldTest {
+
+    private static ByteBuffer buffer(int... bytes) {
+        ByteBuffer buf = ByteBuffer.allocate(bytes.length);
+        for (int b : bytes) {
+            buf.put((byte) b);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    @Test
+    public void testUnsignedValues() throws Exception {
+        UAVObjectField u8 = new UAVObjectField("u8", "", UAVObjectField.FieldType.UINT8, 2, null);
+        u8.unpack(buffer(0xff, 0x01));
+        assertEquals(255, u8.getValue(0));
+        assertEquals(1, u8.getInt(1));
+
+        UAVObjectField u16 = new UAVObjectField("u16", "", UAVObjectField.FieldType.UINT16, 1, null);
+        u16.unpack(buffer(0xfe, 0xff));
+        assertEquals(65534, u16.getValue());
+
+        UAVObjectField u32 = new UAVObjectField("u32", "ms", UAVObjectField.FieldType.UINT32, 1, null);
+        u32.unpack(buffer(0xff, 0xff, 0xff, 0xff));
+        assertEquals(4294967295L, u32.getValue());
+        assertEquals(4294967295.0, u32.getDouble(), 0);
+        assertEquals("u32: 4294967295  (ms)\n", u32.toString());
+    }
+
+    @Test
+    public void testSignedValues() throws Exception {
+        UAVObjectField i8 = new UAVObjectField("i8", "", UAVObjectField.FieldType.INT8, 1, null);
+        i8.unpack(buffer(0x80));
+        assertEquals(-128, i8.getValue());
+
+        UAVObjectField f = new UAVObjectField("f", "", UAVObjectField.FieldType.FLOAT32, 2, null);
+        ByteBuffer buf = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putFloat(1.5f).putFloat(-0.25f).flip();
+        f.unpack(buf);
+        assertEquals(1.5f, f.getValue(0));
+        assertEquals(-0.25, f.getDouble(1), 0);
+        assertEquals(1, f.getInt(0));
+        assertEquals("f: 1.5, -0.25 \n", f.toString());
+    }
+
+    @Test
+    public void testEnumValues() throws Exception {
+        UAVObjectField e = new UAVObjectField("e", "", UAVObjectField.FieldType.ENUM, 1,
+                Arrays.asList("Disconnected", "HandshakeReq", "HandshakeAck", "Connected"));
+        e.unpack(buffer(3));
+        assertEquals("Connected", e.getValue());
+        assertEquals(3, e.getInt());
+    }
+
+    @Test
+    public void testPackRoundTrip() throws Exception {
+        UAVObjectField u16 = new UAVObjectField("u16", "", UAVObjectField.FieldType.UINT16, 3, null);
+        ByteBuffer in = buffer(0x01, 0x00, 0xff, 0xff, 0x34, 0x12);
+        u16.unpack(in);
+
+        ByteBuffer out = ByteBuffer.allocate(6);
+        assertEquals(6, u16.pack(out));
+        in.rewind();
+        out.flip();
+        assertEquals(in, out);
+    }
+}
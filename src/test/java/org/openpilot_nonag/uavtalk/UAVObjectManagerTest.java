@@ -0,0 +1,92 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openpilot_nonag.telemetry.OPTelemetryService;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UAVObjectManagerTest {
+
+    static final long ACCESSORY_DESIRED_ID = 3288963162L;
+
+    UAVObjectManager objManager;
+
+    @Before
+    public void setUp() throws Exception {
+        objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        new OPTelemetryService().loadUavobjects("bed2641e417be160.jar", objManager);
+    }
+
+    @Test
+    public void testLookupMatchesObjectList() throws Exception {
+        // Every registered object and instance is found by both ID and name
+        for (List<UAVObject> instList : objManager.getObjects()) {
+            UAVObject first = instList.get(0);
+            assertSame(first, objManager.getObject(first.getObjID()));
+            assertSame(first, objManager.getObject(first.getName()));
+            assertEquals(instList, objManager.getObjectInstances(first.getObjID()));
+            for (UAVObject obj : instList) {
+                assertSame(obj, objManager.getObject(obj.getObjID(), obj.getInstID()));
+            }
+        }
+
+        assertNull(objManager.getObject(0x12345678L));
+        assertNull(objManager.getObject("NoSuchObject"));
+        assertNull(objManager.getObjectInstances("NoSuchObject"));
+        assertNull(objManager.getObject(ACCESSORY_DESIRED_ID, 1));
+    }
+
+    @Test
+    public void testRegisterInstance() throws Exception {
+        UAVDataObject obj = (UAVDataObject) objManager.getObject(ACCESSORY_DESIRED_ID);
+        assertFalse(obj.isSingleInstance());
+
+        // Registering instance 2 fills in instance 1
+        UAVDataObject inst = obj.clone(2);
+        assertTrue(objManager.registerObject(inst));
+        assertSame(inst, objManager.getObject(ACCESSORY_DESIRED_ID, 2));
+        assertSame(inst, objManager.getObject("AccessoryDesired", 2));
+        assertEquals(1, objManager.getObject(ACCESSORY_DESIRED_ID, 1).getInstID());
+        assertEquals(3, objManager.getNumInstances(ACCESSORY_DESIRED_ID));
+
+        assertFalse(objManager.registerObject(obj.clone(2)));
+    }
+
+    @Test
+    public void testObjectInstancesReadOnly() throws Exception {
+        List<UAVObject> instances = objManager.getObjectInstances(ACCESSORY_DESIRED_ID);
+        try {
+            instances.clear();
+            fail("Instances list is writable");
+        } catch (UnsupportedOperationException e) {
+        }
+        assertSame(objManager.getObject(ACCESSORY_DESIRED_ID), instances.get(0));
+
+        // A snapshot, a later instance shows up in the next one
+        assertTrue(objManager.registerObject(((UAVDataObject) instances.get(0)).clone(1)));
+        assertEquals(1, instances.size());
+        assertEquals(2, objManager.getObjectInstances(ACCESSORY_DESIRED_ID).size());
+    }
+
+    @Test
+    public void testIndexGrows() throws Exception {
+        // Many more objects than the index starts with, each found after
+        // every registration
+        UAVObjectManager manager = new UAVObjectManager();
+        UAVObject first = null;
+        for (List<UAVObject> instList : objManager.getObjects()) {
+            UAVObject obj = instList.get(0);
+            manager.addObject(obj);
+            if (first == null)
+                first = obj;
+            assertSame(obj, manager.getObject(obj.getObjID()));
+            assertSame(first, manager.getObject(first.getName()));
+        }
+        assertEquals(objManager.getObjects().size(), manager.getObjects().size());
+    }
+}
@@ -0,0 +1,213 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpilot_nonag.telemetry.OPTelemetryService;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UAVTalkAllocationTest {
+
+    //! Allowed for a whole pass over the sample, the measurement itself allocates a little
+    static final long MAX_ALLOCATED_BYTES = 64 * 1024;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private final List<ByteBuffer> packets = new ArrayList<ByteBuffer>();
+    private final List<Long> timestamps = new ArrayList<Long>();
+
+    /**
+     * Writes nothing, only checks the events arrive
+     */
+    static class NullSink implements RecordSink {
+        long count;
+
+        @Override
+        public void write(ObjectUpdateEvent event) throws IOException {
+            if (event.getObject() != null)
+                count++;
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    /**
+     * Passes the events on, leaving out those the sink fails to format, such
+     * as the damaged record of the sample holding an out of range enum.
+     * UAVTalk prints the stack trace of those, which allocates.
+     */
+    static class SkipFailedSink implements RecordSink {
+        final RecordSink sink;
+        long failed;
+
+        SkipFailedSink(RecordSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(ObjectUpdateEvent event) throws IOException {
+            try {
+                sink.write(event);
+            } catch (RuntimeException e) {
+                failed++;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            sink.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            sink.close();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        OPLogReader reader = OPLogReader.map(new File(OPLogReaderTest.SAMPLE_LOG));
+        while (reader.next()) {
+            ByteBuffer packet = reader.getPacket();
+            ByteBuffer copy = ByteBuffer.allocate(packet.remaining());
+            copy.put(packet).flip();
+            packets.add(copy);
+            timestamps.add(reader.getTimestamp());
+        }
+        reader.close();
+    }
+
+    private long decodeAll(UAVTalk uavTalk) throws IOException {
+        long start = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < packets.size(); i++) {
+            ByteBuffer packet = packets.get(i);
+            packet.rewind();
+            uavTalk.processPacket(packet, timestamps.get(i));
+        }
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+    }
+
+    private static UAVTalk createUavTalk() throws Exception {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        new OPTelemetryService().loadUavobjects("bed2641e417be160.jar", objManager);
+
+        UAVTalk uavTalk = new UAVTalk(null, null, objManager);
+        uavTalk.setPassive(true);
+        return uavTalk;
+    }
+
+    @Test
+    public void testDecodeDoesNotAllocate() throws Exception {
+        // Without listeners, which are each given a new event
+        UAVTalk uavTalk = createUavTalk();
+        NullSink sink = new NullSink();
+        uavTalk.setRecordSink(sink);
+
+        // The first passes create the instances and let the JIT settle
+        for (int i = 0; i < 20; i++) {
+            decodeAll(uavTalk);
+        }
+        long allocated = decodeAll(uavTalk);
+
+        assertEquals(21 * 10470, sink.count);
+        assertTrue("Allocated " + allocated + " bytes decoding " + packets.size() + " packets",
+                allocated < MAX_ALLOCATED_BYTES);
+    }
+
+    @Test
+    public void testCsvSinkDoesNotAllocate() throws Exception {
+        File file = File.createTempFile("opuavo-alloc-", ".txt");
+        try {
+            // Formats the values, encodes the lines and writes the file
+            UAVTalk uavTalk = createUavTalk();
+            SkipFailedSink sink = new SkipFailedSink(new CsvRecordSink(file));
+            uavTalk.setRecordSink(sink);
+
+            for (int i = 0; i < 20; i++) {
+                decodeAll(uavTalk);
+            }
+            long allocated = decodeAll(uavTalk);
+            sink.close();
+
+            assertEquals(21, sink.failed);
+            assertTrue(file.length() > 0);
+            assertTrue("Allocated " + allocated + " bytes writing " + packets.size() + " packets as CSV",
+                    allocated < MAX_ALLOCATED_BYTES);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testListenersMayKeepEvents() throws Exception {
+        UAVTalk uavTalk = createUavTalk();
+        uavTalk.setRecordSink(new NullSink());
+        final List<ObjectUpdateEvent> events = new ArrayList<ObjectUpdateEvent>();
+        uavTalk.addObjectUpdateListener(new ObjectUpdateListener() {
+            @Override
+            public void objectUpdated(ObjectUpdateEvent event) {
+                events.add(event);
+            }
+        });
+        decodeAll(uavTalk);
+
+        assertEquals(10470, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(i, events.get(i).getSequence());
+        }
+    }
+
+    @Test
+    public void testSendDoesNotAllocate() throws Exception {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        final long[] written = new long[1];
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written[0] += len;
+            }
+        };
+        UAVTalk uavTalk = new UAVTalk(null, out, objManager);
+        UAVObject obj = objManager.getObject("GCSTelemetryStats");
+
+        for (int i = 0; i < 20000; i++) {
+            uavTalk.sendObject(obj, false, false);
+        }
+        long start = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 10000; i++) {
+            uavTalk.sendObject(obj, false, false);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+
+        assertEquals(30000 * (UAVTalk.HEADER_LENGTH + obj.getNumBytes() + 1), written[0]);
+        assertTrue("Allocated " + allocated + " bytes sending 10000 packets", allocated < MAX_ALLOCATED_BYTES);
+    }
+}
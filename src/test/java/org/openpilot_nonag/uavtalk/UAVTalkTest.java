@@ -0,0 +1,204 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openpilot_nonag.telemetry.OPTelemetryService;
+import org.openpilot_nonag.uavtalk.uavobjects.TelemObjectsInitialize;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class UAVTalkTest {
+
+    static final int RECORDS = 50;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static UAVObjectManager newObjectManager() {
+        UAVObjectManager objManager = new UAVObjectManager();
+        TelemObjectsInitialize.register(objManager);
+        new OPTelemetryService().loadUavobjects("bed2641e417be160.jar", objManager);
+        return objManager;
+    }
+
+    @Test
+    public void testUpdatesCarryLogTimestamps() throws Exception {
+        UAVTalk uavTalk = new UAVTalk(null, null, newObjectManager());
+        uavTalk.setPassive(true);
+        File file = new File(tempFolder.getRoot(), "data.txt");
+        CsvRecordSink sink = new CsvRecordSink(file);
+        uavTalk.setRecordSink(sink);
+        final List<ObjectUpdateEvent> events = new ArrayList<ObjectUpdateEvent>();
+        uavTalk.addObjectUpdateListener(new ObjectUpdateListener() {
+            @Override
+            public void objectUpdated(ObjectUpdateEvent event) {
+                events.add(event);
+            }
+        });
+
+        // The timestamp of the record each update came from
+        List<Long> expected = new ArrayList<Long>();
+        OPLogReader reader = OPLogReader.map(new File(OPLogReaderTest.SAMPLE_LOG));
+        for (int i = 0; i < RECORDS && reader.next(); i++) {
+            int before = events.size();
+            assertTrue(uavTalk.processPacket(reader.getPacket(), reader.getTimestamp()));
+            for (int n = before; n < events.size(); n++) {
+                expected.add(reader.getTimestamp());
+            }
+        }
+        reader.close();
+        sink.close();
+
+        assertTrue(events.size() > RECORDS / 2);
+        assertEquals(expected.size(), events.size());
+        // A log spanning several seconds, not the time since UAVTalk was created
+        assertTrue(expected.get(expected.size() - 1) > expected.get(0));
+        List<String> lines = FileUtils.readLines(file);
+        assertEquals(events.size(), lines.size());
+        for (int i = 0; i < events.size(); i++) {
+            ObjectUpdateEvent event = events.get(i);
+            assertEquals((long) expected.get(i), event.getTimestamp());
+            assertEquals(i, event.getSequence());
+
+            String[] columns = lines.get(i).split(",", 4);
+            assertEquals(Long.toString(event.getSequence()), columns[0]);
+            assertEquals(Long.toString(event.getTimestamp()), columns[1]);
+            assertEquals(Long.toString(event.getObject().getObjID()), columns[2]);
+        }
+    }
+
+    @Test
+    public void testProcessPacketTimestamp() throws Exception {
+        UAVObjectManager objManager = newObjectManager();
+        UAVTalk uavTalk = new UAVTalk(null, null, objManager);
+        uavTalk.setPassive(true);
+        File file = new File(tempFolder.getRoot(), "data.txt");
+        CsvRecordSink sink = new CsvRecordSink(file);
+        uavTalk.setRecordSink(sink);
+        final List<ObjectUpdateEvent> events = new ArrayList<ObjectUpdateEvent>();
+        uavTalk.addObjectUpdateListener(new ObjectUpdateListener() {
+            @Override
+            public void objectUpdated(ObjectUpdateEvent event) {
+                events.add(event);
+            }
+        });
+
+        UAVObject obj = objManager.getObject("GCSTelemetryStats");
+        ByteBuffer packet = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        int length = UAVTalk.framePacket(packet, obj);
+        long[] timestamps = { 1000, 1020, 987654321L };
+        for (long timestamp : timestamps) {
+            ByteBuffer data = ByteBuffer.wrap(packet.array(), 0, length);
+            assertTrue(uavTalk.processPacket(data, timestamp));
+        }
+        sink.close();
+
+        assertEquals(timestamps.length, events.size());
+        List<String> lines = FileUtils.readLines(file);
+        for (int i = 0; i < timestamps.length; i++) {
+            assertSame(obj, events.get(i).getObject());
+            assertEquals(timestamps[i], events.get(i).getTimestamp());
+            assertEquals(i, events.get(i).getSequence());
+            assertTrue(lines.get(i).startsWith(i + "," + timestamps[i] + "," + obj.getObjID() + ","));
+        }
+    }
+
+    @Test
+    public void testInstancesDecodeConcurrently() throws Exception {
+        UAVObjectManager objManager = newObjectManager();
+        UAVObject obj = objManager.getObject("GCSTelemetryStats");
+        ByteBuffer packet = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        final int length = UAVTalk.framePacket(packet, obj);
+        final byte[] frame = packet.array();
+
+        // The first decoder is held inside its sink
+        final CountDownLatch parked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final UAVTalk first = new UAVTalk(null, null, objManager);
+        first.setPassive(true);
+        first.setRecordSink(new BlockingSink(parked, release));
+        Thread firstThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    first.processPacket(ByteBuffer.wrap(frame, 0, length), 0);
+                } catch (IOException e) {
+                }
+            }
+        };
+        firstThread.start();
+        try {
+            assertTrue(parked.await(5, TimeUnit.SECONDS));
+
+            // An unrelated decoder still writes meanwhile
+            final UAVTalk second = new UAVTalk(null, null, newObjectManager());
+            second.setPassive(true);
+            final CountDownLatch written = new CountDownLatch(3);
+            second.setRecordSink(new BlockingSink(written, null));
+            Thread secondThread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 3; i++) {
+                            second.processPacket(ByteBuffer.wrap(frame, 0, length), i);
+                        }
+                    } catch (IOException e) {
+                    }
+                }
+            };
+            secondThread.start();
+            assertTrue(written.await(5, TimeUnit.SECONDS));
+            secondThread.join(5000);
+            assertEquals(3, second.getStats().rxObjects);
+        } finally {
+            release.countDown();
+            firstThread.join(5000);
+        }
+        assertEquals(1, first.getStats().rxObjects);
+    }
+
+    /**
+     * Counts every write down and then waits until released, if given a
+     * latch to wait on
+     */
+    static class BlockingSink implements RecordSink {
+        final CountDownLatch writes;
+        final CountDownLatch release;
+
+        BlockingSink(CountDownLatch writes, CountDownLatch release) {
+            this.writes = writes;
+            this.release = release;
+        }
+
+        @Override
+        public void write(ObjectUpdateEvent event) throws IOException {
+            writes.countDown();
+            if (release == null)
+                return;
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
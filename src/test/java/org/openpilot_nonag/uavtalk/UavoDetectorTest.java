@@ -0,0 +1,42 @@
+package org.openpilot_nonag.uavtalk;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class UavoDetectorTest {
+
+    static final File SAMPLE_LOG = new File(OPLogReaderTest.SAMPLE_LOG);
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testDetectSampleLog() throws Exception {
+        assertEquals("bed2641e417be160.jar", UavoDetector.detect(SAMPLE_LOG));
+        assertEquals("bed2641e417be160.jar", UavoDetector.resolve(SAMPLE_LOG, "0393a8fb439f831f.jar"));
+    }
+
+    @Test
+    public void testNoFirmwareIapObj() throws Exception {
+        // The first 100 records of the sample come before its FirmwareIAPObj
+        byte[] sample = FileUtils.readFileToByteArray(SAMPLE_LOG);
+        OPLogReader reader = OPLogReader.map(SAMPLE_LOG);
+        long end = 0;
+        while (reader.next() && reader.getRecordCount() <= 100) {
+            end = reader.getRecordOffset();
+        }
+        reader.close();
+
+        File log = tempFolder.newFile("head.opl");
+        FileUtils.writeByteArrayToFile(log, Arrays.copyOf(sample, (int) end));
+        assertNull(UavoDetector.detect(log));
+        assertEquals("0393a8fb439f831f.jar", UavoDetector.resolve(log, "0393a8fb439f831f.jar"));
+    }
+}